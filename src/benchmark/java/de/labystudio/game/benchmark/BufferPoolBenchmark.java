@@ -0,0 +1,59 @@
+package de.labystudio.game.benchmark;
+
+import de.labystudio.game.render.buffer.BufferPool;
+import de.labystudio.game.render.buffer.FakeBufferBackend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the throughput of acquire and release of the {@link BufferPool} with mesh sized buffers.
+ * The buffers live in a {@link FakeBufferBackend}, so only the pool itself is measured.
+ */
+public class BufferPoolBenchmark {
+
+    // Buffers that are held at the same time during the churn
+    private static final int LIVE_BUFFERS = 256;
+
+    private static final int WARMUP_OPERATIONS = 200_000;
+    private static final int OPERATIONS = 1_000_000;
+
+    public static void main(String[] args) {
+        run(new Random(0L), WARMUP_OPERATIONS, false);
+        run(new Random(1L), OPERATIONS, true);
+    }
+
+    private static void run(Random random, int operations, boolean print) {
+        FakeBufferBackend backend = new FakeBufferBackend();
+        BufferPool pool = new BufferPool(backend);
+        List<BufferPool.PooledBuffer> held = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            if (held.size() < LIVE_BUFFERS && (held.isEmpty() || random.nextBoolean())) {
+                held.add(pool.acquire(randomMeshSize(random)));
+            } else {
+                // Release a random buffer
+                int index = random.nextInt(held.size());
+                BufferPool.PooledBuffer buffer = held.get(index);
+                held.set(index, held.get(held.size() - 1));
+                held.remove(held.size() - 1);
+                pool.release(buffer);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        if (print) {
+            System.out.println("Operations: " + operations + ", " + String.format("%.1f", nanos / (double) operations) + " ns per operation");
+            System.out.println("Buffers: " + backend.getCreatedBuffers() + " created, " + backend.getDeletedBuffers() + " deleted, "
+                    + pool.getBufferCount() + " in the pool (" + pool.getAllocatedBytes() / 1024 + " KiB) at the end");
+        }
+    }
+
+    // Most sections have a few hundred quads, some have thousands
+    private static int randomMeshSize(Random random) {
+        int quads = random.nextInt(8) == 0 ? 500 + random.nextInt(3000) : 20 + random.nextInt(300);
+        return quads * 6 * 8 * 4;
+    }
+}
@@ -0,0 +1,101 @@
+package de.labystudio.game.benchmark;
+
+import de.labystudio.game.world.block.Block;
+import de.labystudio.game.world.chunk.Chunk;
+import de.labystudio.game.world.chunk.ChunkSection;
+import de.labystudio.game.world.chunk.ChunkSnapshot;
+import de.labystudio.game.world.chunk.format.ChunkFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measures how many chunks per second {@link ChunkFormat} encodes to and decodes from the uncompressed
+ * Anvil layout. The chunk is filled like generated terrain with a few trees on top.
+ */
+public class ChunkCodecBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2_000;
+    private static final int ROUNDS = 20_000;
+
+    public static void main(String[] args) throws IOException {
+        ChunkSnapshot snapshot = new ChunkSnapshot(createChunk(new Random(0L)));
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 * 1024);
+        DataOutputStream outputStream = new DataOutputStream(buffer);
+        ChunkFormat.write(snapshot, outputStream);
+        byte[] encoded = buffer.toByteArray();
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            encode(snapshot, buffer, outputStream);
+            decode(encoded);
+        }
+
+        System.out.println("Chunk: " + encoded.length / 1024 + " KiB encoded, " + ROUNDS + " rounds");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            encode(snapshot, buffer, outputStream);
+        }
+        print("Encode", System.nanoTime() - start, encoded.length);
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            decode(encoded);
+        }
+        print("Decode", System.nanoTime() - start, encoded.length);
+    }
+
+    static Chunk createChunk(Random random) {
+        Chunk chunk = new Chunk(null, 0, 0);
+
+        for (int x = 0; x < ChunkSection.SIZE; x++) {
+            for (int z = 0; z < ChunkSection.SIZE; z++) {
+                int height = 60 + random.nextInt(4);
+
+                for (int y = 0; y <= height; y++) {
+                    Block block = y == height ? Block.GRASS : y > height - 4 ? Block.DIRT : Block.STONE;
+                    setBlock(chunk, x, y, z, block.getId(), y < height - 8 ? 0 : 15);
+                }
+
+                // Trunks with leaves around them
+                if (random.nextInt(32) == 0) {
+                    for (int y = height + 1; y < height + 6; y++) {
+                        setBlock(chunk, x, y, z, Block.LOG.getId(), 15);
+                    }
+                    setBlock(chunk, x, height + 6, z, Block.LEAVE.getId(), 15);
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private static void setBlock(Chunk chunk, int x, int y, int z, int blockId, int lightLevel) {
+        ChunkSection section = chunk.getSection(y >> 4);
+        section.setBlockAt(x, y & 15, z, blockId);
+        section.setLightAt(x, y & 15, z, lightLevel);
+    }
+
+    private static void encode(ChunkSnapshot snapshot, ByteArrayOutputStream buffer, DataOutputStream outputStream) throws IOException {
+        buffer.reset();
+        ChunkFormat.write(snapshot, outputStream);
+    }
+
+    private static void decode(byte[] encoded) throws IOException {
+        ChunkFormat chunkFormat = new ChunkFormat(null, 0, 0)
+                .read(new DataInputStream(new ByteArrayInputStream(encoded)), 0, 0);
+        if (chunkFormat.isEmpty()) {
+            throw new IOException("Decoded chunk is empty");
+        }
+    }
+
+    private static void print(String name, long nanos, int chunkBytes) {
+        double seconds = nanos / 1_000_000_000.0D;
+        System.out.println(name + ": " + String.format("%.0f", ROUNDS / seconds) + " chunks/s, "
+                + String.format("%.1f", (double) ROUNDS * chunkBytes / seconds / (1024 * 1024)) + " MiB/s");
+    }
+}
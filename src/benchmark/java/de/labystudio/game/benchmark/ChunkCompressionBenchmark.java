@@ -0,0 +1,93 @@
+package de.labystudio.game.benchmark;
+
+import de.labystudio.game.world.chunk.ChunkSnapshot;
+import de.labystudio.game.world.chunk.format.ChunkFormat;
+import de.labystudio.game.world.chunk.format.RegionFormat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Compares the save and load throughput and the file size of a full region for each compression setting.
+ * Chunks are written through {@link ChunkFormat} into a {@link RegionFormat} and decoded again.
+ */
+public class ChunkCompressionBenchmark {
+
+    // Uncompressed, fastest, default and smallest
+    private static final int[] LEVELS = {Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION};
+
+    // Different terrain chunks that are repeated over the region
+    private static final int CHUNK_VARIANTS = 16;
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(0L);
+        ChunkSnapshot[] snapshots = new ChunkSnapshot[CHUNK_VARIANTS];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new ChunkSnapshot(ChunkCodecBenchmark.createChunk(random));
+        }
+
+        File directory = Files.createTempDirectory("compression-benchmark").toFile();
+        File file = new File(directory, RegionFormat.getFileName(0, 0));
+
+        try {
+            for (int level : LEVELS) {
+                for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                    run(file, snapshots, level, false);
+                }
+                run(file, snapshots, level, true);
+            }
+        } finally {
+            file.delete();
+            directory.delete();
+        }
+    }
+
+    private static void run(File file, ChunkSnapshot[] snapshots, int level, boolean print) throws IOException {
+        file.delete();
+
+        long saveNanos = 0;
+        long loadNanos = 0;
+
+        try (RegionFormat region = new RegionFormat(file)) {
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int x = 0; x < 32; x++) {
+                    for (int z = 0; z < 32; z++) {
+                        try (DataOutputStream outputStream = region.getChunkDataOutputStream(x, z, level)) {
+                            ChunkFormat.write(snapshots[(x + z * 32) % snapshots.length], outputStream);
+                        }
+                    }
+                }
+                saveNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int x = 0; x < 32; x++) {
+                    for (int z = 0; z < 32; z++) {
+                        try (DataInputStream inputStream = region.getChunkDataInputStream(x, z)) {
+                            new ChunkFormat(null, x, z).read(inputStream, x, z);
+                        }
+                    }
+                }
+                loadNanos += System.nanoTime() - start;
+            }
+        }
+
+        if (print) {
+            String name = level == Deflater.NO_COMPRESSION ? "uncompressed" : level == Deflater.DEFAULT_COMPRESSION ? "default" : "level " + level;
+            System.out.println(String.format("%-12s", name) + ": save " + chunksPerSecond(saveNanos) + " chunks/s, load "
+                    + chunksPerSecond(loadNanos) + " chunks/s, region file " + file.length() / 1024 + " KiB");
+        }
+    }
+
+    private static String chunksPerSecond(long nanos) {
+        return String.format("%.0f", ROUNDS * 1024 / (nanos / 1_000_000_000.0D));
+    }
+}
@@ -0,0 +1,116 @@
+package de.labystudio.game.benchmark;
+
+import de.labystudio.game.render.Frustum;
+import org.joml.Matrix4f;
+
+import java.util.Random;
+
+/**
+ * Compares the center/extent box test of the frustum with testing all 8 corners of each box.
+ * Runs without OpenGL, the frustum is built from a fixed camera.
+ */
+public class FrustumBenchmark {
+
+    private static final int BOXES = 10_000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 1_000;
+
+    public static void main(String[] args) {
+        Matrix4f projection = new Matrix4f().setPerspective((float) Math.toRadians(85.0F), 16.0F / 9.0F, 0.05F, 16384.0F);
+        Matrix4f modelView = new Matrix4f().rotateX((float) Math.toRadians(20.0F)).rotateY((float) Math.toRadians(45.0F)).translate(0.0F, -70.0F, 0.0F);
+        Matrix4f viewProjection = projection.mul(modelView, new Matrix4f());
+
+        Frustum frustum = new Frustum();
+        frustum.update(viewProjection);
+
+        // Chunk section sized boxes around the camera
+        Random random = new Random(0L);
+        float[] boxes = new float[BOXES * 6];
+        for (int i = 0; i < BOXES; i++) {
+            float x = (random.nextInt(32) - 16) * 16.0F;
+            float y = random.nextInt(16) * 16.0F;
+            float z = (random.nextInt(32) - 16) * 16.0F;
+            boxes[i * 6] = x;
+            boxes[i * 6 + 1] = y;
+            boxes[i * 6 + 2] = z;
+            boxes[i * 6 + 3] = x + 16.0F;
+            boxes[i * 6 + 4] = y + 16.0F;
+            boxes[i * 6 + 5] = z + 16.0F;
+        }
+
+        float[][] planes = extractPlanes(viewProjection);
+
+        int visibleCenterExtent = 0;
+        int visibleCorners = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            visibleCenterExtent = testCenterExtent(frustum, boxes);
+            visibleCorners = testCorners(planes, boxes);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            visibleCenterExtent += testCenterExtent(frustum, boxes);
+        }
+        long centerExtentNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            visibleCorners += testCorners(planes, boxes);
+        }
+        long cornersNanos = System.nanoTime() - start;
+
+        System.out.println("Boxes: " + BOXES + ", rounds: " + ROUNDS);
+        System.out.println("Center/extent: " + String.format("%.2f", centerExtentNanos / (double) (ROUNDS * BOXES)) + " ns per box, "
+                + visibleCenterExtent / (ROUNDS + 1) + " visible");
+        System.out.println("8 corners: " + String.format("%.2f", cornersNanos / (double) (ROUNDS * BOXES)) + " ns per box, "
+                + visibleCorners / (ROUNDS + 1) + " visible");
+    }
+
+    private static int testCenterExtent(Frustum frustum, float[] boxes) {
+        int visible = 0;
+        for (int i = 0; i < boxes.length; i += 6) {
+            if (frustum.testBox(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3], boxes[i + 4], boxes[i + 5]) != Frustum.OUTSIDE) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    private static int testCorners(float[][] planes, float[] boxes) {
+        int visible = 0;
+        for (int i = 0; i < boxes.length; i += 6) {
+            if (cornersInFrustum(planes, boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3], boxes[i + 4], boxes[i + 5])) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    // The box is outside if all 8 corners are behind one of the planes
+    private static boolean cornersInFrustum(float[][] planes, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (float[] p : planes) {
+            if (!(p[0] * minX + p[1] * minY + p[2] * minZ + p[3] > 0
+                    || p[0] * maxX + p[1] * minY + p[2] * minZ + p[3] > 0
+                    || p[0] * minX + p[1] * maxY + p[2] * minZ + p[3] > 0
+                    || p[0] * maxX + p[1] * maxY + p[2] * minZ + p[3] > 0
+                    || p[0] * minX + p[1] * minY + p[2] * maxZ + p[3] > 0
+                    || p[0] * maxX + p[1] * minY + p[2] * maxZ + p[3] > 0
+                    || p[0] * minX + p[1] * maxY + p[2] * maxZ + p[3] > 0
+                    || p[0] * maxX + p[1] * maxY + p[2] * maxZ + p[3] > 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static float[][] extractPlanes(Matrix4f m) {
+        return new float[][]{
+                {m.m03() + m.m00(), m.m13() + m.m10(), m.m23() + m.m20(), m.m33() + m.m30()},
+                {m.m03() - m.m00(), m.m13() - m.m10(), m.m23() - m.m20(), m.m33() - m.m30()},
+                {m.m03() + m.m01(), m.m13() + m.m11(), m.m23() + m.m21(), m.m33() + m.m31()},
+                {m.m03() - m.m01(), m.m13() - m.m11(), m.m23() - m.m21(), m.m33() - m.m31()},
+                {m.m03() + m.m02(), m.m13() + m.m12(), m.m23() + m.m22(), m.m33() + m.m32()},
+                {m.m03() - m.m02(), m.m13() - m.m12(), m.m23() - m.m22(), m.m33() - m.m32()}
+        };
+    }
+}
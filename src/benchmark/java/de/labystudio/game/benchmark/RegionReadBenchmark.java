@@ -0,0 +1,97 @@
+package de.labystudio.game.benchmark;
+
+import de.labystudio.game.world.chunk.format.RegionFormat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares the load throughput of the copying and the memory-mapped read path of {@link RegionFormat}.
+ * A full region is filled with chunk sized payloads that compress like terrain, then every chunk is inflated.
+ */
+public class RegionReadBenchmark {
+
+    // Uncompressed size of a chunk with eight sections of block and light data
+    private static final int CHUNK_BYTES = 8 * 4 * 4096;
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("region-benchmark").toFile();
+        File file = new File(directory, RegionFormat.getFileName(0, 0));
+
+        try (RegionFormat region = new RegionFormat(file)) {
+            fill(region, new Random(0L));
+        }
+
+        try (RegionFormat region = new RegionFormat(file)) {
+            byte[] buffer = new byte[8192];
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                run(region, false, buffer, 1, false);
+                run(region, true, buffer, 1, false);
+            }
+
+            System.out.println("Region file: " + file.length() / 1024 + " KiB, " + ROUNDS + " rounds of 1024 chunks");
+            run(region, false, buffer, ROUNDS, true);
+            run(region, true, buffer, ROUNDS, true);
+        } finally {
+            file.delete();
+            directory.delete();
+        }
+    }
+
+    private static void fill(RegionFormat region, Random random) throws IOException {
+        byte[] chunk = new byte[CHUNK_BYTES];
+
+        for (int x = 0; x < 32; x++) {
+            for (int z = 0; z < 32; z++) {
+                // Long runs of few block types
+                int index = 0;
+                while (index < chunk.length) {
+                    int run = Math.min(chunk.length - index, 1 + random.nextInt(64));
+                    byte type = (byte) random.nextInt(8);
+                    for (int i = 0; i < run; i++) {
+                        chunk[index++] = type;
+                    }
+                }
+
+                try (DataOutputStream outputStream = region.getChunkDataOutputStream(x, z)) {
+                    outputStream.write(chunk);
+                }
+            }
+        }
+    }
+
+    private static void run(RegionFormat region, boolean memoryMapped, byte[] buffer, int rounds, boolean print) throws IOException {
+        region.setMemoryMapped(memoryMapped);
+
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int x = 0; x < 32; x++) {
+                for (int z = 0; z < 32; z++) {
+                    try (DataInputStream inputStream = region.getChunkDataInputStream(x, z)) {
+                        int read;
+                        while ((read = inputStream.read(buffer)) != -1) {
+                            bytes += read;
+                        }
+                    }
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        if (print) {
+            double seconds = nanos / 1_000_000_000.0D;
+            System.out.println((memoryMapped ? "Memory-mapped: " : "Copying:       ")
+                    + String.format("%.0f", rounds * 1024 / seconds) + " chunks/s, "
+                    + String.format("%.1f", bytes / seconds / (1024 * 1024)) + " MiB/s inflated");
+        }
+    }
+}
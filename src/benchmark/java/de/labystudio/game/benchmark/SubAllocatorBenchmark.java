@@ -0,0 +1,79 @@
+package de.labystudio.game.benchmark;
+
+import de.labystudio.game.render.buffer.SubAllocator;
+
+import java.util.Random;
+
+/**
+ * Measures the throughput and fragmentation of the {@link SubAllocator} with section sized meshes.
+ * A page is filled and then meshes are freed and allocated in random order, like sections that are rebuilt.
+ */
+public class SubAllocatorBenchmark {
+
+    private static final int PAGE_SIZE = 4 << 20;
+    private static final int ALIGNMENT = 6 * 8 * 4;
+
+    // Keep this share of the page allocated during the churn
+    private static final float FILL = 0.8F;
+
+    private static final int WARMUP_OPERATIONS = 1_000_000;
+    private static final int OPERATIONS = 5_000_000;
+
+    public static void main(String[] args) {
+        run(new Random(0L), WARMUP_OPERATIONS, false);
+        run(new Random(1L), OPERATIONS, true);
+    }
+
+    private static void run(Random random, int operations, boolean print) {
+        SubAllocator allocator = new SubAllocator(PAGE_SIZE, ALIGNMENT);
+        int[] offsets = new int[PAGE_SIZE / ALIGNMENT];
+        int count = 0;
+
+        int failed = 0;
+        float maxFragmentation = 0.0F;
+        double fragmentationSum = 0.0D;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            boolean allocate = count == 0 || allocator.getUsedBytes() < PAGE_SIZE * FILL && random.nextBoolean();
+
+            if (allocate) {
+                int offset = allocator.allocate(randomMeshSize(random));
+                if (offset == -1) {
+                    failed++;
+                } else {
+                    offsets[count++] = offset;
+                }
+            } else {
+                // Free a random mesh
+                int index = random.nextInt(count);
+                allocator.free(offsets[index]);
+                offsets[index] = offsets[--count];
+            }
+
+            if ((i & 1023) == 0) {
+                float fragmentation = allocator.getFragmentation();
+                maxFragmentation = Math.max(maxFragmentation, fragmentation);
+                fragmentationSum += fragmentation;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        if (print) {
+            System.out.println("Page: " + PAGE_SIZE / 1024 + " KiB, operations: " + operations);
+            System.out.println("Throughput: " + String.format("%.2f", operations / (nanos / 1_000_000_000.0D) / 1_000_000.0D) + " M ops/s, "
+                    + String.format("%.1f", nanos / (double) operations) + " ns per operation");
+            System.out.println("Fragmentation: " + String.format("%.1f", fragmentationSum / (operations / 1024 + 1) * 100) + "% average, "
+                    + String.format("%.1f", maxFragmentation * 100) + "% max, "
+                    + allocator.getFreeBlockCount() + " free blocks at the end");
+            System.out.println("Failed allocations: " + failed + ", allocations at the end: " + allocator.getAllocationCount()
+                    + ", " + allocator.getUsedBytes() / 1024 + " KiB used");
+        }
+    }
+
+    // Most sections have a few hundred quads, some have thousands
+    private static int randomMeshSize(Random random) {
+        int quads = random.nextInt(8) == 0 ? 500 + random.nextInt(3000) : 20 + random.nextInt(300);
+        return quads * ALIGNMENT;
+    }
+}
@@ -5,16 +5,26 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplicationConfiguration;
 import com.badlogic.gdx.graphics.GL20;
-import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.utils.BufferUtils;
 import de.labystudio.game.player.Player;
+import de.labystudio.game.render.GLAllocation;
 import de.labystudio.game.render.gui.FontRenderer;
 import de.labystudio.game.render.gui.GuiRenderer;
+import de.labystudio.game.render.buffer.BufferPool;
+import de.labystudio.game.render.world.RebuildScheduler;
+import de.labystudio.game.render.world.RegionRenderer;
+import de.labystudio.game.render.world.TranslucentSorter;
+import de.labystudio.game.render.world.SectionMeshCache;
+import de.labystudio.game.render.world.TerrainLod;
 import de.labystudio.game.util.*;
+import de.labystudio.game.world.ChunkStreamer;
 import de.labystudio.game.world.World;
 import de.labystudio.game.world.WorldRenderer;
 import de.labystudio.game.world.block.Block;
 import de.labystudio.game.world.chunk.ChunkSection;
+import de.labystudio.game.world.chunk.format.EditJournal;
+import de.labystudio.game.world.chunk.format.WorldLoader;
+import org.joml.Matrix4f;
 import org.lwjgl.LWJGLException;
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.input.Mouse;
@@ -50,6 +60,15 @@ public class Minecraft extends Game {
     private int fps;
     //  private GLContext glContext;
 
+    // Camera
+    private final Matrix4f projectionMatrix = new Matrix4f();
+    private final Matrix4f modelViewMatrix = new Matrix4f();
+    private final Matrix4f viewProjectionMatrix = new Matrix4f();
+    private final FloatBuffer matrixBuffer = BufferUtils.newFloatBuffer(16);
+    private double cameraX;
+    private double cameraY;
+    private double cameraZ;
+
     public Minecraft() {
         this.game = this;
         // glContext = new GLContext();
@@ -104,6 +123,9 @@ public class Minecraft extends Game {
                 GL11.glViewport(0, 0, this.game.displayWidth, this.game.displayHeight);
                 this.render(this.timer.partialTicks);
                 this.game.update();
+
+                // Delete the GL objects that were released during this frame
+                GLAllocation.processDeletions();
                 checkError();
 
                 frames++;
@@ -137,6 +159,12 @@ public class Minecraft extends Game {
 
     private void cleanup() {
         this.world.save();
+        this.world.shutdown();
+        this.worldRenderer.shutdown();
+
+        // Report and delete the GL objects that are still alive
+        GLAllocation.reportLeaks();
+        GLAllocation.deleteAll();
         this.game.destroy();
 
         Mouse.destroy();
@@ -151,45 +179,48 @@ public class Minecraft extends Game {
         this.player.onTick();
         this.world.onTick();
         this.worldRenderer.onTick();
+
+        // Load the chunks around the player
+        this.world.getStreamer().update(MathHelper.floor_double(this.player.x) >> 4,
+                MathHelper.floor_double(this.player.z) >> 4, this.worldRenderer);
     }
 
     private void moveCameraToPlayer(float partialTicks) {
-        GL11.glTranslatef(0.0F, 0.0F, -0.3F);
-        GL11.glRotatef(this.player.pitch, 1.0F, 0.0F, 0.0F);
-        GL11.glRotatef(this.player.yaw, 0.0F, 1.0F, 0.0F);
-
         double x = this.player.prevX + (this.player.x - this.player.prevX) * partialTicks;
         double y = this.player.prevY + (this.player.y - this.player.prevY) * partialTicks;
         double z = this.player.prevZ + (this.player.z - this.player.prevZ) * partialTicks;
-        GL11.glTranslated(-x, -y, -z);
 
         // Eye height
-        GL11.glTranslatef(0.0F, -this.player.getEyeHeight(), 0.0F);
+        this.cameraX = x;
+        this.cameraY = y + this.player.getEyeHeight();
+        this.cameraZ = z;
+
+        this.modelViewMatrix.identity()
+                .translate(0.0F, 0.0F, -0.3F)
+                .rotateX((float) Math.toRadians(this.player.pitch))
+                .rotateY((float) Math.toRadians(this.player.yaw))
+                .translate((float) -this.cameraX, (float) -this.cameraY, (float) -this.cameraZ);
     }
 
     private void setupCamera(float partialTicks) {
         double zFar = Math.pow(WorldRenderer.RENDER_DISTANCE * ChunkSection.SIZE, 2);
 
-        GL11.glMatrixMode(GL11.GL_PROJECTION);
-        GL11.glLoadIdentity();
-
         // Calculate the aspect ratio
         float aspectRatio = (float) this.game.displayWidth / (float) this.game.displayHeight;
 
         // Create a new perspective projection matrix
-        Matrix4 projection = new Matrix4();
-        projection.setToProjection(0.05f, (float) zFar, 85.0F + this.player.getFOVModifier(), aspectRatio);
+        float fov = 85.0F + this.player.getFOVModifier();
+        this.projectionMatrix.setPerspective((float) Math.toRadians(fov), aspectRatio, 0.05F, (float) zFar);
+        this.moveCameraToPlayer(partialTicks);
 
-        // Convert the matrix to a FloatBuffer using LibGDX's BufferUtils
-        FloatBuffer matrixBuffer = BufferUtils.newFloatBuffer(16);
-        matrixBuffer.put(projection.val).flip();
+        // The frustum is built from the same matrices that are loaded into OpenGL
+        this.projectionMatrix.mul(this.modelViewMatrix, this.viewProjectionMatrix);
 
-        GL11.glLoadMatrix(matrixBuffer);
+        GL11.glMatrixMode(GL11.GL_PROJECTION);
+        GL11.glLoadMatrix(this.projectionMatrix.get(this.matrixBuffer));
 
         GL11.glMatrixMode(GL11.GL_MODELVIEW);
-        GL11.glLoadIdentity();
-
-        this.moveCameraToPlayer(partialTicks);
+        GL11.glLoadMatrix(this.modelViewMatrix.get(this.matrixBuffer));
     }
 
     public void render(float partialTicks) {
@@ -252,9 +283,6 @@ public class Minecraft extends Game {
         // Camera
         this.setupCamera(partialTicks);
 
-        int cameraChunkX = (int) this.player.x >> 4;
-        int cameraChunkZ = (int) this.player.z >> 4;
-
         // Fog
         GL11.glEnable(GL11.GL_FOG);
         this.worldRenderer.setupFog(this.player.isHeadInWater());
@@ -265,8 +293,11 @@ public class Minecraft extends Game {
         GL11.glColor4f(1.0F, 1.0F, 1.0F, 1.0F);
         GL11.glEnable(GL11.GL_CULL_FACE);
 
+        // Collect visible chunks once for all layers
+        this.worldRenderer.setupVisibleChunks(this.viewProjectionMatrix, this.cameraX, this.cameraY, this.cameraZ);
+
         // Render solid blocks
-        this.worldRenderer.render(cameraChunkX, cameraChunkZ, EnumWorldBlockLayer.SOLID);
+        this.worldRenderer.render(EnumWorldBlockLayer.SOLID);
 
         // Enable alpha and disable face culling
         GL11.glEnable(GL11.GL_BLEND);
@@ -276,7 +307,7 @@ public class Minecraft extends Game {
         GL11.glDisable(GL11.GL_CULL_FACE);
 
         // Render cutout blocks (Leaves, glass, water..)
-        this.worldRenderer.render(cameraChunkX, cameraChunkZ, EnumWorldBlockLayer.CUTOUT);
+        this.worldRenderer.render(EnumWorldBlockLayer.CUTOUT);
 
         // Render selection
         if (hitResult != null) {
@@ -298,6 +329,59 @@ public class Minecraft extends Game {
         this.fontRenderer.drawString("X: " + String.format("%.2f", this.player.x), 2, 16);
         this.fontRenderer.drawString("Y: " + String.format("%.2f", this.player.y), 2, 30);
         this.fontRenderer.drawString("Z: " + String.format("%.2f", this.player.z), 2, 44);
+
+        SectionMeshCache meshCache = this.worldRenderer.getMeshCache();
+        this.fontRenderer.drawString("Dedup: " + meshCache.getDedupHits() + " hits, "
+                + meshCache.getSharedMeshCount() + " shared, "
+                + meshCache.getBuriedSections() + " buried, "
+                + meshCache.getEmptySections() + " empty", 2, 58);
+        this.fontRenderer.drawString("Sections: " + this.worldRenderer.getVisibleSectionCount() + " visible, "
+                + this.worldRenderer.getDrawCalls() + " draw calls", 2, 72);
+
+        RebuildScheduler rebuildScheduler = this.worldRenderer.getRebuildScheduler();
+        this.fontRenderer.drawString("Rebuilds: " + rebuildScheduler.getRebuildsLastFrame() + " per frame, "
+                + rebuildScheduler.getQueueDepth() + " queued", 2, 86);
+
+        TerrainLod terrainLod = this.worldRenderer.getTerrainLod();
+        this.fontRenderer.drawString("LOD: " + terrainLod.getVisibleTileCount() + "/" + terrainLod.getTileCount() + " tiles, "
+                + terrainLod.getQuadCount() + " quads, " + this.world.getTerrainSummary().size() + " chunks summarized", 2, 100);
+        BufferPool bufferPool = this.worldRenderer.getBufferPool();
+        this.fontRenderer.drawString("GPU: " + bufferPool.getUsedBytes() / 1024 + "/" + bufferPool.getAllocatedBytes() / 1024 + " KiB in "
+                + bufferPool.getBufferCount() + " buffers, " + this.worldRenderer.getDrawnBytes() / 1024 + " KiB drawn", 2, 128);
+        this.fontRenderer.drawString("GL: " + GLAllocation.getCount(GLAllocation.Category.DISPLAY_LIST) + " lists, "
+                + GLAllocation.getCount(GLAllocation.Category.TEXTURE) + " textures, "
+                + GLAllocation.getCount(GLAllocation.Category.BUFFER) + " buffers, "
+                + (GLAllocation.getBytes(GLAllocation.Category.DISPLAY_LIST)
+                + GLAllocation.getBytes(GLAllocation.Category.TEXTURE)
+                + GLAllocation.getBytes(GLAllocation.Category.BUFFER)) / 1024 + " KiB", 2, 142);
+        RegionRenderer regionRenderer = this.worldRenderer.getRegionRenderer();
+        this.fontRenderer.drawString("Regions: " + regionRenderer.getRegionCount() + " regions, "
+                + regionRenderer.getPageCount() + " pages, "
+                + regionRenderer.getUsedBytes() / 1024 + "/" + regionRenderer.getCapacity() / 1024 + " KiB, "
+                + regionRenderer.getCompactions() + " compactions", 2, 156);
+        TranslucentSorter translucentSorter = this.worldRenderer.getTranslucentSorter();
+        this.fontRenderer.drawString("Sorting: " + translucentSorter.getSortsLastFrame() + " sorts, "
+                + String.format("%.2f", translucentSorter.getSortNanosLastFrame() / 1_000_000.0D) + " ms, "
+                + translucentSorter.getPendingSorts() + " pending", 2, 170);
+        ChunkStreamer streamer = this.world.getStreamer();
+        this.fontRenderer.drawString("Streaming: " + streamer.getReadyChunks() + " chunks, "
+                + streamer.getPendingLoads() + " loading, "
+                + streamer.getPendingGenerations() + " to generate, "
+                + streamer.getPendingSummaries() + " to summarize, "
+                + streamer.getUnloadingChunks() + " saving", 2, 184);
+        EditJournal journal = this.world.format.getJournal();
+        this.fontRenderer.drawString("Journal: " + journal.getRecordCount() + " edits, "
+                + journal.getFileSize() / 1024 + " KiB, "
+                + journal.getCommits() + " commits, last "
+                + String.format("%.2f", journal.getLastCommitNanos() / 1_000_000.0D) + " ms", 2, 198);
+        WorldLoader loader = this.world.format.getLoader();
+        this.fontRenderer.drawString("Loader: " + loader.getDecodedChunks() + " chunks, read "
+                + loader.getReadNanosPerChunk() / 1000 + " us, inflate "
+                + loader.getInflateNanosPerChunk() / 1000 + " us, decode "
+                + loader.getDecodeNanosPerChunk() / 1000 + " us, integrate "
+                + loader.getIntegrateNanosPerChunk() / 1000 + " us per chunk", 2, 212);
+        this.fontRenderer.drawString("Render distance: " + this.worldRenderer.getRenderDistanceController().getDistance()
+                + " (" + this.worldRenderer.getRenderDistanceController().getLastDecision() + ")", 2, 114);
     }
 
     public void renderSelection(HitResult hitResult) {
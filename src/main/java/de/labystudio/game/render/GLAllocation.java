@@ -1,54 +1,157 @@
 package de.labystudio.game.render;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.lwjgl.opengl.ARBBufferObject;
 import org.lwjgl.opengl.GL11;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.ArrayList;
-import java.util.List;
-
+import java.util.ArrayDeque;
+
+/**
+ * Registry of all OpenGL objects. Every display list, texture and buffer is created and deleted through this class,
+ * so their amount and estimated memory is known per category. Deletions are queued and executed on the GL thread.
+ * With -Dgame.glDebug=true the allocation stack of each object is recorded and objects that are still alive
+ * at shutdown are reported.
+ */
 public class GLAllocation {
 
-    private static final List<Integer> displayLists = new ArrayList<>();
-    private static final List<Integer> textureNames = new ArrayList<>();
+    public static final boolean DEBUG = Boolean.getBoolean("game.glDebug");
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    @SuppressWarnings("unchecked")
+    private static final Int2ObjectOpenHashMap<Resource>[] resources = (Int2ObjectOpenHashMap<Resource>[]) new Int2ObjectOpenHashMap<?>[CATEGORIES.length];
+    private static final long[] bytes = new long[CATEGORIES.length];
+
+    // Resources that are deleted on the next drain of the GL thread
+    private static final ArrayDeque<Resource> deletionQueue = new ArrayDeque<>();
+
+    static {
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            resources[i] = new Int2ObjectOpenHashMap<>();
+        }
+    }
 
     public static synchronized int generateDisplayLists(int amount) {
         int id = GL11.glGenLists(amount);
+        register(Category.DISPLAY_LIST, id, amount);
+        return id;
+    }
 
-        displayLists.add(id);
-        displayLists.add(amount);
+    public static synchronized int generateTexture() {
+        int id = GL11.glGenTextures();
+        register(Category.TEXTURE, id, 1);
+        return id;
+    }
 
+    public static synchronized int generateBuffer() {
+        int id = ARBBufferObject.glGenBuffersARB();
+        register(Category.BUFFER, id, 1);
         return id;
     }
 
-    public static synchronized void generateTextureNames(IntBuffer intbuffer) {
-        GL11.glGenTextures(intbuffer);
+    /**
+     * Set the estimated memory of an object
+     *
+     * @param category Category of the object
+     * @param id       Name of the object
+     * @param size     Memory in bytes
+     */
+    public static synchronized void setSize(Category category, int id, long size) {
+        Resource resource = resources[category.ordinal()].get(id);
+        if (resource != null) {
+            bytes[category.ordinal()] += size - resource.size;
+            resource.size = size;
+        }
+    }
+
+    public static synchronized void deleteDisplayLists(int id) {
+        queueDeletion(Category.DISPLAY_LIST, id);
+    }
+
+    public static synchronized void deleteTexture(int id) {
+        queueDeletion(Category.TEXTURE, id);
+    }
+
+    public static synchronized void deleteBuffer(int id) {
+        queueDeletion(Category.BUFFER, id);
+    }
+
+    /**
+     * Delete the queued objects, has to be called on the GL thread
+     */
+    public static synchronized void processDeletions() {
+        Resource resource;
+        while ((resource = deletionQueue.poll()) != null) {
+            switch (resource.category) {
+                case DISPLAY_LIST -> GL11.glDeleteLists(resource.id, resource.amount);
+                case TEXTURE -> GL11.glDeleteTextures(resource.id);
+                case BUFFER -> ARBBufferObject.glDeleteBuffersARB(resource.id);
+            }
+        }
+    }
 
-        for (int i = intbuffer.position(); i < intbuffer.limit(); i++) {
-            textureNames.add(intbuffer.get(i));
+    /**
+     * Delete all objects that are still alive, has to be called on the GL thread
+     */
+    public static synchronized void deleteAll() {
+        for (Category category : CATEGORIES) {
+            for (int id : resources[category.ordinal()].keySet().toIntArray()) {
+                queueDeletion(category, id);
+            }
         }
+        processDeletions();
     }
 
-    public static synchronized void deleteTexturesAndDisplayLists() {
-        for (int i = 0; i < displayLists.size(); i += 2) {
-            GL11.glDeleteLists(displayLists.get(i), displayLists.get(i + 1));
+    /**
+     * Print the objects that are still alive and where they were allocated if {@link #DEBUG} is enabled
+     */
+    public static synchronized void reportLeaks() {
+        for (Category category : CATEGORIES) {
+            Int2ObjectOpenHashMap<Resource> alive = resources[category.ordinal()];
+            if (alive.isEmpty()) {
+                continue;
+            }
+
+            System.out.println(alive.size() + " " + category + " objects still alive (" + bytes[category.ordinal()] / 1024 + " KiB)");
+            if (DEBUG) {
+                for (Resource resource : alive.values()) {
+                    System.out.println(category + " " + resource.id + " allocated at:");
+                    for (StackTraceElement element : resource.allocation.getStackTrace()) {
+                        System.out.println("\tat " + element);
+                    }
+                }
+            }
         }
+    }
 
-        IntBuffer intbuffer = createDirectIntBuffer(textureNames.size());
-        intbuffer.flip();
-        GL11.glDeleteTextures(intbuffer);
+    private static void register(Category category, int id, int amount) {
+        Resource resource = new Resource(category, id, amount);
+        if (DEBUG) {
+            resource.allocation = new Throwable();
+        }
+        resources[category.ordinal()].put(id, resource);
+    }
 
-        for (Integer textureName : textureNames) {
-            intbuffer.put(textureName);
+    private static void queueDeletion(Category category, int id) {
+        Resource resource = resources[category.ordinal()].remove(id);
+        if (resource == null) {
+            throw new IllegalStateException(category + " " + id + " is not allocated");
         }
 
-        intbuffer.flip();
-        GL11.glDeleteTextures(intbuffer);
+        bytes[category.ordinal()] -= resource.size;
+        deletionQueue.add(resource);
+    }
+
+    public static synchronized int getCount(Category category) {
+        return resources[category.ordinal()].size();
+    }
 
-        displayLists.clear();
-        textureNames.clear();
+    public static synchronized long getBytes(Category category) {
+        return bytes[category.ordinal()];
     }
 
     public static IntBuffer createDirectIntBuffer(int size) {
@@ -63,4 +166,23 @@ public class GLAllocation {
         return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
     }
 
+    public enum Category {
+        DISPLAY_LIST,
+        TEXTURE,
+        BUFFER
+    }
+
+    private static class Resource {
+        private final Category category;
+        private final int id;
+        private final int amount;
+        private long size;
+        private Throwable allocation;
+
+        private Resource(Category category, int id, int amount) {
+            this.category = category;
+            this.id = id;
+            this.amount = amount;
+        }
+    }
 }
@@ -6,21 +6,30 @@ import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GLContext;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 
+/**
+ * Writes vertices straight into a direct buffer that grows when it's full, so a mesh is never flushed halfway.
+ * The shared instance is meant for the render thread, mesh workers create their own tessellator.
+ */
 public class Tessellator {
 
-    public static final Tessellator instance = new Tessellator(0x200000);
+    public static final Tessellator instance = new Tessellator(0x10000);
 
     private static final boolean convertQuadsToTriangles = true;
     private static final boolean tryVBO = false;
 
-    private final ByteBuffer byteBuffer;
-    private final IntBuffer intBuffer;
-    private final FloatBuffer floatBuffer;
+    // The light level is read as the first of two shorts in the last int of a vertex
+    private static final int LIGHT_SHIFT = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 16;
 
-    private final int[] rawBuffer;
+    private ByteBuffer byteBuffer;
+    private IntBuffer intBuffer;
+    private FloatBuffer floatBuffer;
+
+    // Capacity of the buffer in ints
+    private int capacity;
     private int vertexCount;
 
     private double textureU;
@@ -30,6 +39,8 @@ public class Tessellator {
     private boolean hasColor;
     private boolean hasTexture;
     private boolean hasNormals;
+    private int lightLevel;
+    private boolean hasLight;
 
     private int rawBufferIndex;
     private int addedVertices;
@@ -46,19 +57,24 @@ public class Tessellator {
     private IntBuffer vertexBuffers;
     private int vboIndex;
     private final int vboCount = 10;
-    private final int bufferSize;
 
-    private Tessellator(int i) {
-        this.bufferSize = i;
-        this.byteBuffer = GLAllocation.createDirectByteBuffer(i * 4);
-        this.rawBuffer = new int[i];
+    /**
+     * Create a tessellator with its own vertex buffer
+     *
+     * @param initialCapacity Initial size of the vertex buffer in ints, it grows if required
+     */
+    public Tessellator(int initialCapacity) {
+        this.capacity = initialCapacity;
+        this.byteBuffer = GLAllocation.createDirectByteBuffer(initialCapacity * 4);
 
         this.intBuffer = this.byteBuffer.asIntBuffer();
         this.floatBuffer = this.byteBuffer.asFloatBuffer();
 
         if (this.useVBO) {
             this.vertexBuffers = GLAllocation.createDirectIntBuffer(this.vboCount);
-            ARBBufferObject.glGenBuffersARB(this.vertexBuffers);
+            for (int i = 0; i < this.vboCount; i++) {
+                this.vertexBuffers.put(i, GLAllocation.generateBuffer());
+            }
         }
     }
 
@@ -68,9 +84,6 @@ public class Tessellator {
         }
         this.isDrawing = false;
         if (this.vertexCount > 0) {
-            this.intBuffer.clear();
-
-            this.intBuffer.put(this.rawBuffer, 0, this.rawBufferIndex);
             this.byteBuffer.position(0);
             this.byteBuffer.limit(this.rawBufferIndex * 4);
 
@@ -133,6 +146,17 @@ public class Tessellator {
         this.reset();
     }
 
+    /**
+     * Stop tessellating without drawing, used when the vertex data was taken from the raw buffer
+     */
+    public void discard() {
+        if (!this.isDrawing) {
+            throw new IllegalStateException("Not tesselating!");
+        }
+        this.isDrawing = false;
+        this.reset();
+    }
+
     private void reset() {
         this.vertexCount = 0;
         this.byteBuffer.clear();
@@ -156,6 +180,7 @@ public class Tessellator {
             this.hasNormals = false;
             this.hasColor = false;
             this.hasTexture = false;
+            this.hasLight = false;
             this.isColorDisabled = false;
         }
     }
@@ -202,22 +227,31 @@ public class Tessellator {
     public void addVertex(double x, double y, double z) {
         this.addedVertices++;
 
+        // Space for this vertex and the two copied triangle vertices
+        this.ensureCapacity(24);
+
+        IntBuffer buffer = this.intBuffer;
+
         if (this.drawMode == 7 && convertQuadsToTriangles && this.addedVertices % 4 == 0) {
             for (int i = 0; i < 2; i++) {
                 int j = 8 * (3 - i);
 
                 if (this.hasTexture) {
-                    this.rawBuffer[this.rawBufferIndex + 3] = this.rawBuffer[(this.rawBufferIndex - j) + 3];
-                    this.rawBuffer[this.rawBufferIndex + 4] = this.rawBuffer[(this.rawBufferIndex - j) + 4];
+                    buffer.put(this.rawBufferIndex + 3, buffer.get((this.rawBufferIndex - j) + 3));
+                    buffer.put(this.rawBufferIndex + 4, buffer.get((this.rawBufferIndex - j) + 4));
                 }
 
                 if (this.hasColor) {
-                    this.rawBuffer[this.rawBufferIndex + 5] = this.rawBuffer[(this.rawBufferIndex - j) + 5];
+                    buffer.put(this.rawBufferIndex + 5, buffer.get((this.rawBufferIndex - j) + 5));
+                }
+
+                if (this.hasLight) {
+                    buffer.put(this.rawBufferIndex + 7, buffer.get((this.rawBufferIndex - j) + 7));
                 }
 
-                this.rawBuffer[this.rawBufferIndex] = this.rawBuffer[(this.rawBufferIndex - j)];
-                this.rawBuffer[this.rawBufferIndex + 1] = this.rawBuffer[(this.rawBufferIndex - j) + 1];
-                this.rawBuffer[this.rawBufferIndex + 2] = this.rawBuffer[(this.rawBufferIndex - j) + 2];
+                buffer.put(this.rawBufferIndex, buffer.get(this.rawBufferIndex - j));
+                buffer.put(this.rawBufferIndex + 1, buffer.get((this.rawBufferIndex - j) + 1));
+                buffer.put(this.rawBufferIndex + 2, buffer.get((this.rawBufferIndex - j) + 2));
 
                 this.vertexCount++;
                 this.rawBufferIndex += 8;
@@ -225,29 +259,80 @@ public class Tessellator {
         }
 
         if (this.hasTexture) {
-            this.rawBuffer[this.rawBufferIndex + 3] = Float.floatToRawIntBits((float) this.textureU);
-            this.rawBuffer[this.rawBufferIndex + 4] = Float.floatToRawIntBits((float) this.textureV);
+            buffer.put(this.rawBufferIndex + 3, Float.floatToRawIntBits((float) this.textureU));
+            buffer.put(this.rawBufferIndex + 4, Float.floatToRawIntBits((float) this.textureV));
         }
 
         if (this.hasColor) {
-            this.rawBuffer[this.rawBufferIndex + 5] = this.color;
+            buffer.put(this.rawBufferIndex + 5, this.color);
         }
 
         if (this.hasNormals) {
-            this.rawBuffer[this.rawBufferIndex + 6] = this.normal;
+            buffer.put(this.rawBufferIndex + 6, this.normal);
+        }
+
+        if (this.hasLight) {
+            buffer.put(this.rawBufferIndex + 7, this.lightLevel << LIGHT_SHIFT);
         }
 
-        this.rawBuffer[this.rawBufferIndex] = Float.floatToRawIntBits((float) (x + this.xOffset));
-        this.rawBuffer[this.rawBufferIndex + 1] = Float.floatToRawIntBits((float) (y + this.yOffset));
-        this.rawBuffer[this.rawBufferIndex + 2] = Float.floatToRawIntBits((float) (z + this.zOffset));
+        buffer.put(this.rawBufferIndex, Float.floatToRawIntBits((float) (x + this.xOffset)));
+        buffer.put(this.rawBufferIndex + 1, Float.floatToRawIntBits((float) (y + this.yOffset)));
+        buffer.put(this.rawBufferIndex + 2, Float.floatToRawIntBits((float) (z + this.zOffset)));
 
         this.rawBufferIndex += 8;
         this.vertexCount++;
+    }
 
-        if (this.vertexCount % 4 == 0 && this.rawBufferIndex >= this.bufferSize - 32) {
-            this.draw();
-            this.isDrawing = true;
+    /**
+     * Grow the vertex buffer if the given amount of ints doesn't fit anymore
+     */
+    private void ensureCapacity(int ints) {
+        if (this.rawBufferIndex + ints <= this.capacity) {
+            return;
         }
+
+        int newCapacity = Math.max(this.capacity * 2, this.rawBufferIndex + ints);
+        ByteBuffer newBuffer = GLAllocation.createDirectByteBuffer(newCapacity * 4);
+
+        // Copy the written vertices
+        this.byteBuffer.clear();
+        this.byteBuffer.limit(this.rawBufferIndex * 4);
+        newBuffer.put(this.byteBuffer);
+        newBuffer.clear();
+
+        this.byteBuffer = newBuffer;
+        this.intBuffer = newBuffer.asIntBuffer();
+        this.floatBuffer = newBuffer.asFloatBuffer();
+        this.capacity = newCapacity;
+    }
+
+    /**
+     * Add already converted triangle vertices in the block vertex format (position, texture and color)
+     *
+     * @param data   Raw vertex data
+     * @param offset First int to add
+     * @param length Amount of ints to add
+     */
+    public void addVertexData(int[] data, int offset, int length) {
+        this.ensureCapacity(length);
+
+        this.hasTexture = true;
+        this.hasColor = true;
+
+        this.intBuffer.put(this.rawBufferIndex, data, offset, length);
+        this.rawBufferIndex += length;
+        this.vertexCount += length / 8;
+    }
+
+    /**
+     * Get the written vertex data, valid up to {@link #getRawBufferIndex()}
+     */
+    public IntBuffer getVertexData() {
+        return this.intBuffer;
+    }
+
+    public int getRawBufferIndex() {
+        return this.rawBufferIndex;
     }
 
     public void setColorOpaque_I(int rgb) {
@@ -280,6 +365,16 @@ public class Tessellator {
         this.normal = xByte | (yByte << 8 & 0xFF00) | (zByte << 16 & 0xFF0000);
     }
 
+    /**
+     * Set the light level of the next vertices, it's mapped to a brightness at draw time by the {@link de.labystudio.game.render.world.Lightmap}
+     *
+     * @param lightLevel Light level between 0 and 15
+     */
+    public void setLightLevel(int lightLevel) {
+        this.hasLight = true;
+        this.lightLevel = lightLevel;
+    }
+
     public void setTranslationD(double xOffset, double yOffset, double zOffset) {
         this.xOffset = xOffset;
         this.yOffset = yOffset;
@@ -0,0 +1,37 @@
+package de.labystudio.game.render.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The buffer calls of the graphics API that are used by the {@link BufferPool}.
+ * Allows the pool to run without an OpenGL context.
+ */
+public interface BufferBackend {
+
+    /**
+     * Create a new buffer name
+     */
+    int createBuffer();
+
+    /**
+     * Allocate the storage of a buffer, previous content is discarded
+     *
+     * @param buffer Buffer name
+     * @param size   Size in bytes
+     */
+    void allocate(int buffer, int size);
+
+    /**
+     * Write data into a buffer
+     *
+     * @param buffer Buffer name
+     * @param offset Offset in bytes
+     * @param data   Data from its position to its limit
+     */
+    void upload(int buffer, int offset, ByteBuffer data);
+
+    /**
+     * Delete a buffer and its storage
+     */
+    void deleteBuffer(int buffer);
+}
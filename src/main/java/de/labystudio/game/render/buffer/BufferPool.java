@@ -0,0 +1,169 @@
+package de.labystudio.game.render.buffer;
+
+import de.labystudio.game.render.GLAllocation;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of vertex buffers in power of two size classes. Released buffers are kept per class
+ * and handed out again, so rebuilding a mesh of a similar size doesn't allocate new GPU memory.
+ */
+public class BufferPool {
+
+    // Smallest size class is 4 KiB, the largest 8 MiB
+    private static final int MIN_CLASS_SHIFT = 12;
+    private static final int CLASSES = 12;
+
+    // Released buffers of a class beyond this amount are deleted
+    private static final int MAX_FREE_PER_CLASS = 32;
+
+    private final BufferBackend backend;
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<PooledBuffer>[] freeBuffers = (ArrayDeque<PooledBuffer>[]) new ArrayDeque<?>[CLASSES];
+
+    // Staging memory to upload int arrays
+    private ByteBuffer stagingBuffer = GLAllocation.createDirectByteBuffer(1 << MIN_CLASS_SHIFT);
+    private IntBuffer stagingIntBuffer = this.stagingBuffer.asIntBuffer();
+
+    // Statistics
+    private long allocatedBytes;
+    private long usedBytes;
+    private int bufferCount;
+
+    public BufferPool(BufferBackend backend) {
+        this.backend = backend;
+
+        for (int i = 0; i < CLASSES; i++) {
+            this.freeBuffers[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Get a buffer with at least the given size
+     *
+     * @param size Size in bytes
+     * @return Pooled or new buffer
+     */
+    public PooledBuffer acquire(int size) {
+        int sizeClass = getSizeClass(size);
+
+        PooledBuffer buffer = this.freeBuffers[sizeClass].poll();
+        if (buffer == null) {
+            int capacity = getCapacity(sizeClass);
+            int id = this.backend.createBuffer();
+            this.backend.allocate(id, capacity);
+
+            buffer = new PooledBuffer(id, capacity, sizeClass);
+            this.allocatedBytes += capacity;
+            this.bufferCount++;
+        }
+
+        this.usedBytes += buffer.capacity;
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool
+     *
+     * @param buffer Buffer or null
+     */
+    public void release(PooledBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        this.usedBytes -= buffer.capacity;
+
+        ArrayDeque<PooledBuffer> free = this.freeBuffers[buffer.sizeClass];
+        if (free.size() < MAX_FREE_PER_CLASS) {
+            free.add(buffer);
+        } else {
+            this.backend.deleteBuffer(buffer.id);
+            this.allocatedBytes -= buffer.capacity;
+            this.bufferCount--;
+        }
+    }
+
+    /**
+     * Write ints into a buffer
+     *
+     * @param buffer Target buffer
+     * @param offset Offset in the buffer in bytes
+     * @param data   Source data
+     * @param from   First int of the source data
+     * @param length Amount of ints
+     */
+    public void upload(PooledBuffer buffer, int offset, int[] data, int from, int length) {
+        int bytes = length << 2;
+        if (offset + bytes > buffer.capacity) {
+            throw new IllegalArgumentException("Upload of " + bytes + " bytes at " + offset + " exceeds buffer capacity " + buffer.capacity);
+        }
+
+        // Grow the staging memory
+        if (bytes > this.stagingBuffer.capacity()) {
+            this.stagingBuffer = GLAllocation.createDirectByteBuffer(Integer.highestOneBit(bytes - 1) << 1);
+            this.stagingIntBuffer = this.stagingBuffer.asIntBuffer();
+        }
+
+        this.stagingIntBuffer.clear();
+        this.stagingIntBuffer.put(data, from, length);
+
+        this.stagingBuffer.clear();
+        this.stagingBuffer.limit(bytes);
+        this.backend.upload(buffer.id, offset, this.stagingBuffer);
+    }
+
+    public static int getSizeClass(int size) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        int sizeClass = Math.max(0, shift - MIN_CLASS_SHIFT);
+        if (sizeClass >= CLASSES) {
+            throw new IllegalArgumentException("Buffer size " + size + " exceeds the largest size class");
+        }
+        return sizeClass;
+    }
+
+    public static int getCapacity(int sizeClass) {
+        return 1 << (sizeClass + MIN_CLASS_SHIFT);
+    }
+
+    /**
+     * GPU memory of all buffers, including the pooled ones
+     */
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * GPU memory of the buffers that are in use
+     */
+    public long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    public int getBufferCount() {
+        return this.bufferCount;
+    }
+
+    public static class PooledBuffer {
+        private final int id;
+        private final int capacity;
+        private final int sizeClass;
+
+        private PooledBuffer(int id, int capacity, int sizeClass) {
+            this.id = id;
+            this.capacity = capacity;
+            this.sizeClass = sizeClass;
+        }
+
+        public int getId() {
+            return this.id;
+        }
+
+        public int getCapacity() {
+            return this.capacity;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package de.labystudio.game.render.buffer;
+
+import de.labystudio.game.render.GLAllocation;
+import org.lwjgl.opengl.ARBBufferObject;
+import org.lwjgl.opengl.ARBVertexBufferObject;
+
+import java.nio.ByteBuffer;
+
+public class LwjglBufferBackend implements BufferBackend {
+
+    @Override
+    public int createBuffer() {
+        return GLAllocation.generateBuffer();
+    }
+
+    @Override
+    public void allocate(int buffer, int size) {
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, buffer);
+        ARBBufferObject.glBufferDataARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, size, ARBBufferObject.GL_STATIC_DRAW_ARB);
+        GLAllocation.setSize(GLAllocation.Category.BUFFER, buffer, size);
+    }
+
+    @Override
+    public void upload(int buffer, int offset, ByteBuffer data) {
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, buffer);
+        ARBBufferObject.glBufferSubDataARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, offset, data);
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        GLAllocation.deleteBuffer(buffer);
+    }
+}
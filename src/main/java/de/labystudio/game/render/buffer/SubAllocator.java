@@ -0,0 +1,182 @@
+package de.labystudio.game.render.buffer;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntRBTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2IntSortedMap;
+import it.unimi.dsi.fastutil.longs.LongRBTreeSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+
+/**
+ * Places blocks of memory inside a fixed range, for example a large vertex buffer.
+ * Free blocks are kept ordered by size for best-fit allocation and ordered by offset to merge neighbours on free.
+ * Doesn't touch OpenGL, the caller uploads the data to the returned offsets.
+ */
+public class SubAllocator {
+
+    private final int capacity;
+    private final int alignment;
+
+    // Free blocks by offset and by size (size << 32 | offset)
+    private final Int2IntRBTreeMap freeByOffset = new Int2IntRBTreeMap();
+    private final LongRBTreeSet freeBySize = new LongRBTreeSet();
+
+    // Size of each allocated block by offset
+    private final Int2IntOpenHashMap allocations = new Int2IntOpenHashMap();
+
+    private int usedBytes;
+
+    /**
+     * @param capacity  Size of the managed range in bytes
+     * @param alignment Offsets and sizes are multiples of this value
+     */
+    public SubAllocator(int capacity, int alignment) {
+        this.capacity = capacity - capacity % alignment;
+        this.alignment = alignment;
+        this.allocations.defaultReturnValue(-1);
+        this.addFreeBlock(0, this.capacity);
+    }
+
+    /**
+     * Allocate a block using the smallest free block that fits
+     *
+     * @param size Size in bytes
+     * @return Offset of the block or -1 if no free block is large enough
+     */
+    public int allocate(int size) {
+        size = this.align(Math.max(size, 1));
+
+        // Smallest free block with at least the requested size
+        LongSortedSet candidates = this.freeBySize.tailSet((long) size << 32);
+        if (candidates.isEmpty()) {
+            return -1;
+        }
+
+        long block = candidates.firstLong();
+        int blockSize = (int) (block >>> 32);
+        int offset = (int) block;
+
+        this.removeFreeBlock(offset, blockSize);
+
+        // Keep the remainder free
+        if (blockSize > size) {
+            this.addFreeBlock(offset + size, blockSize - size);
+        }
+
+        this.allocations.put(offset, size);
+        this.usedBytes += size;
+        return offset;
+    }
+
+    /**
+     * Free a block and merge it with free neighbours
+     *
+     * @param offset Offset returned by {@link #allocate(int)}
+     */
+    public void free(int offset) {
+        int size = this.allocations.remove(offset);
+        if (size == -1) {
+            throw new IllegalArgumentException("No block allocated at " + offset);
+        }
+        this.usedBytes -= size;
+
+        // Merge with the previous free block
+        Int2IntSortedMap before = this.freeByOffset.headMap(offset);
+        if (!before.isEmpty()) {
+            int previousOffset = before.lastIntKey();
+            int previousSize = before.get(previousOffset);
+            if (previousOffset + previousSize == offset) {
+                this.removeFreeBlock(previousOffset, previousSize);
+                offset = previousOffset;
+                size += previousSize;
+            }
+        }
+
+        // Merge with the next free block
+        int nextOffset = offset + size;
+        if (this.freeByOffset.containsKey(nextOffset)) {
+            int nextSize = this.freeByOffset.get(nextOffset);
+            this.removeFreeBlock(nextOffset, nextSize);
+            size += nextSize;
+        }
+
+        this.addFreeBlock(offset, size);
+    }
+
+    /**
+     * Get the size of an allocated block
+     *
+     * @return Size in bytes or -1 if nothing is allocated at the offset
+     */
+    public int getSize(int offset) {
+        return this.allocations.get(offset);
+    }
+
+    /**
+     * Free everything, used before moving all blocks to the front
+     */
+    public void clear() {
+        this.freeByOffset.clear();
+        this.freeBySize.clear();
+        this.allocations.clear();
+        this.usedBytes = 0;
+        this.addFreeBlock(0, this.capacity);
+    }
+
+    private void addFreeBlock(int offset, int size) {
+        if (size > 0) {
+            this.freeByOffset.put(offset, size);
+            this.freeBySize.add((long) size << 32 | offset);
+        }
+    }
+
+    private void removeFreeBlock(int offset, int size) {
+        this.freeByOffset.remove(offset);
+        this.freeBySize.remove((long) size << 32 | offset);
+    }
+
+    private int align(int size) {
+        return (size + this.alignment - 1) / this.alignment * this.alignment;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    public int getFreeBytes() {
+        return this.capacity - this.usedBytes;
+    }
+
+    public int getLargestFreeBlock() {
+        return this.freeBySize.isEmpty() ? 0 : (int) (this.freeBySize.lastLong() >>> 32);
+    }
+
+    public int getAllocationCount() {
+        return this.allocations.size();
+    }
+
+    public int getFreeBlockCount() {
+        return this.freeByOffset.size();
+    }
+
+    /**
+     * Share of the free memory that is not part of the largest free block
+     *
+     * @return Fragmentation between 0.0 and 1.0
+     */
+    public float getFragmentation() {
+        int free = this.getFreeBytes();
+        return free == 0 ? 0.0F : 1.0F - (float) this.getLargestFreeBlock() / free;
+    }
+
+    /**
+     * Offsets and sizes of all allocated blocks
+     */
+    public Iterable<Int2IntMap.Entry> getAllocations() {
+        return this.allocations.int2IntEntrySet();
+    }
+}
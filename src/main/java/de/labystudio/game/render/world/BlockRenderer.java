@@ -11,7 +11,11 @@ public class BlockRenderer {
 
     public static final boolean CLASSIC_LIGHTNING = false;
 
-    private final Tessellator tessellator = Tessellator.instance;
+    private final Tessellator tessellator;
+
+    public BlockRenderer(Tessellator tessellator) {
+        this.tessellator = tessellator;
+    }
 
     public void renderBlock(IWorldAccess world, Block block, int x, int y, int z) {
         BoundingBox boundingBox = block.getBoundingBox(world, x, y, z);
@@ -41,11 +45,13 @@ public class BlockRenderer {
         float minV = (float) (textureIndex / 16);
         float maxV = minV + (16 / 256F);
 
+        // The vertex color only contains the shading, the light level is mapped by the lightmap
+        float shading = face.getShading();
+        this.tessellator.setColorRGB_F(shading, shading, shading);
+
         // Classic lightning
         if (CLASSIC_LIGHTNING) {
-            float brightness = 0.9F / 15.0F * world.getLightAt((int) minX + face.x, (int) minY + face.y, (int) minZ + face.z) + 0.1F;
-            float color = brightness * face.getShading();
-            this.tessellator.setColorRGB_F(color, color, color);
+            this.tessellator.setLightLevel(world.getLightAt((int) minX + face.x, (int) minY + face.y, (int) minZ + face.z));
         }
 
         if (face == EnumBlockFace.BOTTOM) {
@@ -90,24 +96,12 @@ public class BlockRenderer {
     private void addBlockCorner(IWorldAccess world, EnumBlockFace face, double x, double y, double z, float u, float v) {
         // Smooth lightning
         if (!CLASSIC_LIGHTNING) {
-            this.setAverageColor(world, face, (int) x, (int) y, (int) z);
+            this.tessellator.setLightLevel(this.getAverageLightLevelAt(world, (int) x, (int) y, (int) z));
         }
 
         this.tessellator.addVertexWithUV(x, y, z, u, v);
     }
 
-    private void setAverageColor(IWorldAccess world, EnumBlockFace face, int x, int y, int z) {
-        // Get the average light level of all 4 blocks at this corner
-        int lightLevelAtThisCorner = this.getAverageLightLevelAt(world, x, y, z);
-
-        // Convert light level from [0 - 15] to [0.1 - 1.0]
-        float brightness = 0.9F / 15.0F * lightLevelAtThisCorner + 0.1F;
-        float color = brightness * face.getShading();
-
-        // Set color with shading
-        this.tessellator.setColorRGB_F(color, color, color);
-    }
-
     private int getAverageLightLevelAt(IWorldAccess world, int x, int y, int z) {
         int totalLightLevel = 0;
         int totalBlocks = 0;
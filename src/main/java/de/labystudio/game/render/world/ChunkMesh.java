@@ -0,0 +1,141 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.buffer.BufferPool;
+import org.lwjgl.opengl.ARBBufferObject;
+import org.lwjgl.opengl.ARBVertexBufferObject;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+
+/**
+ * Vertex buffer of one render layer of a shared section mesh. The buffer comes from a {@link BufferPool}
+ * and is reused by later uploads as long as the mesh fits into it.
+ * The meshes of the other sections are placed into a {@link RegionBuffer}.
+ */
+public class ChunkMesh {
+
+    // Position, texture coordinates, color, normal and the light level
+    public static final int VERTEX_SIZE = 8 * 4;
+
+    private static final int VERTICES_PER_QUAD = 6;
+
+    private final BufferPool pool;
+    private BufferPool.PooledBuffer buffer;
+    private int vertexCount;
+
+    public ChunkMesh(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Write the slots of a section mesh into the vertex buffer. Only the changed slots are written
+     * if the buffer is kept, a buffer of another size class gets the entire mesh.
+     */
+    public void upload(SectionMesh mesh) {
+        int slots = mesh.getSlotCount();
+        int size = slots * SectionMesh.QUAD_INTS * 4;
+
+        if (mesh.isEmpty()) {
+            this.release();
+            mesh.clearDirty();
+            return;
+        }
+
+        int from = Math.min(mesh.getDirtyFrom(), slots);
+        int to = Math.min(mesh.getDirtyTo(), slots);
+
+        // Take another buffer if the mesh doesn't fit or uses less than a quarter of a larger buffer
+        if (this.buffer == null || size > this.buffer.getCapacity()
+                || this.buffer.getCapacity() > BufferPool.getCapacity(0) && size < this.buffer.getCapacity() / 4) {
+            this.pool.release(this.buffer);
+            this.buffer = this.pool.acquire(size);
+
+            from = 0;
+            to = slots;
+        }
+
+        if (from < to) {
+            int offset = from * SectionMesh.QUAD_INTS;
+            this.pool.upload(this.buffer, offset * 4, mesh.getVertexData(), offset, (to - from) * SectionMesh.QUAD_INTS);
+        }
+
+        this.vertexCount = slots * VERTICES_PER_QUAD;
+        mesh.clearDirty();
+    }
+
+    /**
+     * Draw the mesh, the client states have to be enabled using {@link #setupRendering()}
+     */
+    public void render() {
+        if (this.buffer == null) {
+            return;
+        }
+
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, this.buffer.getId());
+        setPointers();
+        GL11.glDrawArrays(GL11.GL_TRIANGLES, 0, this.vertexCount);
+    }
+
+    /**
+     * Return the buffer to the pool
+     */
+    public void release() {
+        this.pool.release(this.buffer);
+        this.buffer = null;
+        this.vertexCount = 0;
+    }
+
+    public boolean isEmpty() {
+        return this.buffer == null;
+    }
+
+    /**
+     * GPU memory used by the vertices of this mesh
+     */
+    public int getSize() {
+        return this.vertexCount * VERTEX_SIZE;
+    }
+
+    /**
+     * GPU memory reserved for this mesh
+     */
+    public int getCapacity() {
+        return this.buffer == null ? 0 : this.buffer.getCapacity();
+    }
+
+    /**
+     * Point the client states to the bound vertex buffer
+     */
+    public static void setPointers() {
+        GL11.glVertexPointer(3, GL11.GL_FLOAT, VERTEX_SIZE, 0L);
+        GL11.glTexCoordPointer(2, GL11.GL_FLOAT, VERTEX_SIZE, 12L);
+        GL11.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, VERTEX_SIZE, 20L);
+
+        // The light level is the texture coordinate of the lightmap
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE1);
+        GL11.glTexCoordPointer(2, GL11.GL_SHORT, VERTEX_SIZE, 28L);
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE0);
+    }
+
+    public static void setupRendering() {
+        GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+        GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE1);
+        GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE0);
+    }
+
+    public static void finishRendering() {
+        // The tessellator draws from client memory
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, 0);
+
+        GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+        GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE1);
+        GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL13.glClientActiveTexture(GL13.GL_TEXTURE0);
+    }
+}
@@ -0,0 +1,11 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.world.chunk.ChunkSection;
+
+public interface ISectionAccess {
+
+    /**
+     * Section at the given section coordinates, null if its chunk isn't loaded
+     */
+    ChunkSection getSection(int x, int y, int z);
+}
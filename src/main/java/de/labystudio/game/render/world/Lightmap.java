@@ -0,0 +1,117 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.GLAllocation;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Maps the light level of a vertex to its brightness at draw time. The table is a 16x1 texture on the second
+ * texture unit and the vertices carry their light level as texture coordinate, so a global light change only
+ * uploads the table again instead of rebuilding the chunk meshes.
+ */
+public class Lightmap {
+
+    public static final int LEVELS = 16;
+
+    // Brightness of light level 0 without any global factor
+    private static final float MIN_BRIGHTNESS = 0.1F;
+
+    private final int textureId = GLAllocation.generateTexture();
+    private final ByteBuffer pixels = GLAllocation.createDirectByteBuffer(LEVELS * 4);
+
+    // Global factor, for example the daylight
+    private float brightness = 1.0F;
+    private float gamma = 1.0F;
+    private boolean dirty = true;
+
+    public Lightmap() {
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.textureId);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_CLAMP);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_CLAMP);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, LEVELS, 1, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        GLAllocation.setSize(GLAllocation.Category.TEXTURE, this.textureId, LEVELS * 4);
+    }
+
+    /**
+     * Brightness of a light level before the global factor and gamma are applied
+     *
+     * @param level Light level between 0 and 15
+     * @return Brightness between 0.1 and 1.0
+     */
+    public static float getBaseBrightness(int level) {
+        return (1.0F - MIN_BRIGHTNESS) / (LEVELS - 1) * level + MIN_BRIGHTNESS;
+    }
+
+    /**
+     * Upload the table if it changed since the last frame
+     */
+    public void update() {
+        if (!this.dirty) {
+            return;
+        }
+        this.dirty = false;
+
+        this.pixels.clear();
+        for (int level = 0; level < LEVELS; level++) {
+            float value = (float) Math.pow(getBaseBrightness(level) * this.brightness, 1.0F / this.gamma);
+            byte color = (byte) Math.min(255, (int) (value * 255.0F));
+            this.pixels.put(color).put(color).put(color).put((byte) 255);
+        }
+        this.pixels.flip();
+
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.textureId);
+        GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, LEVELS, 1, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, this.pixels);
+    }
+
+    /**
+     * Enable the table on the second texture unit. The light level of a vertex is scaled to the texel center.
+     */
+    public void enable() {
+        GL13.glActiveTexture(GL13.GL_TEXTURE1);
+        GL11.glEnable(GL11.GL_TEXTURE_2D);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.textureId);
+
+        GL11.glMatrixMode(GL11.GL_TEXTURE);
+        GL11.glLoadIdentity();
+        GL11.glTranslatef(0.5F / LEVELS, 0.5F, 0.0F);
+        GL11.glScalef(1.0F / LEVELS, 1.0F, 1.0F);
+        GL11.glMatrixMode(GL11.GL_MODELVIEW);
+
+        GL13.glActiveTexture(GL13.GL_TEXTURE0);
+    }
+
+    public void disable() {
+        GL13.glActiveTexture(GL13.GL_TEXTURE1);
+        GL11.glDisable(GL11.GL_TEXTURE_2D);
+        GL13.glActiveTexture(GL13.GL_TEXTURE0);
+    }
+
+    /**
+     * Set the global brightness factor, for example for a day and night cycle
+     */
+    public void setBrightness(float brightness) {
+        if (this.brightness != brightness) {
+            this.brightness = brightness;
+            this.dirty = true;
+        }
+    }
+
+    public void setGamma(float gamma) {
+        if (this.gamma != gamma) {
+            this.gamma = gamma;
+            this.dirty = true;
+        }
+    }
+
+    public float getBrightness() {
+        return this.brightness;
+    }
+
+    public float getGamma() {
+        return this.gamma;
+    }
+}
@@ -0,0 +1,174 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.world.WorldRenderer;
+import de.labystudio.game.world.chunk.ChunkSection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Queue of chunk sections that have to be rebuilt. Sections are sorted into buckets by their distance
+ * to the camera, sections behind the camera are placed after all sections in the view direction.
+ * Each frame rebuilds as many sections as fit into the time budget.
+ */
+public class RebuildScheduler {
+
+    // Sections further away than this share the last bucket
+    private static final int DISTANCE_BUCKETS = 32;
+
+    // Sort the queue again if the view direction turned more than ~45 degrees
+    private static final float MIN_DIRECTION_DOT = 0.7F;
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<ChunkSection>[] buckets = (ArrayDeque<ChunkSection>[]) new ArrayDeque<?>[DISTANCE_BUCKETS * 2];
+    private final List<ChunkSection> resortBuffer = new ArrayList<>();
+
+    // Lowest bucket that might contain a section
+    private int firstBucket = this.buckets.length;
+    private int size;
+
+    // Camera of the current bucket assignment
+    private int cameraX;
+    private int cameraY;
+    private int cameraZ;
+    private float directionX;
+    private float directionY;
+    private float directionZ = 1.0F;
+
+    // Sections further away on the x or z axis are not rebuilt
+    private int maxDistance = Integer.MAX_VALUE;
+
+    private int rebuildsLastFrame;
+
+    public RebuildScheduler() {
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Update the camera, the queued sections are sorted again if the camera changed its section or turned around
+     *
+     * @param sectionX   Section x coordinate of the camera
+     * @param sectionY   Section y coordinate of the camera
+     * @param sectionZ   Section z coordinate of the camera
+     * @param directionX Normalized view direction x
+     * @param directionY Normalized view direction y
+     * @param directionZ Normalized view direction z
+     */
+    public void setCamera(int sectionX, int sectionY, int sectionZ, float directionX, float directionY, float directionZ) {
+        boolean moved = sectionX != this.cameraX || sectionY != this.cameraY || sectionZ != this.cameraZ;
+        boolean turned = directionX * this.directionX + directionY * this.directionY + directionZ * this.directionZ < MIN_DIRECTION_DOT;
+        if (!moved && !turned) {
+            return;
+        }
+
+        this.cameraX = sectionX;
+        this.cameraY = sectionY;
+        this.cameraZ = sectionZ;
+        this.directionX = directionX;
+        this.directionY = directionY;
+        this.directionZ = directionZ;
+
+        // Assign all sections to their new bucket
+        for (int i = this.firstBucket; i < this.buckets.length; i++) {
+            this.resortBuffer.addAll(this.buckets[i]);
+            this.buckets[i].clear();
+        }
+        this.firstBucket = this.buckets.length;
+        for (ChunkSection section : this.resortBuffer) {
+            this.addToBucket(section);
+        }
+        this.resortBuffer.clear();
+    }
+
+    /**
+     * Add a section to the queue, sections that are already queued are ignored
+     */
+    public void enqueue(ChunkSection section) {
+        if (section.isScheduled()) {
+            return;
+        }
+
+        section.setScheduled(true);
+        this.addToBucket(section);
+        this.size++;
+    }
+
+    /**
+     * Rebuild the sections with the highest priority until the time budget is used up.
+     * At least one section is rebuilt per call, so the queue always makes progress.
+     *
+     * @param renderer     Renderer to rebuild the sections with
+     * @param budgetNanos  Time budget in nanoseconds
+     */
+    public void rebuild(WorldRenderer renderer, long budgetNanos) {
+        long start = System.nanoTime();
+        int rebuilds = 0;
+
+        while (this.size > 0) {
+            ChunkSection section = this.poll();
+
+            // Sections beyond the render distance are queued again once they are visible
+            if (Math.abs(section.x - this.cameraX) > this.maxDistance || Math.abs(section.z - this.cameraZ) > this.maxDistance) {
+                continue;
+            }
+
+            // The section might have been rebuilt in the meantime
+            if (section.isQueuedForRebuild()) {
+                section.rebuild(renderer);
+                rebuilds++;
+
+                if (System.nanoTime() - start >= budgetNanos) {
+                    break;
+                }
+            }
+        }
+
+        this.rebuildsLastFrame = rebuilds;
+    }
+
+    private ChunkSection poll() {
+        while (this.buckets[this.firstBucket].isEmpty()) {
+            this.firstBucket++;
+        }
+
+        ChunkSection section = this.buckets[this.firstBucket].poll();
+        section.setScheduled(false);
+        this.size--;
+        return section;
+    }
+
+    private void addToBucket(ChunkSection section) {
+        int relativeX = section.x - this.cameraX;
+        int relativeY = section.y - this.cameraY;
+        int relativeZ = section.z - this.cameraZ;
+
+        int distance = (int) Math.sqrt(relativeX * relativeX + relativeY * relativeY + relativeZ * relativeZ);
+        int bucket = Math.min(distance, DISTANCE_BUCKETS - 1);
+
+        // Sections behind the camera come after all sections in the view direction
+        if (relativeX * this.directionX + relativeY * this.directionY + relativeZ * this.directionZ < 0) {
+            bucket += DISTANCE_BUCKETS;
+        }
+
+        this.buckets[bucket].add(section);
+        this.firstBucket = Math.min(this.firstBucket, bucket);
+    }
+
+    /**
+     * Set the chunk distance on the x and z axis up to which sections are rebuilt
+     */
+    public void setMaxDistance(int maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    public int getQueueDepth() {
+        return this.size;
+    }
+
+    public int getRebuildsLastFrame() {
+        return this.rebuildsLastFrame;
+    }
+}
@@ -0,0 +1,242 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.GLAllocation;
+import de.labystudio.game.render.buffer.BufferPool;
+import de.labystudio.game.render.buffer.SubAllocator;
+import de.labystudio.game.world.chunk.ChunkSection;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import org.lwjgl.opengl.ARBBufferObject;
+import org.lwjgl.opengl.ARBVertexBufferObject;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL14;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Vertex memory of the chunk sections in a region of 16x16 chunk columns. The meshes of the sections are placed
+ * into a few large pages by a {@link SubAllocator}. Their vertices are relative to the region origin,
+ * so all queued meshes of a page are drawn with a single glMultiDrawArrays call. This loses the order of the
+ * sections, so only the solid layer is queued and translucent meshes are drawn one by one.
+ */
+public class RegionBuffer {
+
+    // Chunk columns per region on the x and z axis
+    public static final int SIZE = 16;
+    private static final int SHIFT = 4;
+
+    // Size of a page, a larger mesh gets a page of its own
+    private static final int PAGE_SIZE = 4 << 20;
+
+    // Meshes are placed at whole quads, so their first vertex is an index
+    private static final int ALIGNMENT = SectionMesh.QUAD_INTS * 4;
+
+    // Move the meshes of a page together if most of its free memory is split into small blocks
+    private static final float MAX_FRAGMENTATION = 0.5F;
+
+    public final int x;
+    public final int z;
+
+    private final BufferPool pool;
+    private final List<Page> pages = new ArrayList<>();
+
+    // Amount of meshes that belong to this region, empty or not
+    int references;
+
+    public RegionBuffer(BufferPool pool, int x, int z) {
+        this.pool = pool;
+        this.x = x;
+        this.z = z;
+    }
+
+    /**
+     * Place a mesh into the first page with enough free memory or into a new page
+     *
+     * @param mesh Mesh to place
+     * @param size Size in bytes
+     */
+    void allocate(RegionMesh mesh, int size) {
+        for (Page page : this.pages) {
+            int offset = page.allocator.allocate(size);
+            if (offset != -1) {
+                page.meshes.add(mesh);
+                mesh.setAllocation(page, offset);
+                return;
+            }
+        }
+
+        Page page = new Page(this.pool.acquire(Math.max(size, PAGE_SIZE)));
+        this.pages.add(page);
+
+        page.meshes.add(mesh);
+        mesh.setAllocation(page, page.allocator.allocate(size));
+    }
+
+    /**
+     * Free the memory of a mesh, empty pages are returned to the pool
+     */
+    void free(RegionMesh mesh, Page page, int offset) {
+        page.allocator.free(offset);
+        page.meshes.remove(mesh);
+
+        if (page.meshes.isEmpty()) {
+            this.pages.remove(page);
+            this.pool.release(page.buffer);
+        }
+    }
+
+    void upload(Page page, int offset, int[] data, int from, int length) {
+        this.pool.upload(page.buffer, offset, data, from, length);
+    }
+
+    /**
+     * Draw the queued meshes of each page and clear the queues.
+     * The client states have to be enabled using {@link ChunkMesh#setupRendering()}.
+     *
+     * @return Amount of draw calls
+     */
+    public int render() {
+        int drawCalls = 0;
+
+        for (Page page : this.pages) {
+            if (page.batchSize == 0) {
+                continue;
+            }
+
+            page.firsts.flip();
+            page.counts.flip();
+
+            ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, page.buffer.getId());
+            ChunkMesh.setPointers();
+
+            GL11.glPushMatrix();
+            GL11.glTranslatef(getOrigin(this.x), 0, getOrigin(this.z));
+            GL14.glMultiDrawArrays(GL11.GL_TRIANGLES, page.firsts, page.counts);
+            GL11.glPopMatrix();
+
+            page.firsts.clear();
+            page.counts.clear();
+            page.batchSize = 0;
+            drawCalls++;
+        }
+
+        return drawCalls;
+    }
+
+    /**
+     * Move the meshes of the most fragmented page to its front
+     *
+     * @return True if a page has been compacted
+     */
+    public boolean compact() {
+        for (Page page : this.pages) {
+            if (page.allocator.getFreeBlockCount() > 1 && page.allocator.getFragmentation() > MAX_FRAGMENTATION) {
+                page.compact();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getPageCount() {
+        return this.pages.size();
+    }
+
+    public long getCapacity() {
+        long capacity = 0;
+        for (Page page : this.pages) {
+            capacity += page.allocator.getCapacity();
+        }
+        return capacity;
+    }
+
+    public long getUsedBytes() {
+        long used = 0;
+        for (Page page : this.pages) {
+            used += page.allocator.getUsedBytes();
+        }
+        return used;
+    }
+
+    /**
+     * Get the region coordinate of a chunk coordinate
+     */
+    public static int getRegionCoordinate(int chunkCoordinate) {
+        return chunkCoordinate >> SHIFT;
+    }
+
+    /**
+     * Get the block coordinate of a region coordinate
+     */
+    public static int getOrigin(int regionCoordinate) {
+        return regionCoordinate * SIZE * ChunkSection.SIZE;
+    }
+
+    /**
+     * A large vertex buffer that holds the meshes of many sections
+     */
+    static class Page {
+        private final BufferPool.PooledBuffer buffer;
+        private final SubAllocator allocator;
+        private final ReferenceOpenHashSet<RegionMesh> meshes = new ReferenceOpenHashSet<>();
+
+        // First vertex and vertex count of the meshes to draw
+        private IntBuffer firsts = GLAllocation.createDirectIntBuffer(64);
+        private IntBuffer counts = GLAllocation.createDirectIntBuffer(64);
+        private int batchSize;
+
+        private Page(BufferPool.PooledBuffer buffer) {
+            this.buffer = buffer;
+            this.allocator = new SubAllocator(buffer.getCapacity(), ALIGNMENT);
+        }
+
+        /**
+         * Add a mesh to the draw call of this page
+         */
+        void queue(int firstVertex, int vertexCount) {
+            if (this.batchSize == this.firsts.capacity()) {
+                this.firsts = grow(this.firsts);
+                this.counts = grow(this.counts);
+            }
+
+            this.firsts.put(firstVertex);
+            this.counts.put(vertexCount);
+            this.batchSize++;
+        }
+
+        int getSize(int offset) {
+            return this.allocator.getSize(offset);
+        }
+
+        int getBufferId() {
+            return this.buffer.getId();
+        }
+
+        /**
+         * Place all meshes again in the order of their offset, so they are moved to the front of the page
+         */
+        private void compact() {
+            RegionMesh[] sorted = this.meshes.toArray(new RegionMesh[0]);
+            int[] sizes = new int[sorted.length];
+            Arrays.sort(sorted, (a, b) -> Integer.compare(a.getOffset(), b.getOffset()));
+            for (int i = 0; i < sorted.length; i++) {
+                sizes[i] = this.allocator.getSize(sorted[i].getOffset());
+            }
+
+            // The vertex data is uploaded again from the section meshes
+            this.allocator.clear();
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i].move(this.allocator.allocate(sizes[i]));
+            }
+        }
+
+        private static IntBuffer grow(IntBuffer buffer) {
+            buffer.flip();
+            IntBuffer grown = GLAllocation.createDirectIntBuffer(buffer.capacity() * 2);
+            grown.put(buffer);
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package de.labystudio.game.render.world;
+
+import org.lwjgl.opengl.ARBBufferObject;
+import org.lwjgl.opengl.ARBVertexBufferObject;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * One render layer of a chunk section, placed inside a page of its {@link RegionBuffer}.
+ * The vertices are relative to the region origin and drawn together with the other meshes of the page.
+ */
+public class RegionMesh {
+
+    private static final int VERTICES_PER_QUAD = 6;
+
+    private final RegionBuffer region;
+
+    // Allocation inside a page of the region, the page is null if the mesh is empty
+    private RegionBuffer.Page page;
+    private int offset;
+
+    // Vertex data of the allocation, used to upload the mesh again when it is moved
+    private SectionMesh mesh;
+    private int vertexCount;
+
+    RegionMesh(RegionBuffer region) {
+        this.region = region;
+    }
+
+    /**
+     * Write the slots of a section mesh into the region. Only the changed slots are written if the mesh
+     * still fits into its allocation, otherwise it's placed again with some space for later block updates.
+     */
+    public void upload(SectionMesh mesh) {
+        int slots = mesh.getSlotCount();
+        int size = slots * SectionMesh.QUAD_INTS * 4;
+
+        if (mesh.isEmpty()) {
+            this.release();
+            mesh.clearDirty();
+            return;
+        }
+
+        int from = Math.min(mesh.getDirtyFrom(), slots);
+        int to = Math.min(mesh.getDirtyTo(), slots);
+
+        // Place the mesh again if it doesn't fit or uses less than a quarter of its allocation
+        int capacity = this.getCapacity();
+        if (this.page == null || size > capacity || size < capacity / 4) {
+            this.release();
+            this.region.allocate(this, size + size / 4);
+
+            from = 0;
+            to = slots;
+        }
+
+        this.mesh = mesh;
+        this.vertexCount = slots * VERTICES_PER_QUAD;
+
+        if (from < to) {
+            int offset = from * SectionMesh.QUAD_INTS;
+            this.region.upload(this.page, this.offset + offset * 4, mesh.getVertexData(), offset, (to - from) * SectionMesh.QUAD_INTS);
+        }
+
+        mesh.clearDirty();
+    }
+
+    /**
+     * Add the mesh to the draw call of its page, see {@link RegionBuffer#render()}.
+     * The queued meshes are drawn in the order of the page, not in the order they were queued.
+     */
+    public void queueDraw() {
+        if (this.page != null) {
+            this.page.queue(this.offset / ChunkMesh.VERTEX_SIZE, this.vertexCount);
+        }
+    }
+
+    /**
+     * Draw the mesh right away with a draw call of its own, for meshes that have to be drawn in order.
+     * The client states have to be enabled using {@link ChunkMesh#setupRendering()}.
+     */
+    public void render() {
+        if (this.page == null) {
+            return;
+        }
+
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, this.page.getBufferId());
+        ChunkMesh.setPointers();
+
+        GL11.glPushMatrix();
+        GL11.glTranslatef(RegionBuffer.getOrigin(this.region.x), 0, RegionBuffer.getOrigin(this.region.z));
+        GL11.glDrawArrays(GL11.GL_TRIANGLES, this.getFirstVertex(), this.vertexCount);
+        GL11.glPopMatrix();
+    }
+
+    /**
+     * Free the allocation of this mesh
+     */
+    public void release() {
+        if (this.page != null) {
+            this.region.free(this, this.page, this.offset);
+            this.page = null;
+        }
+
+        this.mesh = null;
+        this.vertexCount = 0;
+    }
+
+    void setAllocation(RegionBuffer.Page page, int offset) {
+        this.page = page;
+        this.offset = offset;
+    }
+
+    /**
+     * Upload the entire mesh to another offset of the same page, called when the page is compacted
+     */
+    void move(int offset) {
+        this.offset = offset;
+        this.region.upload(this.page, offset, this.mesh.getVertexData(), 0, this.mesh.getSlotCount() * SectionMesh.QUAD_INTS);
+    }
+
+    int getOffset() {
+        return this.offset;
+    }
+
+    RegionBuffer getRegion() {
+        return this.region;
+    }
+
+    /**
+     * Index of the first vertex of this mesh inside its page
+     */
+    int getFirstVertex() {
+        return this.offset / ChunkMesh.VERTEX_SIZE;
+    }
+
+    int getBufferId() {
+        return this.page.getBufferId();
+    }
+
+    public boolean isEmpty() {
+        return this.page == null;
+    }
+
+    /**
+     * GPU memory used by the vertices of this mesh
+     */
+    public int getSize() {
+        return this.vertexCount * ChunkMesh.VERTEX_SIZE;
+    }
+
+    /**
+     * GPU memory reserved for this mesh
+     */
+    public int getCapacity() {
+        return this.page == null ? 0 : this.page.getSize(this.offset);
+    }
+}
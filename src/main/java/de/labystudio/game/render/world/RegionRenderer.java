@@ -0,0 +1,119 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.buffer.BufferPool;
+import de.labystudio.game.world.chunk.Chunk;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * Keeps the region buffers of the loaded chunk sections and draws their queued meshes.
+ */
+public class RegionRenderer {
+
+    private final Long2ObjectOpenHashMap<RegionBuffer> regions = new Long2ObjectOpenHashMap<>();
+    private final BufferPool pool;
+
+    // Statistics
+    private long compactions;
+
+    public RegionRenderer(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Create the meshes of a chunk section
+     *
+     * @param chunkX Chunk x coordinate of the section
+     * @param chunkZ Chunk z coordinate of the section
+     * @param amount Amount of render layers
+     * @return One mesh per layer, they have to be released using {@link #releaseMeshes(RegionMesh[])}
+     */
+    public RegionMesh[] createMeshes(int chunkX, int chunkZ, int amount) {
+        int regionX = RegionBuffer.getRegionCoordinate(chunkX);
+        int regionZ = RegionBuffer.getRegionCoordinate(chunkZ);
+        long index = Chunk.getIndex(regionX, regionZ);
+
+        RegionBuffer region = this.regions.get(index);
+        if (region == null) {
+            region = new RegionBuffer(this.pool, regionX, regionZ);
+            this.regions.put(index, region);
+        }
+
+        RegionMesh[] meshes = new RegionMesh[amount];
+        for (int i = 0; i < amount; i++) {
+            meshes[i] = new RegionMesh(region);
+        }
+        region.references += amount;
+        return meshes;
+    }
+
+    /**
+     * Release the meshes of a chunk section, the region is removed once it has no meshes left
+     */
+    public void releaseMeshes(RegionMesh[] meshes) {
+        for (RegionMesh mesh : meshes) {
+            mesh.release();
+
+            RegionBuffer region = mesh.getRegion();
+            if (--region.references == 0) {
+                this.regions.remove(Chunk.getIndex(region.x, region.z));
+            }
+        }
+    }
+
+    /**
+     * Draw the queued meshes of all regions
+     *
+     * @return Amount of draw calls
+     */
+    public int render() {
+        int drawCalls = 0;
+        for (RegionBuffer region : this.regions.values()) {
+            drawCalls += region.render();
+        }
+        return drawCalls;
+    }
+
+    /**
+     * Compact one fragmented page, has to be called once per frame
+     */
+    public void compact() {
+        for (RegionBuffer region : this.regions.values()) {
+            if (region.compact()) {
+                this.compactions++;
+                return;
+            }
+        }
+    }
+
+    public int getRegionCount() {
+        return this.regions.size();
+    }
+
+    public int getPageCount() {
+        int pages = 0;
+        for (RegionBuffer region : this.regions.values()) {
+            pages += region.getPageCount();
+        }
+        return pages;
+    }
+
+    public long getCapacity() {
+        long capacity = 0;
+        for (RegionBuffer region : this.regions.values()) {
+            capacity += region.getCapacity();
+        }
+        return capacity;
+    }
+
+    public long getUsedBytes() {
+        long used = 0;
+        for (RegionBuffer region : this.regions.values()) {
+            used += region.getUsedBytes();
+        }
+        return used;
+    }
+
+    public long getCompactions() {
+        return this.compactions;
+    }
+}
@@ -0,0 +1,96 @@
+package de.labystudio.game.render.world;
+
+/**
+ * Moves the render distance between two bounds depending on the average time of the recent frames.
+ * The distance is lowered if the frames are too slow and raised again if there is enough headroom.
+ * Both thresholds are apart and every change is followed by a cooldown, so the distance doesn't oscillate.
+ */
+public class RenderDistanceController {
+
+    // Amount of frames to average
+    private static final int SAMPLES = 30;
+
+    // Frames to wait after a change before the next one
+    private static final int COOLDOWN_FRAMES = 90;
+
+    // Lower the distance above this share of the target frame time, raise it below the other
+    private static final float LOWER_THRESHOLD = 1.1F;
+    private static final float RAISE_THRESHOLD = 0.7F;
+
+    private final int minDistance;
+    private final int maxDistance;
+    private final long targetFrameNanos;
+
+    private final long[] frameTimes = new long[SAMPLES];
+    private long frameTimeSum;
+    private int sampleIndex;
+    private int sampleCount;
+    private int cooldown;
+
+    private int distance;
+    private String lastDecision = "initial";
+
+    /**
+     * @param minDistance      Lowest render distance in chunks
+     * @param maxDistance      Highest render distance in chunks
+     * @param initialDistance  Render distance to start with
+     * @param targetFrameNanos Frame time to reach
+     */
+    public RenderDistanceController(int minDistance, int maxDistance, int initialDistance, long targetFrameNanos) {
+        this.minDistance = minDistance;
+        this.maxDistance = maxDistance;
+        this.distance = Math.max(minDistance, Math.min(maxDistance, initialDistance));
+        this.targetFrameNanos = targetFrameNanos;
+    }
+
+    /**
+     * Record the time of a frame and adjust the render distance
+     *
+     * @param frameNanos Time of the last frame in nanoseconds
+     * @return true if the render distance changed
+     */
+    public boolean onFrame(long frameNanos) {
+        // Replace the oldest sample
+        this.frameTimeSum += frameNanos - this.frameTimes[this.sampleIndex];
+        this.frameTimes[this.sampleIndex] = frameNanos;
+        this.sampleIndex = (this.sampleIndex + 1) % SAMPLES;
+        this.sampleCount = Math.min(SAMPLES, this.sampleCount + 1);
+
+        if (this.cooldown > 0) {
+            this.cooldown--;
+            return false;
+        }
+        if (this.sampleCount < SAMPLES) {
+            return false;
+        }
+
+        long average = this.getAverageFrameNanos();
+        int previousDistance = this.distance;
+
+        if (average > this.targetFrameNanos * LOWER_THRESHOLD && this.distance > this.minDistance) {
+            this.distance--;
+        } else if (average < this.targetFrameNanos * RAISE_THRESHOLD && this.distance < this.maxDistance) {
+            this.distance++;
+        } else {
+            return false;
+        }
+
+        this.cooldown = COOLDOWN_FRAMES;
+        this.lastDecision = previousDistance + " -> " + this.distance + " chunks at "
+                + String.format("%.1f", average / 1_000_000.0) + " ms";
+        System.out.println("Render distance " + this.lastDecision);
+        return true;
+    }
+
+    public long getAverageFrameNanos() {
+        return this.sampleCount == 0 ? 0 : this.frameTimeSum / this.sampleCount;
+    }
+
+    public int getDistance() {
+        return this.distance;
+    }
+
+    public String getLastDecision() {
+        return this.lastDecision;
+    }
+}
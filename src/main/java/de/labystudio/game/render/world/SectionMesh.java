@@ -0,0 +1,199 @@
+package de.labystudio.game.render.world;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Vertex data of one render layer of a chunk section, indexed by the block that produced each quad.
+ * Quads of a single block can be removed and re-emitted without touching the rest of the mesh.
+ * Removed quads leave free slots with degenerate triangles that are reused by the next emitted quads.
+ * Changed slots are tracked, so only they have to be written into the vertex buffer.
+ */
+public class SectionMesh {
+
+    // A quad is converted into two triangles with 8 ints per vertex
+    public static final int QUAD_INTS = 6 * 8;
+
+    private static final int BLOCKS = 16 * 16 * 16;
+    private static final int INITIAL_SLOTS = 64;
+
+    private int[] vertexData = new int[INITIAL_SLOTS * QUAD_INTS];
+
+    // Block index of each quad slot or -1 if the slot is free
+    private int[] quadOwner = new int[INITIAL_SLOTS];
+
+    // Next quad slot of the same block or the next free slot
+    private int[] nextQuad = new int[INITIAL_SLOTS];
+
+    // First quad slot of each block
+    private final int[] firstQuad = new int[BLOCKS];
+
+    private int slots;
+    private int freeHead = -1;
+    private int freeSlots;
+
+    // Range of slots that changed since the last upload
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo;
+
+    public SectionMesh() {
+        Arrays.fill(this.firstQuad, -1);
+    }
+
+    /**
+     * Remove all quads
+     */
+    public void clear() {
+        Arrays.fill(this.firstQuad, -1);
+        this.slots = 0;
+        this.freeHead = -1;
+        this.freeSlots = 0;
+        this.clearDirty();
+    }
+
+    /**
+     * Remove all quads that were produced by the given block
+     *
+     * @param blockIndex Index of the block inside the section (y << 8 | z << 4 | x)
+     */
+    public void removeBlock(int blockIndex) {
+        int slot = this.firstQuad[blockIndex];
+        while (slot != -1) {
+            int next = this.nextQuad[slot];
+
+            // Free slots are drawn as degenerate triangles
+            Arrays.fill(this.vertexData, slot * QUAD_INTS, (slot + 1) * QUAD_INTS, 0);
+            this.markDirty(slot);
+
+            // Move slot to the free list
+            this.quadOwner[slot] = -1;
+            this.nextQuad[slot] = this.freeHead;
+            this.freeHead = slot;
+            this.freeSlots++;
+
+            slot = next;
+        }
+        this.firstQuad[blockIndex] = -1;
+    }
+
+    /**
+     * Add the quads of a block from the tessellator buffer
+     *
+     * @param blockIndex Index of the block inside the section
+     * @param data       Vertex data of the tessellator
+     * @param from       First int of the block in the data (inclusive)
+     * @param to         Last int of the block in the data (exclusive)
+     */
+    public void addBlock(int blockIndex, IntBuffer data, int from, int to) {
+        for (int offset = from; offset < to; offset += QUAD_INTS) {
+            int slot = this.allocateSlot();
+
+            data.get(offset, this.vertexData, slot * QUAD_INTS, QUAD_INTS);
+            this.markDirty(slot);
+
+            // Link the quad to the block
+            this.quadOwner[slot] = blockIndex;
+            this.nextQuad[slot] = this.firstQuad[blockIndex];
+            this.firstQuad[blockIndex] = slot;
+        }
+    }
+
+    private void markDirty(int slot) {
+        this.dirtyFrom = Math.min(this.dirtyFrom, slot);
+        this.dirtyTo = Math.max(this.dirtyTo, slot + 1);
+    }
+
+    /**
+     * Mark all slots as uploaded
+     */
+    public void clearDirty() {
+        this.dirtyFrom = Integer.MAX_VALUE;
+        this.dirtyTo = 0;
+    }
+
+    private int allocateSlot() {
+        // Reuse a free slot
+        if (this.freeHead != -1) {
+            int slot = this.freeHead;
+            this.freeHead = this.nextQuad[slot];
+            this.freeSlots--;
+            return slot;
+        }
+
+        // Grow storage
+        if (this.slots == this.quadOwner.length) {
+            int capacity = this.slots * 2;
+            this.vertexData = Arrays.copyOf(this.vertexData, capacity * QUAD_INTS);
+            this.quadOwner = Arrays.copyOf(this.quadOwner, capacity);
+            this.nextQuad = Arrays.copyOf(this.nextQuad, capacity);
+        }
+
+        return this.slots++;
+    }
+
+    /**
+     * Vertex data of all slots, free slots contain zeros
+     */
+    public int[] getVertexData() {
+        return this.vertexData;
+    }
+
+    /**
+     * Amount of used and free slots, the mesh is drawn up to this slot
+     */
+    public int getSlotCount() {
+        return this.slots;
+    }
+
+    /**
+     * First changed slot or {@link Integer#MAX_VALUE} if nothing changed
+     */
+    public int getDirtyFrom() {
+        return this.dirtyFrom;
+    }
+
+    /**
+     * Slot after the last changed slot
+     */
+    public int getDirtyTo() {
+        return this.dirtyTo;
+    }
+
+    /**
+     * Compute the center of each slot for depth sorting. The vertices of a quad are converted into the triangles
+     * (0, 1, 2) and (0, 2, 3), so the first and third vertex are opposite corners.
+     *
+     * @return x, y and z of each slot, free slots are at the origin
+     */
+    public float[] computeCentroids() {
+        float[] centroids = new float[this.slots * 3];
+
+        for (int slot = 0; slot < this.slots; slot++) {
+            int first = slot * QUAD_INTS;
+            int third = first + 2 * 8;
+
+            for (int axis = 0; axis < 3; axis++) {
+                centroids[slot * 3 + axis] = (Float.intBitsToFloat(this.vertexData[first + axis])
+                        + Float.intBitsToFloat(this.vertexData[third + axis])) * 0.5F;
+            }
+        }
+        return centroids;
+    }
+
+    public int getQuadCount() {
+        return this.slots - this.freeSlots;
+    }
+
+    public boolean isEmpty() {
+        return this.getQuadCount() == 0;
+    }
+
+    /**
+     * Get the share of free slots between the used quads
+     *
+     * @return Fragmentation between 0.0 and 1.0
+     */
+    public float getFragmentation() {
+        return this.slots == 0 ? 0.0F : (float) this.freeSlots / this.slots;
+    }
+}
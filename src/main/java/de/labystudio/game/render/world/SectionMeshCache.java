@@ -0,0 +1,226 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.buffer.BufferPool;
+import de.labystudio.game.util.EnumWorldBlockLayer;
+import de.labystudio.game.world.World;
+import de.labystudio.game.world.block.Block;
+import de.labystudio.game.world.chunk.ChunkSection;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Shares the meshes of uniform chunk sections that have the same content and border neighbourhood.
+ * Meshes are built relative to the section origin, so a shared mesh is drawn at any section by translating it.
+ */
+public class SectionMeshCache {
+
+    private static final int SIZE = ChunkSection.SIZE;
+    private static final int SHELL_SIZE = SIZE + 2;
+    private static final int SHELL_VOLUME = SHELL_SIZE * SHELL_SIZE * SHELL_SIZE - SIZE * SIZE * SIZE;
+
+    private final Long2ObjectOpenHashMap<SharedMesh> meshes = new Long2ObjectOpenHashMap<>();
+    private final BufferPool bufferPool;
+
+    // Statistics
+    private long dedupHits;
+    private long dedupMisses;
+    private long buriedSections;
+    private long emptySections;
+
+    public SectionMeshCache(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Get the shared mesh for a uniform section or null if it has to be compiled first using {@link #create(byte[], long)}
+     *
+     * @param neighbourhood Key of the section created by {@link #createKey(World, ChunkSection, int)}
+     * @param hash          Hash of the key
+     * @return The shared mesh with an increased reference count or null
+     */
+    public SharedMesh acquire(byte[] neighbourhood, long hash) {
+        SharedMesh mesh = this.meshes.get(hash);
+        if (mesh == null || !Arrays.equals(mesh.neighbourhood, neighbourhood)) {
+            return null;
+        }
+
+        mesh.references++;
+        this.dedupHits++;
+        return mesh;
+    }
+
+    /**
+     * Register a new shared mesh. The caller has to upload the chunk meshes of the returned mesh.
+     * Returns null if a different neighbourhood with the same hash is already registered.
+     */
+    public SharedMesh create(byte[] neighbourhood, long hash) {
+        if (this.meshes.containsKey(hash)) {
+            return null;
+        }
+
+        ChunkMesh[] chunkMeshes = new ChunkMesh[EnumWorldBlockLayer.values().length];
+        for (int i = 0; i < chunkMeshes.length; i++) {
+            chunkMeshes[i] = new ChunkMesh(this.bufferPool);
+        }
+
+        SharedMesh mesh = new SharedMesh(neighbourhood, hash, chunkMeshes);
+        this.meshes.put(hash, mesh);
+        this.dedupMisses++;
+        return mesh;
+    }
+
+    /**
+     * Drop a reference of a shared mesh and release its buffers if it isn't used anymore
+     *
+     * @param mesh Shared mesh or null
+     */
+    public void release(SharedMesh mesh) {
+        if (mesh == null || --mesh.references > 0) {
+            return;
+        }
+
+        this.meshes.remove(mesh.hash);
+        for (ChunkMesh chunkMesh : mesh.chunkMeshes) {
+            chunkMesh.release();
+        }
+    }
+
+    /**
+     * Check if all blocks surrounding the section are opaque, so nothing of a uniform opaque section can be seen
+     */
+    public static boolean isBuried(World world, ChunkSection section) {
+        int baseX = section.x * SIZE;
+        int baseY = section.y * SIZE;
+        int baseZ = section.z * SIZE;
+
+        for (int a = 0; a < SIZE; a++) {
+            for (int b = 0; b < SIZE; b++) {
+                if (isTransparent(world, baseX - 1, baseY + a, baseZ + b)
+                        || isTransparent(world, baseX + SIZE, baseY + a, baseZ + b)
+                        || isTransparent(world, baseX + a, baseY - 1, baseZ + b)
+                        || isTransparent(world, baseX + a, baseY + SIZE, baseZ + b)
+                        || isTransparent(world, baseX + a, baseY + b, baseZ - 1)
+                        || isTransparent(world, baseX + a, baseY + b, baseZ + SIZE)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create the key of a uniform section. It contains the block type, the light of the section
+     * and the blocks and light of the one block wide shell around the section.
+     */
+    public static byte[] createKey(World world, ChunkSection section, int typeId) {
+        byte[] key = new byte[1 + SIZE * SIZE * SIZE + SHELL_VOLUME * 2];
+        int index = 0;
+
+        key[index++] = (byte) typeId;
+
+        // Light of the section itself
+        for (int y = 0; y < SIZE; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                for (int x = 0; x < SIZE; x++) {
+                    key[index++] = (byte) section.getLightAt(x, y, z);
+                }
+            }
+        }
+
+        int baseX = section.x * SIZE;
+        int baseY = section.y * SIZE;
+        int baseZ = section.z * SIZE;
+
+        // Blocks and light of the border
+        for (int y = -1; y <= SIZE; y++) {
+            for (int z = -1; z <= SIZE; z++) {
+                for (int x = -1; x <= SIZE; x++) {
+                    boolean inside = x >= 0 && x < SIZE && y >= 0 && y < SIZE && z >= 0 && z < SIZE;
+                    if (!inside) {
+                        key[index++] = (byte) world.getBlockAt(baseX + x, baseY + y, baseZ + z);
+                        key[index++] = (byte) world.getLightAt(baseX + x, baseY + y, baseZ + z);
+                    }
+                }
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a section key
+     */
+    public static long hash(byte[] key) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte value : key) {
+            hash ^= value & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static boolean isTransparent(World world, int x, int y, int z) {
+        // There is nothing above and below the world that could hide the section
+        if (y < 0 || y > World.TOTAL_HEIGHT) {
+            return true;
+        }
+
+        short typeId = world.getBlockAt(x, y, z);
+        return typeId == 0 || Block.getById(typeId).isTransparent();
+    }
+
+    public void onEmptySection() {
+        this.emptySections++;
+    }
+
+    public void onBuriedSection() {
+        this.buriedSections++;
+    }
+
+    public int getSharedMeshCount() {
+        return this.meshes.size();
+    }
+
+    public long getDedupHits() {
+        return this.dedupHits;
+    }
+
+    public long getDedupMisses() {
+        return this.dedupMisses;
+    }
+
+    public long getBuriedSections() {
+        return this.buriedSections;
+    }
+
+    public long getEmptySections() {
+        return this.emptySections;
+    }
+
+    public static class SharedMesh {
+        private final byte[] neighbourhood;
+        private final long hash;
+        private final ChunkMesh[] chunkMeshes;
+        private int layerMask;
+        private int references = 1;
+
+        private SharedMesh(byte[] neighbourhood, long hash, ChunkMesh[] chunkMeshes) {
+            this.neighbourhood = neighbourhood;
+            this.hash = hash;
+            this.chunkMeshes = chunkMeshes;
+        }
+
+        public ChunkMesh[] getChunkMeshes() {
+            return this.chunkMeshes;
+        }
+
+        public int getLayerMask() {
+            return this.layerMask;
+        }
+
+        public void setLayerMask(int layerMask) {
+            this.layerMask = layerMask;
+        }
+    }
+}
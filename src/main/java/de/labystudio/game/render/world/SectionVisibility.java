@@ -0,0 +1,119 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.util.EnumBlockFace;
+import de.labystudio.game.world.block.Block;
+import de.labystudio.game.world.chunk.ChunkSection;
+
+/**
+ * Computes which faces of a chunk section are connected through non-opaque blocks.
+ * The result is a 15-bit mask with one bit for each pair of the six faces.
+ */
+public class SectionVisibility {
+
+    public static final int ALL_CONNECTED = (1 << 15) - 1;
+    public static final int NONE_CONNECTED = 0;
+
+    private static final int SIZE = ChunkSection.SIZE;
+    private static final int FACES = EnumBlockFace.values().length;
+
+    // Bit of each face pair
+    private static final int[] PAIR_BITS = new int[FACES * FACES];
+
+    static {
+        int bit = 0;
+        for (int from = 0; from < FACES; from++) {
+            for (int to = from + 1; to < FACES; to++) {
+                PAIR_BITS[from * FACES + to] = 1 << bit;
+                PAIR_BITS[to * FACES + from] = 1 << bit;
+                bit++;
+            }
+        }
+    }
+
+    /**
+     * Check if two faces are connected in the given mask
+     *
+     * @param connectivity Mask created by {@link #compute(ChunkSection)}
+     * @param from         Face ordinal
+     * @param to           Face ordinal
+     */
+    public static boolean isConnected(int connectivity, int from, int to) {
+        return from == to || (connectivity & PAIR_BITS[from * FACES + to]) != 0;
+    }
+
+    /**
+     * Flood fill all non-opaque blocks of the section and connect the faces that each filled area touches
+     *
+     * @param section Chunk section to scan
+     * @return Connectivity mask of all face pairs
+     */
+    public static int compute(ChunkSection section) {
+        long[] visited = new long[SIZE * SIZE * SIZE / 64];
+        int[] queue = new int[SIZE * SIZE * SIZE];
+        int connectivity = NONE_CONNECTED;
+
+        for (int start = 0; start < SIZE * SIZE * SIZE; start++) {
+            if ((visited[start >> 6] & 1L << start) != 0 || isOpaque(section, start)) {
+                continue;
+            }
+
+            // Fill the area around the start block
+            int faces = 0;
+            int head = 0;
+            int tail = 0;
+
+            queue[tail++] = start;
+            visited[start >> 6] |= 1L << start;
+
+            while (head < tail) {
+                int index = queue[head++];
+                int x = index & 15;
+                int y = index >> 8;
+                int z = index >> 4 & 15;
+
+                for (EnumBlockFace face : EnumBlockFace.values()) {
+                    int nextX = x + face.x;
+                    int nextY = y + face.y;
+                    int nextZ = z + face.z;
+
+                    // The area touches this face of the section
+                    if (nextX < 0 || nextY < 0 || nextZ < 0 || nextX >= SIZE || nextY >= SIZE || nextZ >= SIZE) {
+                        faces |= 1 << face.ordinal();
+                        continue;
+                    }
+
+                    int next = nextY << 8 | nextZ << 4 | nextX;
+                    if ((visited[next >> 6] & 1L << next) == 0 && !isOpaque(section, next)) {
+                        visited[next >> 6] |= 1L << next;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+
+            // Connect all faces of this area with each other
+            for (int from = 0; from < FACES; from++) {
+                for (int to = from + 1; to < FACES; to++) {
+                    if ((faces & 1 << from) != 0 && (faces & 1 << to) != 0) {
+                        connectivity |= PAIR_BITS[from * FACES + to];
+                    }
+                }
+            }
+
+            if (connectivity == ALL_CONNECTED) {
+                break;
+            }
+        }
+
+        return connectivity;
+    }
+
+    private static boolean isOpaque(ChunkSection section, int index) {
+        short typeId = section.getBlockAt(index & 15, index >> 8, index >> 4 & 15);
+        if (typeId == 0) {
+            return false;
+        }
+
+        Block block = Block.getById(typeId);
+        return block != null && !block.isTransparent();
+    }
+}
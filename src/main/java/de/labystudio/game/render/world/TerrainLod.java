@@ -0,0 +1,353 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.Frustum;
+import de.labystudio.game.render.GLAllocation;
+import de.labystudio.game.render.Tessellator;
+import de.labystudio.game.util.EnumBlockFace;
+import de.labystudio.game.world.ChunkStreamer;
+import de.labystudio.game.world.TerrainSummary;
+import de.labystudio.game.world.World;
+import de.labystudio.game.world.block.Block;
+import de.labystudio.game.world.chunk.Chunk;
+import de.labystudio.game.world.chunk.ChunkSection;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import org.lwjgl.opengl.GL11;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coarse far terrain beyond the render distance of the chunk sections. Each chunk is meshed from the heightmap
+ * and the map color of the top blocks in the {@link TerrainSummary}, so it doesn't have to be loaded.
+ * The heightmap is downsampled by 2, 4 and 8 in rings around the camera, the rings end with the chunks that
+ * are summarized by the {@link ChunkStreamer}.
+ */
+public class TerrainLod {
+
+    // Chunk distance of the far terrain, chunks further away aren't summarized
+    public static final int LOD_DISTANCE = ChunkStreamer.SUMMARY_RADIUS;
+
+    // Amount of chunks per ring with the same downsampling
+    private static final int RING_WIDTH = 8;
+
+    private static final int MAX_BUILDS_PER_FRAME = 8;
+
+    private final World world;
+    private final TerrainSummary summary;
+    private final Tessellator tessellator;
+
+    private final Long2ObjectOpenHashMap<LodTile> tiles = new Long2ObjectOpenHashMap<>();
+    private final List<LodTile> visibleTiles = new ArrayList<>();
+
+    // Cell heights of the tile in build with a border of one cell, and the colors of the cells
+    private final int[] heights = new int[(ChunkSection.SIZE + 2) * (ChunkSection.SIZE + 2)];
+    private final int[] colors = new int[ChunkSection.SIZE * ChunkSection.SIZE];
+    private int sampledColor;
+
+    // Chunks closer than this are rendered with section meshes
+    private int nearDistance;
+
+    private int cameraChunkX = Integer.MIN_VALUE;
+    private int cameraChunkZ = Integer.MIN_VALUE;
+    private boolean pendingBuilds;
+    private int quadCount;
+
+    public TerrainLod(World world, Tessellator tessellator, int nearDistance) {
+        this.world = world;
+        this.summary = world.getTerrainSummary();
+        this.tessellator = tessellator;
+        this.nearDistance = nearDistance;
+    }
+
+    /**
+     * Get the downsampling of a chunk
+     *
+     * @param distance Chunk distance to the camera on the x or z axis, whichever is larger
+     * @return Blocks per cell or 0 if the chunk has no far terrain mesh
+     */
+    public int getStep(int distance) {
+        if (distance < this.nearDistance || distance > LOD_DISTANCE) {
+            return 0;
+        }
+        if (distance < this.nearDistance + RING_WIDTH) {
+            return 2;
+        }
+        return distance < this.nearDistance + RING_WIDTH * 2 ? 4 : 8;
+    }
+
+    /**
+     * Change the distance where the far terrain starts, tiles that are now rendered with sections are deleted
+     *
+     * @param nearDistance Chunk distance of the first far terrain ring
+     */
+    public void setNearDistance(int nearDistance) {
+        this.nearDistance = nearDistance;
+        this.deleteUnusedTiles();
+    }
+
+    /**
+     * Collect the visible tiles and build missing tiles, closest rings first
+     */
+    public void update(int cameraChunkX, int cameraChunkZ, Frustum frustum) {
+        if (cameraChunkX != this.cameraChunkX || cameraChunkZ != this.cameraChunkZ) {
+            this.cameraChunkX = cameraChunkX;
+            this.cameraChunkZ = cameraChunkZ;
+            this.deleteUnusedTiles();
+        }
+
+        this.visibleTiles.clear();
+
+        int builds = 0;
+        for (int ring = this.nearDistance; ring <= LOD_DISTANCE; ring++) {
+            int step = this.getStep(ring);
+
+            for (int i = -ring; i <= ring; i++) {
+                builds += this.updateTile(cameraChunkX + i, cameraChunkZ - ring, step, frustum, builds);
+                builds += this.updateTile(cameraChunkX + i, cameraChunkZ + ring, step, frustum, builds);
+            }
+            for (int i = -ring + 1; i < ring; i++) {
+                builds += this.updateTile(cameraChunkX - ring, cameraChunkZ + i, step, frustum, builds);
+                builds += this.updateTile(cameraChunkX + ring, cameraChunkZ + i, step, frustum, builds);
+            }
+        }
+
+        // Continue with the remaining tiles in the next frame
+        this.pendingBuilds = builds >= MAX_BUILDS_PER_FRAME;
+    }
+
+    private int updateTile(int chunkX, int chunkZ, int step, Frustum frustum, int builds) {
+        if (!this.summary.contains(chunkX, chunkZ) || frustum.testColumn(chunkX, chunkZ) == Frustum.OUTSIDE) {
+            return 0;
+        }
+
+        // Outdated tiles are rendered until they are replaced
+        int built = 0;
+        long index = Chunk.getIndex(chunkX, chunkZ);
+        LodTile tile = this.tiles.get(index);
+        if ((tile == null || tile.step != step) && builds < MAX_BUILDS_PER_FRAME) {
+            // A loaded chunk could have changed since it was summarized
+            Chunk chunk = this.world.chunks.get(index);
+            if (chunk != null && this.world.getStreamer().isReady(chunk)) {
+                this.summary.summarize(chunk);
+            }
+
+            if (tile == null) {
+                tile = new LodTile(chunkX, chunkZ, GLAllocation.generateDisplayLists(1));
+                this.tiles.put(index, tile);
+            }
+            this.build(tile, step);
+            built = 1;
+        }
+
+        if (tile != null && tile.quads > 0) {
+            this.visibleTiles.add(tile);
+        }
+        return built;
+    }
+
+    /**
+     * Build the tile of a chunk again, for example after it was summarized
+     */
+    public void invalidate(int chunkX, int chunkZ) {
+        LodTile tile = this.tiles.get(Chunk.getIndex(chunkX, chunkZ));
+        if (tile != null) {
+            tile.step = 0;
+        }
+
+        // A chunk without a tile gets one in the next update
+        this.pendingBuilds = true;
+    }
+
+    private void deleteUnusedTiles() {
+        ObjectIterator<LodTile> iterator = this.tiles.values().iterator();
+        while (iterator.hasNext()) {
+            LodTile tile = iterator.next();
+            int distance = Math.max(Math.abs(tile.x - this.cameraChunkX), Math.abs(tile.z - this.cameraChunkZ));
+
+            // The chunk is rendered with sections or too far away
+            if (this.getStep(distance) == 0) {
+                GLAllocation.deleteDisplayLists(tile.list);
+                this.quadCount -= tile.quads;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void build(LodTile tile, int step) {
+        int cells = ChunkSection.SIZE / step;
+        int width = cells + 2;
+        int baseX = tile.x * ChunkSection.SIZE;
+        int baseZ = tile.z * ChunkSection.SIZE;
+
+        // Sample the cells of the chunk and the border cells of the neighbour chunks
+        for (int cellZ = -1; cellZ <= cells; cellZ++) {
+            for (int cellX = -1; cellX <= cells; cellX++) {
+                int height = this.sampleCell(baseX + cellX * step, baseZ + cellZ * step, step);
+                this.heights[(cellZ + 1) * width + cellX + 1] = height;
+
+                if (cellX >= 0 && cellX < cells && cellZ >= 0 && cellZ < cells) {
+                    this.colors[cellZ * cells + cellX] = this.sampledColor;
+                }
+            }
+        }
+
+        Tessellator tessellator = this.tessellator;
+        tessellator.startDrawing(7);
+
+        int quads = 0;
+        for (int cellZ = 0; cellZ < cells; cellZ++) {
+            for (int cellX = 0; cellX < cells; cellX++) {
+                int height = this.heights[(cellZ + 1) * width + cellX + 1];
+                if (height < 0) {
+                    continue;
+                }
+
+                int color = this.colors[cellZ * cells + cellX];
+                float minX = cellX * step;
+                float minZ = cellZ * step;
+                float maxX = minX + step;
+                float maxZ = minZ + step;
+                float maxY = height + 1;
+
+                this.addFace(EnumBlockFace.TOP, minX, maxY, minZ, maxX, maxY, maxZ, color);
+                quads++;
+
+                // Skirts down to lower neighbour cells
+                for (EnumBlockFace face : EnumBlockFace.values()) {
+                    if (face.isYAxis()) {
+                        continue;
+                    }
+
+                    int neighbourHeight = this.heights[(cellZ + 1 + face.z) * width + cellX + 1 + face.x];
+                    if (neighbourHeight == TerrainSummary.UNKNOWN || neighbourHeight >= height) {
+                        continue;
+                    }
+
+                    this.addFace(face, minX, neighbourHeight + 1, minZ, maxX, maxY, maxZ, color);
+                    quads++;
+                }
+            }
+        }
+
+        GL11.glNewList(tile.list, GL11.GL_COMPILE);
+        tessellator.draw();
+        GL11.glEndList();
+
+        // Two triangles per quad
+        GLAllocation.setSize(GLAllocation.Category.DISPLAY_LIST, tile.list, (long) quads * 6 * ChunkMesh.VERTEX_SIZE);
+
+        this.quadCount += quads - tile.quads;
+        tile.quads = quads;
+        tile.step = step;
+    }
+
+    private int sampleCell(int x, int z, int step) {
+        if (!this.summary.contains(x >> 4, z >> 4)) {
+            return TerrainSummary.UNKNOWN;
+        }
+
+        // Highest column of the cell, the cells don't cross chunk borders
+        int height = TerrainSummary.EMPTY;
+        for (int offsetZ = 0; offsetZ < step; offsetZ++) {
+            for (int offsetX = 0; offsetX < step; offsetX++) {
+                int y = this.summary.getHeight(x + offsetX, z + offsetZ);
+                if (y > height) {
+                    height = y;
+                    this.sampledColor = Block.getById(this.summary.getTopBlock(x + offsetX, z + offsetZ)).getMapColor();
+                }
+            }
+        }
+        return height;
+    }
+
+    private void addFace(EnumBlockFace face, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int color) {
+        float shading = face.getShading();
+        this.tessellator.setColorRGB_F(
+                (color >> 16 & 0xFF) / 255.0F * shading,
+                (color >> 8 & 0xFF) / 255.0F * shading,
+                (color & 0xFF) / 255.0F * shading
+        );
+
+        switch (face) {
+            case TOP -> {
+                this.tessellator.addVertex(maxX, maxY, maxZ);
+                this.tessellator.addVertex(maxX, maxY, minZ);
+                this.tessellator.addVertex(minX, maxY, minZ);
+                this.tessellator.addVertex(minX, maxY, maxZ);
+            }
+            case EAST -> {
+                this.tessellator.addVertex(minX, maxY, minZ);
+                this.tessellator.addVertex(maxX, maxY, minZ);
+                this.tessellator.addVertex(maxX, minY, minZ);
+                this.tessellator.addVertex(minX, minY, minZ);
+            }
+            case WEST -> {
+                this.tessellator.addVertex(minX, maxY, maxZ);
+                this.tessellator.addVertex(minX, minY, maxZ);
+                this.tessellator.addVertex(maxX, minY, maxZ);
+                this.tessellator.addVertex(maxX, maxY, maxZ);
+            }
+            case NORTH -> {
+                this.tessellator.addVertex(minX, maxY, maxZ);
+                this.tessellator.addVertex(minX, maxY, minZ);
+                this.tessellator.addVertex(minX, minY, minZ);
+                this.tessellator.addVertex(minX, minY, maxZ);
+            }
+            case SOUTH -> {
+                this.tessellator.addVertex(maxX, minY, maxZ);
+                this.tessellator.addVertex(maxX, minY, minZ);
+                this.tessellator.addVertex(maxX, maxY, minZ);
+                this.tessellator.addVertex(maxX, maxY, maxZ);
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Render the visible tiles collected by {@link #update(int, int, Frustum)}
+     */
+    public void render() {
+        GL11.glDisable(GL11.GL_TEXTURE_2D);
+
+        for (LodTile tile : this.visibleTiles) {
+            GL11.glPushMatrix();
+            GL11.glTranslatef(tile.x * ChunkSection.SIZE, 0, tile.z * ChunkSection.SIZE);
+            GL11.glCallList(tile.list);
+            GL11.glPopMatrix();
+        }
+
+        GL11.glEnable(GL11.GL_TEXTURE_2D);
+    }
+
+    public boolean hasPendingBuilds() {
+        return this.pendingBuilds;
+    }
+
+    public int getTileCount() {
+        return this.tiles.size();
+    }
+
+    public int getVisibleTileCount() {
+        return this.visibleTiles.size();
+    }
+
+    public int getQuadCount() {
+        return this.quadCount;
+    }
+
+    private static class LodTile {
+        private final int x;
+        private final int z;
+        private final int list;
+        private int step;
+        private int quads;
+
+        private LodTile(int x, int z, int list) {
+            this.x = x;
+            this.z = z;
+            this.list = list;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.GLAllocation;
+import org.lwjgl.opengl.ARBBufferObject;
+import org.lwjgl.opengl.ARBVertexBufferObject;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Back to front order of the translucent quads of a chunk section. The order is computed by the
+ * {@link TranslucentSorter} on its worker thread and written into one of two index buffers,
+ * the render thread only swaps the buffers once a new order arrived.
+ */
+public class TranslucentSort {
+
+    // Sort again once the camera moved this far since the last sort
+    private static final double MIN_MOVE_SQUARED = 1.0D;
+
+    private static final int VERTICES_PER_QUAD = 6;
+
+    private final RegionMesh mesh;
+
+    // Centers of the quads relative to the region origin, replaced on every upload
+    private float[] centroids;
+    private int generation;
+
+    // Camera position of the last requested sort
+    private double sortedX = Double.NaN;
+    private double sortedY;
+    private double sortedZ;
+    private boolean pending;
+
+    // Index buffers, the front buffer is drawn while the back buffer receives the next order
+    private final int[] indexBuffers = new int[2];
+    private int front;
+    private int indexCount;
+
+    // Indices of the front buffer, they are shifted and uploaded again when the mesh is moved by its region
+    private int[] indices;
+    private TranslucentSorter sorter;
+
+    // Vertex of the mesh the indices were computed for
+    private int firstVertex = -1;
+
+    public TranslucentSort(RegionMesh mesh) {
+        this.mesh = mesh;
+        this.indexBuffers[0] = GLAllocation.generateBuffer();
+        this.indexBuffers[1] = GLAllocation.generateBuffer();
+    }
+
+    /**
+     * Take the quads of the uploaded mesh, they are sorted again on the next update. Edited blocks reuse
+     * the slots of the mesh, so the previous order is drawn until then as long as it covers all slots.
+     * Otherwise the mesh is drawn unsorted, the previous order would skip the new slots.
+     */
+    public void setQuads(SectionMesh mesh) {
+        this.centroids = mesh.computeCentroids();
+        this.generation++;
+        this.sortedX = Double.NaN;
+
+        if (this.indexCount != mesh.getSlotCount() * VERTICES_PER_QUAD) {
+            this.indexCount = 0;
+        }
+    }
+
+    /**
+     * Request a sort if the camera moved far enough or the quads changed
+     */
+    public void update(TranslucentSorter sorter, double cameraX, double cameraY, double cameraZ) {
+        if (this.pending || this.mesh.isEmpty()) {
+            return;
+        }
+
+        double distanceX = cameraX - this.sortedX;
+        double distanceY = cameraY - this.sortedY;
+        double distanceZ = cameraZ - this.sortedZ;
+        if (distanceX * distanceX + distanceY * distanceY + distanceZ * distanceZ < MIN_MOVE_SQUARED) {
+            return;
+        }
+
+        this.sortedX = cameraX;
+        this.sortedY = cameraY;
+        this.sortedZ = cameraZ;
+        this.pending = true;
+
+        RegionBuffer region = this.mesh.getRegion();
+        sorter.submit(this, this.centroids, this.generation, this.mesh.getFirstVertex(),
+                (float) (cameraX - RegionBuffer.getOrigin(region.x)), (float) cameraY, (float) (cameraZ - RegionBuffer.getOrigin(region.z)));
+    }
+
+    /**
+     * Upload a finished order into the back buffer and swap the buffers, called on the render thread
+     */
+    void apply(TranslucentSorter sorter, int generation, int firstVertex, int[] indices) {
+        this.pending = false;
+
+        // The quads changed while sorting
+        if (generation != this.generation || this.indexBuffers[0] == 0) {
+            this.sortedX = Double.NaN;
+            return;
+        }
+
+        int back = this.front ^ 1;
+        this.upload(sorter, this.indexBuffers[back], indices);
+
+        this.front = back;
+        this.indexCount = indices.length;
+        this.indices = indices;
+        this.sorter = sorter;
+        this.firstVertex = firstVertex;
+    }
+
+    private void upload(TranslucentSorter sorter, int indexBuffer, int[] indices) {
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ELEMENT_ARRAY_BUFFER_ARB, indexBuffer);
+        ARBBufferObject.glBufferDataARB(ARBVertexBufferObject.GL_ELEMENT_ARRAY_BUFFER_ARB,
+                sorter.stage(indices), ARBBufferObject.GL_STREAM_DRAW_ARB);
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ELEMENT_ARRAY_BUFFER_ARB, 0);
+        GLAllocation.setSize(GLAllocation.Category.BUFFER, indexBuffer, indices.length * 4L);
+    }
+
+    /**
+     * Draw the mesh in the sorted order
+     *
+     * @return False if there is no valid order yet and the mesh has to be drawn unsorted
+     */
+    public boolean render() {
+        if (this.indexCount == 0 || this.mesh.isEmpty()) {
+            return false;
+        }
+
+        // The mesh was moved inside its region, shift the order to the new location
+        int firstVertex = this.mesh.getFirstVertex();
+        if (this.firstVertex != firstVertex) {
+            int offset = firstVertex - this.firstVertex;
+            for (int i = 0; i < this.indices.length; i++) {
+                this.indices[i] += offset;
+            }
+
+            this.upload(this.sorter, this.indexBuffers[this.front], this.indices);
+            this.firstVertex = firstVertex;
+        }
+
+        RegionBuffer region = this.mesh.getRegion();
+
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, this.mesh.getBufferId());
+        ChunkMesh.setPointers();
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ELEMENT_ARRAY_BUFFER_ARB, this.indexBuffers[this.front]);
+
+        GL11.glPushMatrix();
+        GL11.glTranslatef(RegionBuffer.getOrigin(region.x), 0, RegionBuffer.getOrigin(region.z));
+        GL11.glDrawElements(GL11.GL_TRIANGLES, this.indexCount, GL11.GL_UNSIGNED_INT, 0L);
+        GL11.glPopMatrix();
+
+        ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ELEMENT_ARRAY_BUFFER_ARB, 0);
+        return true;
+    }
+
+    /**
+     * Delete the index buffers, a pending order is dropped when it arrives
+     */
+    public void release() {
+        if (this.indexBuffers[0] != 0) {
+            GLAllocation.deleteBuffer(this.indexBuffers[0]);
+            GLAllocation.deleteBuffer(this.indexBuffers[1]);
+            this.indexBuffers[0] = 0;
+            this.indexBuffers[1] = 0;
+        }
+        this.indexCount = 0;
+        this.indices = null;
+    }
+}
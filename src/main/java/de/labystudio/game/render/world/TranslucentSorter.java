@@ -0,0 +1,164 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.GLAllocation;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorts the translucent quads of chunk sections back to front on a worker thread.
+ * Finished orders are queued and uploaded by the render thread using {@link #applyResults()}.
+ */
+public class TranslucentSorter {
+
+    private static final int VERTICES_PER_QUAD = 6;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Translucent sorter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<>();
+
+    // Staging memory to upload the indices
+    private IntBuffer stagingBuffer = GLAllocation.createDirectIntBuffer(1024);
+
+    // Statistics of the results applied in the last frame
+    private int sortsLastFrame;
+    private long sortNanosLastFrame;
+    private int pendingSorts;
+
+    /**
+     * Sort the quads on the worker thread
+     *
+     * @param sort        Sort state that receives the result
+     * @param centroids   Centers of the quads, must not be modified afterwards
+     * @param generation  Version of the quads
+     * @param firstVertex First vertex of the mesh inside its vertex buffer
+     * @param cameraX     Camera x coordinate relative to the mesh origin
+     * @param cameraY     Camera y coordinate relative to the mesh origin
+     * @param cameraZ     Camera z coordinate relative to the mesh origin
+     */
+    void submit(TranslucentSort sort, float[] centroids, int generation, int firstVertex, float cameraX, float cameraY, float cameraZ) {
+        this.pendingSorts++;
+
+        try {
+            this.executor.execute(() -> {
+                long start = System.nanoTime();
+                int[] indices = sortQuads(centroids, firstVertex, cameraX, cameraY, cameraZ);
+                this.results.add(new Result(sort, generation, firstVertex, indices, System.nanoTime() - start));
+            });
+        } catch (RejectedExecutionException ignored) {
+            // Shut down
+        }
+    }
+
+    /**
+     * Upload the finished orders, has to be called once per frame on the render thread
+     */
+    public void applyResults() {
+        int sorts = 0;
+        long nanos = 0;
+
+        Result result;
+        while ((result = this.results.poll()) != null) {
+            result.sort.apply(this, result.generation, result.firstVertex, result.indices);
+            nanos += result.nanos;
+            sorts++;
+        }
+
+        this.pendingSorts -= sorts;
+        this.sortsLastFrame = sorts;
+        this.sortNanosLastFrame = nanos;
+    }
+
+    /**
+     * Copy indices into the staging buffer for an upload
+     */
+    IntBuffer stage(int[] indices) {
+        if (indices.length > this.stagingBuffer.capacity()) {
+            this.stagingBuffer = GLAllocation.createDirectIntBuffer(Integer.highestOneBit(indices.length - 1) << 1);
+        }
+
+        this.stagingBuffer.clear();
+        this.stagingBuffer.put(indices);
+        this.stagingBuffer.flip();
+        return this.stagingBuffer;
+    }
+
+    /**
+     * Stop the worker thread, queued sorts are dropped
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+        try {
+            this.executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Order the quads by their distance to the camera, furthest first
+     *
+     * @return Triangle indices of the quads in the sorted order
+     */
+    static int[] sortQuads(float[] centroids, int firstVertex, float cameraX, float cameraY, float cameraZ) {
+        int quads = centroids.length / 3;
+
+        // The distance is positive, so its float bits sort like the float itself
+        long[] keys = new long[quads];
+        for (int quad = 0; quad < quads; quad++) {
+            float distanceX = centroids[quad * 3] - cameraX;
+            float distanceY = centroids[quad * 3 + 1] - cameraY;
+            float distanceZ = centroids[quad * 3 + 2] - cameraZ;
+            float distance = distanceX * distanceX + distanceY * distanceY + distanceZ * distanceZ;
+            keys[quad] = (long) Float.floatToRawIntBits(distance) << 32 | quad;
+        }
+        Arrays.sort(keys);
+
+        int[] indices = new int[quads * VERTICES_PER_QUAD];
+        int index = 0;
+        for (int i = quads - 1; i >= 0; i--) {
+            int vertex = firstVertex + (int) keys[i] * VERTICES_PER_QUAD;
+            for (int j = 0; j < VERTICES_PER_QUAD; j++) {
+                indices[index++] = vertex + j;
+            }
+        }
+        return indices;
+    }
+
+    public int getSortsLastFrame() {
+        return this.sortsLastFrame;
+    }
+
+    public long getSortNanosLastFrame() {
+        return this.sortNanosLastFrame;
+    }
+
+    public int getPendingSorts() {
+        return this.pendingSorts;
+    }
+
+    private static class Result {
+        private final TranslucentSort sort;
+        private final int generation;
+        private final int firstVertex;
+        private final int[] indices;
+        private final long nanos;
+
+        private Result(TranslucentSort sort, int generation, int firstVertex, int[] indices, long nanos) {
+            this.sort = sort;
+            this.generation = generation;
+            this.firstVertex = firstVertex;
+            this.indices = indices;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.Frustum;
+import de.labystudio.game.util.EnumBlockFace;
+import de.labystudio.game.world.chunk.ChunkSection;
+
+import java.util.Arrays;
+
+/**
+ * Collects the visible chunk sections with a breadth-first walk from the section of the camera.
+ * A section is only entered through a face that is connected to the face it was entered from,
+ * so sections behind terrain are never reached. Runs on the CPU only and doesn't touch OpenGL.
+ */
+public class VisibilityGraph {
+
+    private static final EnumBlockFace[] FACES = EnumBlockFace.values();
+    private static final int HEIGHT = 16;
+
+    private final int radius;
+    private final int diameter;
+
+    // Visit stamp of each section inside the walk area
+    private final int[] visited;
+    private int stamp;
+
+    // Frustum test result of each chunk column inside the walk area, valid if the stamp matches
+    private final int[] columnStamps;
+    private final int[] columnResults;
+
+    // Queue of the walk
+    private final ChunkSection[] queue;
+    private final int[] entryFaces;
+    private final int[] directions;
+
+    /**
+     * @param radius Highest chunk distance to the camera on the x and z axis a walk can use
+     */
+    public VisibilityGraph(int radius) {
+        this.radius = radius;
+        this.diameter = radius * 2 + 1;
+
+        int columns = this.diameter * this.diameter;
+        this.columnStamps = new int[columns];
+        this.columnResults = new int[columns];
+
+        int capacity = columns * HEIGHT;
+        this.visited = new int[capacity];
+        this.queue = new ChunkSection[capacity];
+        this.entryFaces = new int[capacity];
+        this.directions = new int[capacity];
+    }
+
+    /**
+     * Walk from the camera section through all connected sections
+     *
+     * @param sections Loaded sections to walk through
+     * @param cameraX  Section x coordinate of the camera
+     * @param cameraY  Section y coordinate of the camera
+     * @param cameraZ  Section z coordinate of the camera
+     * @param radius   Chunk distance to the camera on the x and z axis, at most the radius of the graph
+     * @param frustum  Frustum of the camera
+     * @param output   Array to write the visible sections into
+     * @return Amount of visible sections
+     */
+    public int collect(ISectionAccess sections, int cameraX, int cameraY, int cameraZ, int radius,
+                       Frustum frustum, ChunkSection[] output) {
+        // New stamp replaces clearing the visited array
+        if (++this.stamp == 0) {
+            Arrays.fill(this.visited, 0);
+            Arrays.fill(this.columnStamps, 0);
+            this.stamp = 1;
+        }
+
+        int head = 0;
+        int tail = 0;
+
+        // The camera might be above or below the world
+        cameraY = Math.max(0, Math.min(HEIGHT - 1, cameraY));
+
+        ChunkSection start = sections.getSection(cameraX, cameraY, cameraZ);
+        if (start == null) {
+            return 0;
+        }
+
+        this.visited[this.getIndex(cameraX, cameraY, cameraZ, cameraX, cameraZ)] = this.stamp;
+        this.queue[tail] = start;
+        this.entryFaces[tail] = -1;
+        this.directions[tail] = 0;
+        tail++;
+
+        int count = 0;
+        while (head < tail) {
+            ChunkSection section = this.queue[head];
+            int entryFace = this.entryFaces[head];
+            int direction = this.directions[head];
+            head++;
+
+            output[count++] = section;
+
+            for (EnumBlockFace face : FACES) {
+                // Never walk back towards the camera
+                if ((direction & 1 << face.getOpposite().ordinal()) != 0) {
+                    continue;
+                }
+
+                // The face has to be reachable from the face the section was entered through
+                if (entryFace != -1 && !section.isConnected(entryFace, face.ordinal())) {
+                    continue;
+                }
+
+                int x = section.x + face.x;
+                int y = section.y + face.y;
+                int z = section.z + face.z;
+
+                if (y < 0 || y >= HEIGHT || Math.abs(x - cameraX) > radius || Math.abs(z - cameraZ) > radius) {
+                    continue;
+                }
+
+                int index = this.getIndex(x, y, z, cameraX, cameraZ);
+                if (this.visited[index] == this.stamp) {
+                    continue;
+                }
+                this.visited[index] = this.stamp;
+
+                ChunkSection next = sections.getSection(x, y, z);
+                if (next == null) {
+                    continue;
+                }
+
+                // Test the column of the section first, sections of a column that is fully inside are visible
+                int column = index / HEIGHT;
+                if (this.columnStamps[column] != this.stamp) {
+                    this.columnStamps[column] = this.stamp;
+                    this.columnResults[column] = frustum.testColumn(x, z);
+                }
+                int columnResult = this.columnResults[column];
+
+                if (columnResult == Frustum.OUTSIDE
+                        || columnResult == Frustum.INTERSECT && frustum.testSection(next) == Frustum.OUTSIDE) {
+                    continue;
+                }
+
+                this.queue[tail] = next;
+                this.entryFaces[tail] = face.getOpposite().ordinal();
+                this.directions[tail] = direction | 1 << face.ordinal();
+                tail++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Maximal amount of sections a walk can return
+     */
+    public int getCapacity() {
+        return this.queue.length;
+    }
+
+    private int getIndex(int x, int y, int z, int cameraX, int cameraZ) {
+        int relativeX = x - cameraX + this.radius;
+        int relativeZ = z - cameraZ + this.radius;
+        return (relativeX * this.diameter + relativeZ) * HEIGHT + y;
+    }
+}
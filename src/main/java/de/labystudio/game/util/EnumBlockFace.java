@@ -18,6 +18,17 @@ public enum EnumBlockFace {
         this.z = z;
     }
 
+    public EnumBlockFace getOpposite() {
+        return switch (this) {
+            case TOP -> BOTTOM;
+            case BOTTOM -> TOP;
+            case NORTH -> SOUTH;
+            case EAST -> WEST;
+            case SOUTH -> NORTH;
+            case WEST -> EAST;
+        };
+    }
+
     public float getShading() {
         return this.isXAxis() ? 0.6F : this.isYAxis() ? 1.0F : 0.8F;
     }
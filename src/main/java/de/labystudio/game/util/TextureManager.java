@@ -1,5 +1,6 @@
 package de.labystudio.game.util;
 
+import de.labystudio.game.render.GLAllocation;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL30;
 
@@ -23,7 +24,7 @@ public class TextureManager {
      */
     public static int loadTexture(String resourceName, int mode) {
         // Generate a new texture id
-        int id = glGenTextures();
+        int id = GLAllocation.generateTexture();
 
         // Bind this texture id
         bind(id);
@@ -67,6 +68,9 @@ public class TextureManager {
             glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, byteBuffer);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
             GL30.glGenerateMipmap(GL_TEXTURE_2D);
+
+            // The mipmaps add a third of the image size
+            GLAllocation.setSize(GLAllocation.Category.TEXTURE, id, width * height * 4L * 4 / 3);
         } catch (IOException exception) {
             throw new RuntimeException("Could not load texture " + resourceName, exception);
         }
@@ -0,0 +1,477 @@
+package de.labystudio.game.world;
+
+import de.labystudio.game.world.chunk.Chunk;
+import de.labystudio.game.world.chunk.ChunkSection;
+import de.labystudio.game.world.chunk.ChunkSnapshot;
+import de.labystudio.game.world.chunk.format.WorldFormat;
+import de.labystudio.game.world.generator.WorldGenerator;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the chunks around the player on demand. Stored chunks are read by the loader threads of the
+ * {@link WorldFormat}, missing chunks are generated on the game thread within a time budget per tick.
+ * Chunks that fall out of range are saved if they changed and removed from the world.
+ * <p>
+ * Reading a block of a chunk that isn't loaded creates an empty placeholder chunk, so only chunks in the
+ * ready set are considered loaded. A placeholder receives its blocks once it's loaded or generated.
+ * The edits of the journal that aren't folded into the region file yet are replayed on top.
+ * <p>
+ * The chunks beyond the load radius are only summarized for the far terrain, see {@link TerrainSummary}.
+ * They are read from their region file or estimated by the generator and dropped right away.
+ */
+public class ChunkStreamer {
+
+    // Chunk distance around the player that is kept loaded
+    public static final int LOAD_RADIUS = 20;
+
+    // Chunks are unloaded a bit further away so they don't reload when the player moves back and forth
+    private static final int UNLOAD_RADIUS = LOAD_RADIUS + 2;
+
+    // Chunk distance around the player whose columns are summarized for the far terrain
+    public static final int SUMMARY_RADIUS = 32;
+
+    // Summaries are forgotten a bit further away as well
+    private static final int FORGET_RADIUS = SUMMARY_RADIUS + 2;
+
+    // Chunks that are loaded before the game starts
+    private static final int SPAWN_RADIUS = 2;
+
+    // Chunks that are read at the same time, the closest ones are requested first
+    private static final int MAX_PENDING_LOADS = 64;
+
+    // Loaded chunks that are added to the world per tick
+    private static final int MAX_LOADS_PER_TICK = 32;
+
+    // Time per tick that can be spent on generating chunks
+    private static final long GENERATION_BUDGET_NANOS = 8_000_000L;
+
+    private final World world;
+    private final WorldGenerator generator;
+    private final WorldFormat format;
+
+    // Chunks that are loaded or generated
+    private final LongOpenHashSet ready = new LongOpenHashSet();
+
+    // Chunks that are read by the loader or wait for their generation
+    private final LongOpenHashSet pending = new LongOpenHashSet();
+
+    // Chunks requested in this tick, they are passed to the loader at once so it can read them in file order
+    private final LongArrayList requests = new LongArrayList();
+
+    // Chunks that aren't stored and have to be generated, closest first
+    private final LongArrayFIFOQueue toGenerate = new LongArrayFIFOQueue();
+
+    // Unloaded chunks that are still being saved, they are taken back instead of reading the old state
+    private final Long2ObjectOpenHashMap<Chunk> unloading = new Long2ObjectOpenHashMap<>();
+
+    // Chunks beyond the load radius that are read or estimated to summarize their columns
+    private final LongOpenHashSet summarizing = new LongOpenHashSet();
+
+    // Chunks to summarize that aren't stored, their surface is estimated by the generator
+    private final LongArrayFIFOQueue toEstimate = new LongArrayFIFOQueue();
+
+    private int centerX = Integer.MIN_VALUE;
+    private int centerZ = Integer.MIN_VALUE;
+    private boolean complete;
+    private boolean summarized;
+
+    // Statistics
+    private int loadedChunks;
+    private int generatedChunks;
+    private int unloadedChunks;
+    private int replayedEdits;
+
+    public ChunkStreamer(World world, WorldGenerator generator, WorldFormat format) {
+        this.world = world;
+        this.generator = generator;
+        this.format = format;
+    }
+
+    /**
+     * Load or generate the chunks around the spawn right away, so the player doesn't fall through the ground
+     */
+    public void loadSpawn(int chunkX, int chunkZ) {
+        for (int x = chunkX - SPAWN_RADIUS; x <= chunkX + SPAWN_RADIUS; x++) {
+            for (int z = chunkZ - SPAWN_RADIUS; z <= chunkZ + SPAWN_RADIUS; z++) {
+                ChunkSection[] layers = null;
+                try {
+                    layers = this.format.loadChunk(x, z);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+
+                if (layers != null) {
+                    this.onLoaded(null, x, z, layers);
+                } else {
+                    this.generate(null, x, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Request the chunks around the player and unload distant chunks, called once per tick
+     *
+     * @param chunkX   Chunk x coordinate of the player
+     * @param chunkZ   Chunk z coordinate of the player
+     * @param renderer Renderer that holds the meshes of the chunks
+     */
+    public void update(int chunkX, int chunkZ, WorldRenderer renderer) {
+        if (chunkX != this.centerX || chunkZ != this.centerZ) {
+            this.centerX = chunkX;
+            this.centerZ = chunkZ;
+            this.complete = false;
+            this.summarized = false;
+
+            this.unloadDistantChunks(renderer);
+            this.world.getTerrainSummary().retain(chunkX, chunkZ, FORGET_RADIUS);
+        }
+
+        // Forget the unloaded chunks that are written
+        ObjectIterator<Chunk> iterator = this.unloading.values().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().isModified()) {
+                iterator.remove();
+            }
+        }
+
+        if (!this.complete) {
+            this.complete = this.requestRings(0, LOAD_RADIUS, (x, z) -> this.request(renderer, x, z));
+        } else if (!this.summarized) {
+            // The far terrain comes after the chunks in range
+            this.summarized = this.requestRings(LOAD_RADIUS + 1, SUMMARY_RADIUS, this::requestSummary);
+        }
+
+        if (!this.requests.isEmpty()) {
+            this.format.requestChunks(this.requests);
+            this.requests.clear();
+        }
+
+        // Add the chunks that were read
+        this.format.pollChunks((x, z, layers) -> {
+            long index = Chunk.getIndex(x, z);
+
+            // Only read for its summary, unless it was requested for loading in the meantime
+            if (this.summarizing.contains(index) && !this.pending.contains(index)) {
+                this.summarize(renderer, x, z, layers);
+                return;
+            }
+
+            // Went out of range while it was read
+            if (!this.isInRange(x, z, UNLOAD_RADIUS) || this.ready.contains(index)) {
+                this.pending.remove(index);
+                return;
+            }
+
+            if (layers != null) {
+                this.pending.remove(index);
+                this.onLoaded(renderer, x, z, layers);
+            } else {
+                // Stays pending until it's generated
+                this.toGenerate.enqueue(index);
+            }
+        }, MAX_LOADS_PER_TICK);
+
+        // Generate the missing chunks
+        long start = System.nanoTime();
+        while (!this.toGenerate.isEmpty() && System.nanoTime() - start < GENERATION_BUDGET_NANOS) {
+            long index = this.toGenerate.dequeueLong();
+            int x = (int) index;
+            int z = (int) (index >> 32);
+            this.pending.remove(index);
+
+            if (this.isInRange(x, z, UNLOAD_RADIUS) && !this.ready.contains(index)) {
+                this.generate(renderer, x, z);
+            }
+        }
+
+        // Estimate the far chunks that aren't stored with the remaining time
+        while (!this.toEstimate.isEmpty() && System.nanoTime() - start < GENERATION_BUDGET_NANOS) {
+            long index = this.toEstimate.dequeueLong();
+            int x = (int) index;
+            int z = (int) (index >> 32);
+
+            // Loaded chunks are summarized from their blocks
+            if (this.summarizing.remove(index) && this.isInRange(x, z, FORGET_RADIUS)) {
+                this.generator.summarizeChunk(x, z, this.world.getTerrainSummary());
+                renderer.onChunkSummarized(x, z);
+            }
+        }
+    }
+
+    /**
+     * Request chunks in rings around the player, the closest ones first
+     *
+     * @return False if the requests stopped before the last ring
+     */
+    private boolean requestRings(int firstRing, int lastRing, ChunkRequest request) {
+        for (int ring = firstRing; ring <= lastRing; ring++) {
+            for (int i = -ring; i <= ring; i++) {
+                if (!request.request(this.centerX + i, this.centerZ - ring)
+                        || !request.request(this.centerX + i, this.centerZ + ring)) {
+                    return false;
+                }
+            }
+            for (int i = -ring + 1; i < ring; i++) {
+                if (!request.request(this.centerX - ring, this.centerZ + i)
+                        || !request.request(this.centerX + ring, this.centerZ + i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Request a chunk if it isn't loaded yet
+     *
+     * @return False if no more chunks can be requested in this tick
+     */
+    private boolean request(WorldRenderer renderer, int x, int z) {
+        long index = Chunk.getIndex(x, z);
+        if (this.ready.contains(index) || this.pending.contains(index)) {
+            return true;
+        }
+
+        // Take back an unloaded chunk whose save isn't written yet
+        Chunk chunk = this.unloading.remove(index);
+        if (chunk != null) {
+            Chunk placeholder = this.world.chunks.put(index, chunk);
+            if (placeholder != null) {
+                placeholder.release(renderer);
+            }
+
+            this.onReady(chunk);
+            renderer.onChunkLoaded(x, z);
+            return true;
+        }
+
+        if (this.format.getPendingChunks() + this.requests.size() >= MAX_PENDING_LOADS) {
+            return false;
+        }
+
+        this.pending.add(index);
+        this.requests.add(index);
+        return true;
+    }
+
+    /**
+     * Request a chunk beyond the load radius to summarize its columns if it isn't summarized yet
+     *
+     * @return False if no more chunks can be requested in this tick
+     */
+    private boolean requestSummary(int x, int z) {
+        long index = Chunk.getIndex(x, z);
+        if (this.summarizing.contains(index) || this.world.getTerrainSummary().contains(x, z)) {
+            return true;
+        }
+
+        if (this.format.getPendingChunks() + this.requests.size() >= MAX_PENDING_LOADS) {
+            return false;
+        }
+
+        this.summarizing.add(index);
+        this.requests.add(index);
+        return true;
+    }
+
+    /**
+     * Summarize a chunk that was read for the far terrain, the sections are dropped afterwards
+     */
+    private void summarize(WorldRenderer renderer, int x, int z, ChunkSection[] layers) {
+        long index = Chunk.getIndex(x, z);
+
+        // Not stored, stays in the summarizing set until it's estimated
+        if (layers == null) {
+            this.toEstimate.enqueue(index);
+            return;
+        }
+
+        this.summarizing.remove(index);
+        if (this.isInRange(x, z, FORGET_RADIUS)) {
+            this.world.getTerrainSummary().summarize(x, z, layers);
+            renderer.onChunkSummarized(x, z);
+        }
+    }
+
+    /**
+     * Fill a chunk with the sections read from its region file
+     */
+    private void onLoaded(WorldRenderer renderer, int x, int z, ChunkSection[] layers) {
+        Chunk chunk = this.world.getChunkAt(x, z);
+
+        // Release the meshes of the placeholder
+        if (renderer != null) {
+            chunk.release(renderer);
+        }
+
+        chunk.setSections(layers);
+        chunk.setSaved(chunk.getModificationCount());
+        this.replayEdits(chunk);
+        this.onReady(chunk);
+        this.loadedChunks++;
+
+        if (renderer != null) {
+            renderer.onChunkLoaded(x, z);
+        } else {
+            chunk.queueForRebuild();
+        }
+    }
+
+    private void generate(WorldRenderer renderer, int x, int z) {
+        // The generated terrain is fully lit, there is no need to update the light of each placed block
+        boolean updateLightning = this.world.updateLightning;
+        boolean journalEdits = this.world.journalEdits;
+        this.world.updateLightning = false;
+        this.world.journalEdits = false;
+
+        this.generator.generateChunk(x, z);
+        this.generator.populateChunk(x, z);
+
+        this.world.updateLightning = updateLightning;
+        this.world.journalEdits = journalEdits;
+
+        Chunk chunk = this.world.getChunkAt(x, z);
+        this.replayEdits(chunk);
+        this.onReady(chunk);
+        this.generatedChunks++;
+
+        if (renderer != null) {
+            renderer.onChunkLoaded(x, z);
+        }
+    }
+
+    /**
+     * Mark a chunk as loaded and summarize its columns, a summary that is still read for it is ignored
+     */
+    private void onReady(Chunk chunk) {
+        long index = Chunk.getIndex(chunk.getX(), chunk.getZ());
+        this.ready.add(index);
+        this.summarizing.remove(index);
+        this.world.getTerrainSummary().summarize(chunk);
+    }
+
+    /**
+     * Apply the journaled edits of a chunk that aren't stored in its region file yet.
+     * The chunk stays modified, so the edits are folded into the region file with its next save.
+     */
+    private void replayEdits(Chunk chunk) {
+        long[] edits = this.format.getJournal().getEdits(chunk.getX(), chunk.getZ());
+        if (edits == null) {
+            return;
+        }
+
+        for (long edit : edits) {
+            int y = (int) (edit >> 8) & 0xFF;
+            int z = (int) (edit >> 4) & 15;
+            int x = (int) edit & 15;
+            chunk.getSection(y >> 4).setBlockAt(x, y & 15, z, (int) (edit >> 16) & 0xFF);
+
+            if (this.world.updateLightning) {
+                this.world.updateBlockLightAt((chunk.getX() << 4) + x, y, (chunk.getZ() << 4) + z);
+            }
+        }
+        this.replayedEdits += edits.length;
+    }
+
+    /**
+     * Save and remove the chunks out of range, placeholders are dropped without saving
+     */
+    private void unloadDistantChunks(WorldRenderer renderer) {
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+        List<Chunk> distantChunks = new ArrayList<>();
+
+        for (Chunk chunk : this.world.chunks.values()) {
+            if (!this.isInRange(chunk.getX(), chunk.getZ(), UNLOAD_RADIUS)) {
+                distantChunks.add(chunk);
+            }
+        }
+
+        for (Chunk chunk : distantChunks) {
+            long index = Chunk.getIndex(chunk.getX(), chunk.getZ());
+
+            if (this.ready.remove(index)) {
+                // The far terrain keeps the last state of the chunk
+                this.world.getTerrainSummary().summarize(chunk);
+
+                if (chunk.isModified()) {
+                    snapshots.add(new ChunkSnapshot(chunk));
+                    this.unloading.put(index, chunk);
+                }
+                this.unloadedChunks++;
+            }
+
+            renderer.unloadChunk(chunk.getX(), chunk.getZ());
+        }
+
+        if (!snapshots.isEmpty()) {
+            this.world.saveSnapshots(snapshots);
+        }
+    }
+
+    private boolean isInRange(int x, int z, int radius) {
+        return Math.abs(x - this.centerX) <= radius && Math.abs(z - this.centerZ) <= radius;
+    }
+
+    /**
+     * Check if a chunk is loaded or generated and not just a placeholder
+     */
+    public boolean isReady(Chunk chunk) {
+        return this.ready.contains(Chunk.getIndex(chunk.getX(), chunk.getZ()));
+    }
+
+    public int getReadyChunks() {
+        return this.ready.size();
+    }
+
+    public int getPendingLoads() {
+        return this.pending.size() - this.toGenerate.size();
+    }
+
+    public int getPendingGenerations() {
+        return this.toGenerate.size();
+    }
+
+    public int getUnloadingChunks() {
+        return this.unloading.size();
+    }
+
+    public int getLoadedChunks() {
+        return this.loadedChunks;
+    }
+
+    public int getGeneratedChunks() {
+        return this.generatedChunks;
+    }
+
+    public int getUnloadedChunks() {
+        return this.unloadedChunks;
+    }
+
+    public int getReplayedEdits() {
+        return this.replayedEdits;
+    }
+
+    public int getPendingSummaries() {
+        return this.summarizing.size();
+    }
+
+    /**
+     * Request of a single chunk by its coordinates
+     */
+    private interface ChunkRequest {
+
+        /**
+         * @return False if no more chunks can be requested in this tick
+         */
+        boolean request(int x, int z);
+    }
+}
@@ -0,0 +1,142 @@
+package de.labystudio.game.world;
+
+import de.labystudio.game.world.chunk.Chunk;
+import de.labystudio.game.world.chunk.ChunkSection;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+/**
+ * Heightmap and top block of each column of the chunks around the player, the source of the far terrain.
+ * A chunk takes 512 bytes instead of the blocks and light of its sections, so the summaries are kept after
+ * their chunks are unloaded and reach further than the loaded chunks.
+ */
+public class TerrainSummary {
+
+    // Height of a column in a chunk that isn't summarized
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    // Height of a column without blocks
+    public static final int EMPTY = -1;
+
+    private static final int COLUMNS = ChunkSection.SIZE * ChunkSection.SIZE;
+
+    // Height of the highest block of each column, followed by the id of that block, air if the column is empty
+    private final Long2ObjectOpenHashMap<byte[]> chunks = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Summarize the columns of a loaded chunk
+     */
+    public void summarize(Chunk chunk) {
+        this.summarize(chunk.getX(), chunk.getZ(), chunk.getSections());
+    }
+
+    /**
+     * Summarize the columns of a chunk from its sections
+     *
+     * @param sections Sections of the chunk, from the bottom to the top
+     */
+    public void summarize(int chunkX, int chunkZ, ChunkSection[] sections) {
+        byte[] columns = this.getOrCreate(chunkX, chunkZ);
+
+        for (int z = 0; z < ChunkSection.SIZE; z++) {
+            for (int x = 0; x < ChunkSection.SIZE; x++) {
+                int column = z << 4 | x;
+                columns[column] = 0;
+                columns[COLUMNS + column] = 0;
+
+                // Highest block that isn't air
+                search:
+                for (int sectionY = sections.length - 1; sectionY >= 0; sectionY--) {
+                    ChunkSection section = sections[sectionY];
+                    if (section == null) {
+                        continue;
+                    }
+
+                    for (int y = ChunkSection.SIZE - 1; y >= 0; y--) {
+                        byte block = section.getBlockAt(x, y, z);
+                        if (block != 0) {
+                            columns[column] = (byte) (sectionY * ChunkSection.SIZE + y);
+                            columns[COLUMNS + column] = block;
+                            break search;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the highest block of a column, used to summarize a chunk that isn't loaded
+     *
+     * @param x       Block x coordinate
+     * @param z       Block z coordinate
+     * @param height  Y coordinate of the highest block
+     * @param blockId Type of the highest block, air if the column is empty
+     */
+    public void setColumn(int x, int z, int height, int blockId) {
+        byte[] columns = this.getOrCreate(x >> 4, z >> 4);
+        int column = (z & 15) << 4 | x & 15;
+        columns[column] = (byte) height;
+        columns[COLUMNS + column] = (byte) blockId;
+    }
+
+    /**
+     * Get the y coordinate of the highest block of a column
+     *
+     * @param x Block x coordinate
+     * @param z Block z coordinate
+     * @return Y coordinate, {@link #EMPTY} if the column is empty or {@link #UNKNOWN} if the chunk isn't summarized
+     */
+    public int getHeight(int x, int z) {
+        byte[] columns = this.chunks.get(Chunk.getIndex(x >> 4, z >> 4));
+        if (columns == null) {
+            return UNKNOWN;
+        }
+
+        int column = (z & 15) << 4 | x & 15;
+        return columns[COLUMNS + column] == 0 ? EMPTY : columns[column] & 0xFF;
+    }
+
+    /**
+     * Get the type of the highest block of a column
+     *
+     * @param x Block x coordinate
+     * @param z Block z coordinate
+     * @return Block id, air if the column is empty or the chunk isn't summarized
+     */
+    public short getTopBlock(int x, int z) {
+        byte[] columns = this.chunks.get(Chunk.getIndex(x >> 4, z >> 4));
+        return columns == null ? 0 : (short) (columns[COLUMNS + ((z & 15) << 4 | x & 15)] & 0xFF);
+    }
+
+    public boolean contains(int chunkX, int chunkZ) {
+        return this.chunks.containsKey(Chunk.getIndex(chunkX, chunkZ));
+    }
+
+    /**
+     * Forget the chunks that are further away than the given chunk distance on the x or z axis
+     */
+    public void retain(int centerX, int centerZ, int radius) {
+        ObjectIterator<Long2ObjectOpenHashMap.Entry<byte[]>> iterator = this.chunks.long2ObjectEntrySet().fastIterator();
+        while (iterator.hasNext()) {
+            long index = iterator.next().getLongKey();
+            int x = (int) index;
+            int z = (int) (index >> 32);
+
+            if (Math.abs(x - centerX) > radius || Math.abs(z - centerZ) > radius) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Amount of summarized chunks
+     */
+    public int size() {
+        return this.chunks.size();
+    }
+
+    private byte[] getOrCreate(int chunkX, int chunkZ) {
+        return this.chunks.computeIfAbsent(Chunk.getIndex(chunkX, chunkZ), index -> new byte[COLUMNS * 2]);
+    }
+}
@@ -1,5 +1,6 @@
 package de.labystudio.game.world;
 
+import de.labystudio.game.render.world.ISectionAccess;
 import de.labystudio.game.render.world.IWorldAccess;
 import de.labystudio.game.util.BoundingBox;
 import de.labystudio.game.util.EnumBlockFace;
@@ -7,70 +8,92 @@ import de.labystudio.game.util.MathHelper;
 import de.labystudio.game.world.block.Block;
 import de.labystudio.game.world.chunk.Chunk;
 import de.labystudio.game.world.chunk.ChunkSection;
+import de.labystudio.game.world.chunk.ChunkSnapshot;
 import de.labystudio.game.world.chunk.format.WorldFormat;
+import de.labystudio.game.world.chunk.format.WorldSaver;
 import de.labystudio.game.world.generator.WorldGenerator;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
-public class World implements IWorldAccess {
+public class World implements IWorldAccess, ISectionAccess {
 
     public static final int TOTAL_HEIGHT = ChunkSection.SIZE * 16 - 1;
+
+    // Journaled edits after which the changed chunks are saved, so the journal doesn't grow without bounds
+    private static final int JOURNAL_FOLD_EDITS = 4096;
+
     public Long2ObjectOpenHashMap<Chunk> chunks = new Long2ObjectOpenHashMap<>();
 
     public boolean updateLightning = false;
+
+    // Log block edits into the journal, disabled while chunks are generated
+    boolean journalEdits = false;
+    private long foldSequence;
+
     private final ArrayDeque<Long> lightUpdateQueue = new ArrayDeque<>();
 
+    // Columns of the chunks around the player, kept after the chunks are unloaded
+    private final TerrainSummary terrainSummary = new TerrainSummary();
+
     private final WorldGenerator generator = new WorldGenerator(this, (int) (System.currentTimeMillis() % 100000));
     public WorldFormat format = new WorldFormat(this, new File("saves/World1"));
+    private final WorldSaver saver = new WorldSaver(this.format);
+    private final ChunkStreamer streamer = new ChunkStreamer(this, this.generator, this.format);
 
     public World() {
         this.load();
     }
 
     public void load() {
-        if (this.format.exists()) {
-            // Load chunks
-            this.format.load((x, z, array) -> {
-                Chunk chunk = this.getChunkAt(x, z);
-                chunk.setSections(array);
-                chunk.queueForRebuild();
-            });
-
-        } else {
-            int radius = 20;
-
-            // Generator new spawn chunks
-            for (int x = -radius; x <= radius; x++) {
-                for (int z = -radius; z <= radius; z++) {
-                    this.generator.generateChunk(x, z);
-                }
-            }
-
-            // Populate trees
-            for (int x = -radius; x <= radius; x++) {
-                for (int z = -radius; z <= radius; z++) {
-                    this.generator.populateChunk(x, z);
-                }
-            }
-
-        }
+        // The remaining chunks are streamed in around the player
+        this.streamer.loadSpawn(0, 0);
         this.updateLightning = true;
+        this.journalEdits = true;
     }
 
+    /**
+     * Capture snapshots of the chunks that changed since their last save and write them on the I/O thread
+     */
     public void save() {
-        try {
-            this.format.saveChunks();
-        } catch (IOException e) {
-            e.printStackTrace();
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+        for (Chunk chunk : this.chunks.values()) {
+            // Placeholders of chunks that aren't loaded yet must not replace the stored chunks
+            if (chunk.isModified() && this.streamer.isReady(chunk)) {
+                snapshots.add(new ChunkSnapshot(chunk));
+            }
         }
+
+        this.foldSequence = this.format.getJournal().getSequence();
+        this.saver.save(snapshots, this.foldSequence);
+    }
+
+    /**
+     * Write snapshots on the I/O thread, they have to be captured right before
+     */
+    void saveSnapshots(List<ChunkSnapshot> snapshots) {
+        this.saver.save(snapshots, this.format.getJournal().getSequence());
+    }
+
+    /**
+     * Wait for the queued saves to be written and close the region files
+     */
+    public void shutdown() {
+        this.saver.shutdown();
+        this.format.close();
     }
 
     public void onTick() {
+        // Fold the journaled edits into the region files in the background
+        if (this.format.getJournal().getSequence() - this.foldSequence > JOURNAL_FOLD_EDITS && !this.saver.isSaving()) {
+            this.save();
+        }
+
         // Light updates
         if (!this.lightUpdateQueue.isEmpty()) {
             // Handle 128 light updates per tick
@@ -109,6 +132,7 @@ public class World implements IWorldAccess {
     }
 
     public void blockChanged(int x, int y, int z) {
+        // Smooth lighting samples all blocks around a corner, so every block touching the changed one is affected
         this.setDirty(x - 1, y - 1, z - 1, x + 1, y + 1, z + 1);
     }
 
@@ -118,23 +142,27 @@ public class World implements IWorldAccess {
         }
     }
 
+    /**
+     * Queue the blocks inside the given range to re-emit their faces
+     */
     public void setDirty(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
-        // To chunk coordinates
-        minX = minX >> 4;
-        maxX = maxX >> 4;
-        minY = minY >> 4;
-        maxY = maxY >> 4;
-        minZ = minZ >> 4;
-        maxZ = maxZ >> 4;
-
         // Minimum and maximum y
         minY = Math.max(0, minY);
-        maxY = Math.min(15, maxY);
-
-        for (int x = minX; x <= maxX; x++) {
-            for (int y = minY; y <= maxY; y++) {
-                for (int z = minZ; z <= maxZ; z++) {
-                    this.getChunkAt(x, y, z).queueForRebuild();
+        maxY = Math.min(TOTAL_HEIGHT, maxY);
+
+        // For all affected chunk sections
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkY = minY >> 4; chunkY <= maxY >> 4; chunkY++) {
+                for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                    int baseX = chunkX << 4;
+                    int baseY = chunkY << 4;
+                    int baseZ = chunkZ << 4;
+
+                    // Range relative to the section
+                    this.getChunkAt(chunkX, chunkY, chunkZ).queueBlockUpdates(
+                            minX - baseX, minY - baseY, minZ - baseZ,
+                            maxX - baseX, maxY - baseY, maxZ - baseZ
+                    );
                 }
             }
         }
@@ -145,6 +173,11 @@ public class World implements IWorldAccess {
         if (chunkSection != null && (chunkSection.getBlockAt(x & 15, y & 15, z & 15) != type)) {
             chunkSection.setBlockAt(x & 15, y & 15, z & 15, type);
 
+            // Durable within a few milliseconds, the chunk itself is saved later
+            if (this.journalEdits) {
+                this.format.getJournal().log(x, y, z, type);
+            }
+
             if (this.updateLightning) {
                 this.updateBlockLightAt(x, y, z);
             }
@@ -218,9 +251,11 @@ public class World implements IWorldAccess {
 
     private void setLightAt(int x, int y, int z, int light) {
         ChunkSection chunkSection = this.getChunkAtBlock(x, y, z);
-        if (chunkSection != null) {
+        if (chunkSection != null && chunkSection.getLightAt(x & 15, y & 15, z & 15) != light) {
             chunkSection.setLightAt(x & 15, y & 15, z & 15, light);
-            chunkSection.queueForRebuild();
+
+            // The light is sampled by the faces of all surrounding blocks
+            this.setDirty(x - 1, y - 1, z - 1, x + 1, y + 1, z + 1);
         }
     }
 
@@ -284,11 +319,26 @@ public class World implements IWorldAccess {
         return this.getChunkAt(chunkX, chunkZ).getSection(layerY);
     }
 
+    @Override
+    public ChunkSection getSection(int x, int y, int z) {
+        // Don't create chunks that aren't loaded
+        Chunk chunk = this.chunks.get(Chunk.getIndex(x, z));
+        return chunk == null ? null : chunk.getSection(y);
+    }
+
     public Chunk getChunkAt(int x, int z) {
         long chunkIndex = Chunk.getIndex(x, z);
         return this.chunks.computeIfAbsent(chunkIndex, key -> new Chunk(this, x, z));
     }
 
+    public ChunkStreamer getStreamer() {
+        return this.streamer;
+    }
+
+    public TerrainSummary getTerrainSummary() {
+        return this.terrainSummary;
+    }
+
     public boolean isChunkLoaded(int x, int z) {
         long chunkIndex = x & 4294967295L | (z & 4294967295L) << 32;
         return this.chunks.containsKey(chunkIndex);
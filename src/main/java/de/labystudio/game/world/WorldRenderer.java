@@ -2,32 +2,81 @@ package de.labystudio.game.world;
 
 import de.labystudio.game.render.Frustum;
 import de.labystudio.game.render.GLAllocation;
+import de.labystudio.game.render.Tessellator;
+import de.labystudio.game.render.buffer.BufferPool;
+import de.labystudio.game.render.buffer.LwjglBufferBackend;
 import de.labystudio.game.render.world.BlockRenderer;
+import de.labystudio.game.render.world.ChunkMesh;
+import de.labystudio.game.render.world.Lightmap;
+import de.labystudio.game.render.world.RebuildScheduler;
+import de.labystudio.game.render.world.RegionRenderer;
+import de.labystudio.game.render.world.RenderDistanceController;
+import de.labystudio.game.render.world.SectionMeshCache;
+import de.labystudio.game.render.world.TerrainLod;
+import de.labystudio.game.render.world.TranslucentSorter;
+import de.labystudio.game.render.world.VisibilityGraph;
+import de.labystudio.game.util.EnumBlockFace;
 import de.labystudio.game.util.EnumWorldBlockLayer;
+import de.labystudio.game.util.MathHelper;
 import de.labystudio.game.util.TextureManager;
 import de.labystudio.game.world.chunk.Chunk;
 import de.labystudio.game.world.chunk.ChunkSection;
+import org.joml.Matrix4f;
 import org.lwjgl.opengl.GL11;
 
 import java.nio.FloatBuffer;
-import java.util.ArrayList;
-import java.util.List;
 
 public class WorldRenderer {
 
+    // Render distance of the chunk sections, adjusted between the bounds by the frame time
     public static final int RENDER_DISTANCE = 8;
+    public static final int MIN_RENDER_DISTANCE = 4;
+    public static final int MAX_RENDER_DISTANCE = 12;
+
+    // Frame time the render distance is adjusted for
+    private static final long TARGET_FRAME_NANOS = 1_000_000_000L / 60;
 
     private final FloatBuffer colorBuffer = GLAllocation.createDirectFloatBuffer(16);
     public final int textureId = TextureManager.loadTexture("/terrain.png", GL11.GL_NEAREST);
 
     private final World world;
 
-    private final BlockRenderer blockRenderer = new BlockRenderer();
+    // Chunk sections are meshed with their own tessellator
+    private final Tessellator tessellator = new Tessellator(0x40000);
+    private final BlockRenderer blockRenderer = new BlockRenderer(this.tessellator);
+    private final BufferPool bufferPool = new BufferPool(new LwjglBufferBackend());
+    private final SectionMeshCache meshCache = new SectionMeshCache(this.bufferPool);
+    private final RegionRenderer regionRenderer = new RegionRenderer(this.bufferPool);
+    private final Lightmap lightmap = new Lightmap();
+    private final TranslucentSorter translucentSorter = new TranslucentSorter();
     private final Frustum frustum = new Frustum();
-    private final List<ChunkSection> chunkSectionUpdateQueue = new ArrayList<>();
+    private final RebuildScheduler rebuildScheduler = new RebuildScheduler();
+    private final TerrainLod terrainLod;
+
+    // Time per frame that can be spent on rebuilding chunk sections
+    private long rebuildBudgetNanos = 4_000_000L;
+
+    private final RenderDistanceController renderDistanceController = new RenderDistanceController(
+            MIN_RENDER_DISTANCE, MAX_RENDER_DISTANCE, RENDER_DISTANCE, TARGET_FRAME_NANOS);
+    private long lastFrameTime;
+
+    // Visible chunk sections of the current frame, closest first
+    private final VisibilityGraph visibilityGraph = new VisibilityGraph(MAX_RENDER_DISTANCE - 1);
+    private final ChunkSection[] visibleSections = new ChunkSection[this.visibilityGraph.getCapacity()];
+    private int visibleSectionCount;
+    private int lastCameraSectionX;
+    private int lastCameraSectionY;
+    private int lastCameraSectionZ;
+    private boolean visibilityChanged = true;
+
+    // Amount of meshes and their vertex memory drawn in the current frame
+    private int drawCalls;
+    private long drawnBytes;
 
     public WorldRenderer(World world) {
         this.world = world;
+        this.terrainLod = new TerrainLod(world, this.tessellator, this.renderDistanceController.getDistance());
+        this.rebuildScheduler.setMaxDistance(this.renderDistanceController.getDistance() - 1);
 
         // Sky color
         GL11.glClearColor(0.6222222F - 0.05F, 0.5F + 0.1F, 1.0F, 0.0F);
@@ -51,10 +100,12 @@ public class WorldRenderer {
             GL11.glFogf(GL11.GL_FOG_DENSITY, 0.1F); // Fog distance
             GL11.glFog(GL11.GL_FOG_COLOR, this.putColor(0.2F, 0.2F, 0.4F, 1.0F));
         } else {
-            int viewDistance = WorldRenderer.RENDER_DISTANCE * ChunkSection.SIZE;
+            // The fog starts where the chunk sections end and covers the far terrain
+            int renderDistance = this.renderDistanceController.getDistance() * ChunkSection.SIZE;
+            int viewDistance = TerrainLod.LOD_DISTANCE * ChunkSection.SIZE;
 
             GL11.glFogi(GL11.GL_FOG_MODE, GL11.GL_LINEAR);
-            GL11.glFogf(GL11.GL_FOG_START, viewDistance / 4.0F); // Fog start
+            GL11.glFogf(GL11.GL_FOG_START, renderDistance); // Fog start
             GL11.glFogf(GL11.GL_FOG_END, viewDistance); // Fog end
             GL11.glFog(GL11.GL_FOG_COLOR, this.putColor(0.6222222F - 0.05F, 0.5F + 0.1F, 1.0F, 1.0F));
         }
@@ -64,43 +115,194 @@ public class WorldRenderer {
 
     }
 
-    public void render(int cameraChunkX, int cameraChunkZ, EnumWorldBlockLayer renderLayer) {
-        this.frustum.calculateFrustum();
+    /**
+     * Collect the visible chunk sections of this frame and update their meshes. Has to be called once per frame
+     * after the camera has been set up and before the render layers are rendered.
+     *
+     * @param viewProjection Projection matrix multiplied with the model view matrix of the camera
+     * @param cameraX World x coordinate of the camera
+     * @param cameraY World y coordinate of the camera
+     * @param cameraZ World z coordinate of the camera
+     */
+    public void setupVisibleChunks(Matrix4f viewProjection, double cameraX, double cameraY, double cameraZ) {
+        boolean frustumChanged = this.frustum.update(viewProjection);
+
+        // Adjust the render distance to the frame time
+        long time = System.nanoTime();
+        boolean distanceChanged = this.lastFrameTime != 0 && this.renderDistanceController.onFrame(time - this.lastFrameTime);
+        if (distanceChanged) {
+            int renderDistance = this.renderDistanceController.getDistance();
+            this.terrainLod.setNearDistance(renderDistance);
+            this.rebuildScheduler.setMaxDistance(renderDistance - 1);
+            this.visibilityChanged = true;
+        }
+        this.lastFrameTime = time;
+
+        int cameraSectionX = MathHelper.floor_double(cameraX) >> 4;
+        int cameraSectionY = MathHelper.floor_double(cameraY) >> 4;
+        int cameraSectionZ = MathHelper.floor_double(cameraZ) >> 4;
+
+        boolean cameraSectionChanged = cameraSectionX != this.lastCameraSectionX
+                || cameraSectionY != this.lastCameraSectionY
+                || cameraSectionZ != this.lastCameraSectionZ;
+
+        // Reuse the visible sections of the last frame if nothing changed
+        if (frustumChanged || cameraSectionChanged || this.visibilityChanged) {
+            this.lastCameraSectionX = cameraSectionX;
+            this.lastCameraSectionY = cameraSectionY;
+            this.lastCameraSectionZ = cameraSectionZ;
+            this.visibilityChanged = false;
 
-        for (Chunk chunk : this.world.chunks.values()) {
-            int distanceX = Math.abs(cameraChunkX - chunk.getX());
-            int distanceZ = Math.abs(cameraChunkZ - chunk.getZ());
+            // Walk from the camera section through all sections that can be seen through
+            int radius = this.renderDistanceController.getDistance() - 1;
+            this.visibleSectionCount = this.visibilityGraph.collect(this.world, cameraSectionX, cameraSectionY, cameraSectionZ,
+                    radius, this.frustum, this.visibleSections);
+        }
+
+        // Far terrain beyond the sections
+        if (frustumChanged || cameraSectionChanged || distanceChanged || this.terrainLod.hasPendingBuilds()) {
+            this.terrainLod.update(cameraSectionX, cameraSectionZ, this.frustum);
+        }
+
+        // Prioritize rebuilds by the current camera
+        this.rebuildScheduler.setCamera(cameraSectionX, cameraSectionY, cameraSectionZ,
+                this.frustum.getDirectionX(), this.frustum.getDirectionY(), this.frustum.getDirectionZ());
+
+        // Swap in the translucent orders that were sorted since the last frame
+        this.translucentSorter.applyResults();
 
-            // Is in camera view
-            if (distanceX < RENDER_DISTANCE && distanceZ < RENDER_DISTANCE && this.frustum.cubeInFrustum(chunk)) {
+        for (int i = 0; i < this.visibleSectionCount; i++) {
+            ChunkSection chunkSection = this.visibleSections[i];
 
-                // For all chunk sections
-                for (ChunkSection chunkSection : chunk.getSections()) {
-                    // Render chunk section
-                    chunkSection.render(renderLayer);
+            // Patch the mesh of edited blocks right away
+            if (chunkSection.hasBlockUpdates()) {
+                chunkSection.applyBlockUpdates(this);
+            }
 
-                    // Queue for rebuild
-                    if (chunkSection.isQueuedForRebuild() && !this.chunkSectionUpdateQueue.contains(chunkSection)) {
-                        this.chunkSectionUpdateQueue.add(chunkSection);
-                    }
-                }
+            // Queue for rebuild
+            if (chunkSection.isQueuedForRebuild()) {
+                this.rebuildScheduler.enqueue(chunkSection);
             }
+
+            // Sort the translucent quads again on the worker thread
+            chunkSection.updateTranslucentSort(this.translucentSorter, cameraX, cameraY, cameraZ);
         }
 
-        // Sort update queue, chunk sections that are closer to the camera get a higher priority
-        this.chunkSectionUpdateQueue.sort((section1, section2) -> {
-            int distance1 = (int) (Math.pow((double)section1.x - cameraChunkX, 2) + Math.pow((double)section1.z - cameraChunkZ, 2));
-            int distance2 = (int) (Math.pow((double)section2.x - cameraChunkX, 2) + Math.pow((double)section2.z - cameraChunkZ, 2));
-            return Integer.compare(distance1, distance2);
-        });
-
-        // Rebuild one chunk per frame
-        if (!this.chunkSectionUpdateQueue.isEmpty()) {
-            ChunkSection chunkSection = this.chunkSectionUpdateQueue.remove(0);
-            if (chunkSection != null) {
-                chunkSection.rebuild(this);
+        this.drawCalls = 0;
+        this.drawnBytes = 0;
+
+        // Rebuild the sections in view direction and closest to the camera first
+        this.rebuildScheduler.rebuild(this, this.rebuildBudgetNanos);
+
+        // Move the meshes of a fragmented region page together
+        this.regionRenderer.compact();
+    }
+
+    /**
+     * Render a layer of the chunks collected by {@link #setupVisibleChunks(Matrix4f, double, double, double)}
+     *
+     * @param renderLayer Layer to render
+     */
+    public void render(EnumWorldBlockLayer renderLayer) {
+        GL11.glEnable(GL11.GL_TEXTURE_2D);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.textureId);
+        ChunkMesh.setupRendering();
+
+        // Light levels of the vertices are mapped to their brightness by the lightmap
+        this.lightmap.update();
+        this.lightmap.enable();
+
+        // Translucent sections are drawn back to front, each with a draw call of its own
+        boolean backToFront = renderLayer == EnumWorldBlockLayer.CUTOUT;
+
+        for (int i = 0; i < this.visibleSectionCount; i++) {
+            ChunkSection chunkSection = this.visibleSections[backToFront ? this.visibleSectionCount - 1 - i : i];
+
+            // Skip sections without anything to render in this layer
+            if (chunkSection.hasLayer(renderLayer)) {
+                this.drawCalls += chunkSection.render(renderLayer);
+                this.drawnBytes += chunkSection.getMeshSize(renderLayer);
             }
         }
+
+        // One draw call per region page for the queued solid meshes
+        if (renderLayer == EnumWorldBlockLayer.SOLID) {
+            this.drawCalls += this.regionRenderer.render();
+        }
+
+        this.lightmap.disable();
+        ChunkMesh.finishRendering();
+        GL11.glDisable(GL11.GL_TEXTURE_2D);
+
+        // The far terrain has no textures and is drawn with the solid blocks
+        if (renderLayer == EnumWorldBlockLayer.SOLID) {
+            this.terrainLod.render();
+        }
+    }
+
+    /**
+     * Remove a chunk from the world and release the vertex buffers of its sections
+     */
+    public void unloadChunk(int x, int z) {
+        Chunk chunk = this.world.chunks.remove(Chunk.getIndex(x, z));
+        if (chunk != null) {
+            chunk.release(this);
+        }
+
+        // The visible sections still point to the released ones
+        this.onVisibilityChanged();
+    }
+
+    /**
+     * Rebuild a chunk that received its blocks and its neighbours, their border faces were built against air.
+     * The chunk usually replaces the sections of a placeholder, so the visible sections are collected again.
+     */
+    public void onChunkLoaded(int x, int z) {
+        for (EnumBlockFace face : EnumBlockFace.values()) {
+            if (face.y != 0) {
+                continue;
+            }
+
+            Chunk neighbour = this.world.chunks.get(Chunk.getIndex(x + face.x, z + face.z));
+            if (neighbour != null) {
+                neighbour.queueForRebuild();
+                this.terrainLod.invalidate(x + face.x, z + face.z);
+            }
+        }
+
+        Chunk chunk = this.world.chunks.get(Chunk.getIndex(x, z));
+        if (chunk != null) {
+            chunk.queueForRebuild();
+        }
+        this.terrainLod.invalidate(x, z);
+        this.onVisibilityChanged();
+    }
+
+    /**
+     * Build the far terrain of a chunk that was summarized and its neighbours again, their skirts end at its heights
+     */
+    public void onChunkSummarized(int x, int z) {
+        this.terrainLod.invalidate(x, z);
+        for (EnumBlockFace face : EnumBlockFace.values()) {
+            if (face.y == 0) {
+                this.terrainLod.invalidate(x + face.x, z + face.z);
+            }
+        }
+    }
+
+    /**
+     * Stop the worker threads of the renderer
+     */
+    public void shutdown() {
+        this.translucentSorter.shutdown();
+    }
+
+    /**
+     * Called when the connectivity of the faces of a chunk section changed or chunks were loaded or unloaded,
+     * the visible sections are collected again
+     */
+    public void onVisibilityChanged() {
+        this.visibilityChanged = true;
     }
 
     private FloatBuffer putColor(float r, float g, float b, float a) {
@@ -110,7 +312,64 @@ public class WorldRenderer {
         return this.colorBuffer;
     }
 
+    /**
+     * Set the time per frame that can be spent on rebuilding chunk sections
+     *
+     * @param rebuildBudgetNanos Time budget in nanoseconds
+     */
+    public void setRebuildBudget(long rebuildBudgetNanos) {
+        this.rebuildBudgetNanos = rebuildBudgetNanos;
+    }
+
+    public RenderDistanceController getRenderDistanceController() {
+        return this.renderDistanceController;
+    }
+
+    public BufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    public long getDrawnBytes() {
+        return this.drawnBytes;
+    }
+
+    public TerrainLod getTerrainLod() {
+        return this.terrainLod;
+    }
+
+    public RebuildScheduler getRebuildScheduler() {
+        return this.rebuildScheduler;
+    }
+
+    public int getVisibleSectionCount() {
+        return this.visibleSectionCount;
+    }
+
+    public int getDrawCalls() {
+        return this.drawCalls;
+    }
+
     public BlockRenderer getBlockRenderer() {
         return this.blockRenderer;
     }
+
+    public Tessellator getTessellator() {
+        return this.tessellator;
+    }
+
+    public TranslucentSorter getTranslucentSorter() {
+        return this.translucentSorter;
+    }
+
+    public Lightmap getLightmap() {
+        return this.lightmap;
+    }
+
+    public RegionRenderer getRegionRenderer() {
+        return this.regionRenderer;
+    }
+
+    public SectionMeshCache getMeshCache() {
+        return this.meshCache;
+    }
 }
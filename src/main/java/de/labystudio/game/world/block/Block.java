@@ -76,6 +76,15 @@ public abstract class Block {
         return 1.0F;
     }
 
+    /**
+     * Color of the block when the terrain is rendered without textures far away
+     *
+     * @return RGB color
+     */
+    public int getMapColor() {
+        return 0x707070;
+    }
+
     public BoundingBox getBoundingBox(IWorldAccess world, int x, int y, int z) {
         return this.boundingBox;
     }
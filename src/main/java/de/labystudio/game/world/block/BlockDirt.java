@@ -5,4 +5,9 @@ public class BlockDirt extends Block {
     public BlockDirt(int id, int textureSlot) {
         super(id, textureSlot);
     }
+
+    @Override
+    public int getMapColor() {
+        return 0x976D4D;
+    }
 }
@@ -16,4 +16,9 @@ public class BlockGrass extends Block {
             default -> this.textureSlotId + 2;
         };
     }
+
+    @Override
+    public int getMapColor() {
+        return 0x7FB238;
+    }
 }
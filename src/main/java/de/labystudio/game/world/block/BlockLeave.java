@@ -10,4 +10,9 @@ public class BlockLeave extends Block {
     public float getOpacity() {
         return 0.3F;
     }
+
+    @Override
+    public int getMapColor() {
+        return 0x007C00;
+    }
 }
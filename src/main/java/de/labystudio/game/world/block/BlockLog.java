@@ -12,4 +12,9 @@ public class BlockLog extends Block {
     public int getTextureForFace(EnumBlockFace face) {
         return this.textureSlotId + (face.isYAxis() ? 1 : 0);
     }
+
+    @Override
+    public int getMapColor() {
+        return 0x8F7748;
+    }
 }
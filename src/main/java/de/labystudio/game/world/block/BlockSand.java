@@ -5,4 +5,9 @@ public class BlockSand extends Block {
     public BlockSand(int id, int textureSlot) {
         super(id, textureSlot);
     }
+
+    @Override
+    public int getMapColor() {
+        return 0xF7E9A3;
+    }
 }
@@ -34,4 +34,9 @@ public class BlockWater extends Block {
         }
         return aabb;
     }
+
+    @Override
+    public int getMapColor() {
+        return 0x4040FF;
+    }
 }
@@ -10,6 +10,9 @@ public class Chunk {
     private final int x;
     private final int z;
 
+    // Modification count of the last written snapshot, set by the saver thread
+    private volatile long savedModificationCount;
+
     public Chunk(World world, int x, int z) {
         this.x = x;
         this.z = z;
@@ -40,6 +43,33 @@ public class Chunk {
         return z;
     }
 
+    /**
+     * Sum of the block and light changes of all sections
+     */
+    public long getModificationCount() {
+        long count = 0;
+        for (ChunkSection chunkSection : this.sections) {
+            count += chunkSection.getModificationCount();
+        }
+        return count;
+    }
+
+    /**
+     * Check if the chunk changed since it was loaded or saved the last time
+     */
+    public boolean isModified() {
+        return this.getModificationCount() != this.savedModificationCount;
+    }
+
+    /**
+     * Mark the given state of the chunk as written to the disk
+     *
+     * @param modificationCount Modification count of the written snapshot
+     */
+    public void setSaved(long modificationCount) {
+        this.savedModificationCount = modificationCount;
+    }
+
     public boolean isEmpty() {
         for (ChunkSection chunkSection : this.sections) {
             if (!chunkSection.isEmpty()) {
@@ -49,12 +79,40 @@ public class Chunk {
         return true;
     }
 
+    /**
+     * Get the y coordinate of the highest block that isn't air
+     *
+     * @param x Block x coordinate inside the chunk
+     * @param z Block z coordinate inside the chunk
+     * @return Y coordinate of the highest block or -1 if the column is empty
+     */
+    public int getHighestBlockY(int x, int z) {
+        for (int sectionY = this.sections.length - 1; sectionY >= 0; sectionY--) {
+            ChunkSection chunkSection = this.sections[sectionY];
+            for (int y = ChunkSection.SIZE - 1; y >= 0; y--) {
+                if (chunkSection.getBlockAt(x, y, z) != 0) {
+                    return sectionY * ChunkSection.SIZE + y;
+                }
+            }
+        }
+        return -1;
+    }
+
     public void rebuild(WorldRenderer renderer) {
         for (ChunkSection chunkSection : this.sections) {
             chunkSection.rebuild(renderer);
         }
     }
 
+    /**
+     * Release the vertex buffers of all sections
+     */
+    public void release(WorldRenderer renderer) {
+        for (ChunkSection chunkSection : this.sections) {
+            chunkSection.release(renderer);
+        }
+    }
+
     public void queueForRebuild() {
         for (ChunkSection chunkSection : this.sections) {
             chunkSection.queueForRebuild();
@@ -1,6 +1,14 @@
 package de.labystudio.game.world.chunk;
 
 import de.labystudio.game.render.Tessellator;
+import de.labystudio.game.render.world.ChunkMesh;
+import de.labystudio.game.render.world.RegionBuffer;
+import de.labystudio.game.render.world.RegionMesh;
+import de.labystudio.game.render.world.SectionMesh;
+import de.labystudio.game.render.world.SectionMeshCache;
+import de.labystudio.game.render.world.SectionVisibility;
+import de.labystudio.game.render.world.TranslucentSort;
+import de.labystudio.game.render.world.TranslucentSorter;
 import de.labystudio.game.util.EnumWorldBlockLayer;
 import de.labystudio.game.world.World;
 import de.labystudio.game.world.WorldRenderer;
@@ -14,37 +22,255 @@ public class ChunkSection {
 
     public final World world;
 
-    private final byte[] blockData = new byte[SIZE * SIZE * SIZE];
-    private final byte[] blockLight = new byte[SIZE * SIZE * SIZE];
+    private byte[] blockData = new byte[SIZE * SIZE * SIZE];
+    private byte[] blockLight = new byte[SIZE * SIZE * SIZE];
+
+    // The arrays are shared with a snapshot and have to be copied before the next change
+    private boolean copyOnWrite;
+
+    // Amount of block and light changes, used to find the chunks that have to be saved
+    private int modificationCount;
 
     public int x;
     public int y;
     public int z;
 
-    private final int lists;
+    private static final int LAYERS = EnumWorldBlockLayer.values().length;
+
+    // Patch limits before a full rebuild is preferred
+    private static final int MAX_BLOCK_UPDATES = 512;
+    private static final float MAX_FRAGMENTATION = 0.5F;
+
+    // Own meshes inside the region buffer, allocated on the first rebuild that can't use a shared mesh
+    private RegionMesh[] regionMeshes;
+
+    // Vertex data of the own meshes relative to the region origin, indexed by block
+    private SectionMesh[] meshes;
+
+    // Back to front order of the own translucent quads, null if there are none
+    private TranslucentSort translucentSort;
+
+    // Bitmask of the blocks that have to re-emit their faces, allocated on the first block update
+    private long[] pendingBlocks;
+    private int pendingBlockUpdates;
+
+    // Bitmask of the render layers that contain any quads
+    private int layerMask;
+
+    // Face pairs that are connected through non-opaque blocks, see SectionVisibility
+    private int visibility = SectionVisibility.ALL_CONNECTED;
+
+    private SectionMeshCache.SharedMesh sharedMesh;
+
     private boolean queuedForRebuild = true;
 
+    // Section is in the queue of the rebuild scheduler
+    private boolean scheduled;
+
     public ChunkSection(World world, int x, int y, int z) {
         this.world = world;
         this.x = x;
         this.y = y;
         this.z = z;
-        this.lists = GL11.glGenLists(EnumWorldBlockLayer.values().length);
 
         // Fill chunk with light using Arrays.fill
         Arrays.fill(this.blockLight, (byte) 15);
     }
-    public void render(EnumWorldBlockLayer renderLayer) {
-        // Call list with render layer
-        GL11.glCallList(this.lists + renderLayer.ordinal());
+
+    /**
+     * Draw a shared mesh right away or queue the own solid mesh into the draw call of its region.
+     * Own translucent meshes are drawn right away as well, so the sections stay in the order they are rendered.
+     *
+     * @return Amount of draw calls issued
+     */
+    public int render(EnumWorldBlockLayer renderLayer) {
+        if (!this.hasLayer(renderLayer)) {
+            return 0;
+        }
+
+        if (this.sharedMesh == null) {
+            RegionMesh mesh = this.regionMeshes[renderLayer.ordinal()];
+
+            if (renderLayer == EnumWorldBlockLayer.SOLID) {
+                mesh.queueDraw();
+                return 0;
+            }
+
+            // Translucent quads are drawn in their sorted order once it's available
+            if (this.translucentSort == null || !this.translucentSort.render()) {
+                mesh.render();
+            }
+            return 1;
+        }
+
+        // Shared meshes are relative to the section origin
+        GL11.glPushMatrix();
+        GL11.glTranslatef(this.x * SIZE, this.y * SIZE, this.z * SIZE);
+
+        this.sharedMesh.getChunkMeshes()[renderLayer.ordinal()].render();
+
+        GL11.glPopMatrix();
+        return 1;
     }
 
     public void rebuild(WorldRenderer renderer) {
         this.queuedForRebuild = false;
+        this.clearBlockUpdates();
+
+        // Drop the previous shared mesh
+        SectionMeshCache meshCache = renderer.getMeshCache();
+        meshCache.release(this.sharedMesh);
+        this.sharedMesh = null;
+        this.layerMask = 0;
+
+        int uniformType = this.getUniformBlock();
+
+        // Nothing to render in air
+        if (uniformType == 0) {
+            meshCache.onEmptySection();
+            this.releaseOwnMeshes(renderer);
+            this.setVisibility(renderer, SectionVisibility.ALL_CONNECTED);
+            return;
+        }
+
+        this.setVisibility(renderer, SectionVisibility.compute(this));
+
+        if (uniformType != -1) {
+            // Uniform opaque sections that are enclosed by opaque blocks are invisible
+            if (!Block.getById((short) uniformType).isTransparent() && SectionMeshCache.isBuried(this.world, this)) {
+                meshCache.onBuriedSection();
+                this.releaseOwnMeshes(renderer);
+                return;
+            }
+
+            // Try to share the mesh with a section that has the same neighbourhood
+            byte[] key = SectionMeshCache.createKey(this.world, this, uniformType);
+            long hash = SectionMeshCache.hash(key);
+
+            this.sharedMesh = meshCache.acquire(key, hash);
+            if (this.sharedMesh == null) {
+                this.sharedMesh = meshCache.create(key, hash);
+
+                if (this.sharedMesh != null) {
+                    // Shared meshes can't be patched, so the vertex data isn't kept
+                    SectionMesh[] sharedMeshes = this.buildMeshes(renderer, new SectionMesh[LAYERS],
+                            this.x * SIZE, this.y * SIZE, this.z * SIZE);
+                    this.sharedMesh.setLayerMask(this.upload(this.sharedMesh.getChunkMeshes(), sharedMeshes));
+                }
+            }
+
+            if (this.sharedMesh != null) {
+                this.releaseOwnMeshes(renderer);
+                this.layerMask = this.sharedMesh.getLayerMask();
+                return;
+            }
+        }
+
+        // Memory inside the region buffer is allocated on upload
+        if (this.regionMeshes == null) {
+            this.regionMeshes = renderer.getRegionRenderer().createMeshes(this.x, this.z, LAYERS);
+        }
+
+        this.meshes = this.buildMeshes(renderer, this.meshes == null ? new SectionMesh[LAYERS] : this.meshes,
+                this.getRegionOriginX(), 0, this.getRegionOriginZ());
+        this.layerMask = this.upload(this.regionMeshes, this.meshes);
+    }
+
+    /**
+     * Re-emit the faces of the blocks that were queued using {@link #queueBlockUpdates(int, int, int, int, int, int)}
+     * and update the mesh without rebuilding the entire section
+     */
+    public void applyBlockUpdates(WorldRenderer renderer) {
+        if (this.pendingBlockUpdates == 0) {
+            return;
+        }
+
+        Tessellator tessellator = renderer.getTessellator();
+        tessellator.startDrawing(7);
+        tessellator.setTranslationD(-this.getRegionOriginX(), 0, -this.getRegionOriginZ());
+
+        for (int word = 0; word < this.pendingBlocks.length; word++) {
+            long bits = this.pendingBlocks[word];
+
+            while (bits != 0) {
+                int index = word << 6 | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                // Remove the previous faces of the block
+                for (SectionMesh mesh : this.meshes) {
+                    mesh.removeBlock(index);
+                }
+
+                this.emitBlock(renderer, tessellator, this.meshes, index);
+            }
+        }
+
+        tessellator.discard();
+        tessellator.setTranslationD(0, 0, 0);
+        this.clearBlockUpdates();
+
+        this.setVisibility(renderer, SectionVisibility.compute(this));
+
+        // Compact the mesh with a full rebuild if too many slots are unused
+        for (SectionMesh mesh : this.meshes) {
+            if (mesh.getFragmentation() > MAX_FRAGMENTATION) {
+                this.queueForRebuild();
+                break;
+            }
+        }
+
+        // Only the changed slots are written into the vertex buffers
+        this.layerMask = this.upload(this.regionMeshes, this.meshes);
+    }
+
+    /**
+     * Queue blocks of this section to re-emit their faces. Falls back to a full rebuild if the section has no own mesh
+     * or too many blocks are affected. Coordinates are relative to the section and get clamped to it.
+     */
+    public void queueBlockUpdates(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        // A full rebuild covers everything
+        if (this.queuedForRebuild) {
+            return;
+        }
+
+        // Empty or shared sections are rebuilt entirely
+        if (this.meshes == null) {
+            this.queueForRebuild();
+            return;
+        }
+
+        if (this.pendingBlocks == null) {
+            this.pendingBlocks = new long[SIZE * SIZE * SIZE / 64];
+        }
+
+        for (int y = Math.max(0, minY); y <= Math.min(SIZE - 1, maxY); y++) {
+            for (int z = Math.max(0, minZ); z <= Math.min(SIZE - 1, maxZ); z++) {
+                for (int x = Math.max(0, minX); x <= Math.min(SIZE - 1, maxX); x++) {
+                    int index = y << 8 | z << 4 | x;
+                    long bit = 1L << index;
+
+                    if ((this.pendingBlocks[index >> 6] & bit) == 0) {
+                        this.pendingBlocks[index >> 6] |= bit;
+                        this.pendingBlockUpdates++;
+                    }
+                }
+            }
+        }
+
+        // Too many changes, patching would be slower than a rebuild
+        if (this.pendingBlockUpdates > MAX_BLOCK_UPDATES) {
+            this.queueForRebuild();
+        }
+    }
+
+    public boolean hasBlockUpdates() {
+        return this.pendingBlockUpdates != 0 && !this.queuedForRebuild;
+    }
 
-        // Rebuild all render layers
-        for (EnumWorldBlockLayer layer : EnumWorldBlockLayer.values()) {
-            rebuild(renderer, layer);
+    private void clearBlockUpdates() {
+        if (this.pendingBlockUpdates != 0) {
+            Arrays.fill(this.pendingBlocks, 0L);
+            this.pendingBlockUpdates = 0;
         }
     }
 
@@ -52,53 +278,237 @@ public class ChunkSection {
         this.queuedForRebuild = true;
     }
 
+    private void setVisibility(WorldRenderer renderer, int visibility) {
+        if (this.setVisibility(visibility)) {
+            renderer.onVisibilityChanged();
+        }
+    }
+
+    /**
+     * Replace the face pairs that are connected through non-opaque blocks
+     *
+     * @param visibility Mask created by {@link SectionVisibility#compute(ChunkSection)}
+     * @return True if the mask changed
+     */
+    public boolean setVisibility(int visibility) {
+        if (this.visibility == visibility) {
+            return false;
+        }
+        this.visibility = visibility;
+        return true;
+    }
+
+    /**
+     * Check if the two faces are connected through non-opaque blocks of this section
+     *
+     * @param from Ordinal of the first face
+     * @param to   Ordinal of the second face
+     */
+    public boolean isConnected(int from, int to) {
+        return SectionVisibility.isConnected(this.visibility, from, to);
+    }
+
     public boolean isQueuedForRebuild() {
         return queuedForRebuild;
     }
 
-    private void rebuild(WorldRenderer renderer, EnumWorldBlockLayer renderLayer) {
-        // Create GPU memory list storage
-        int listIndex = this.lists + renderLayer.ordinal();
-        GL11.glNewList(listIndex, GL11.GL_COMPILE);
+    public boolean isScheduled() {
+        return this.scheduled;
+    }
 
-        GL11.glEnable(GL11.GL_TEXTURE_2D);
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, renderer.textureId);
+    public void setScheduled(boolean scheduled) {
+        this.scheduled = scheduled;
+    }
 
-        // Start rendering
-        Tessellator tessellator = Tessellator.instance;
-        tessellator.startDrawing(7);
+    /**
+     * Build the meshes of all layers
+     *
+     * @param originX Block x coordinate the vertices are relative to
+     * @param originY Block y coordinate the vertices are relative to
+     * @param originZ Block z coordinate the vertices are relative to
+     */
+    private SectionMesh[] buildMeshes(WorldRenderer renderer, SectionMesh[] meshes, int originX, int originY, int originZ) {
+        for (int layer = 0; layer < LAYERS; layer++) {
+            if (meshes[layer] == null) {
+                meshes[layer] = new SectionMesh();
+            } else {
+                meshes[layer].clear();
+            }
+        }
 
-        int baseX = this.x * SIZE;
-        int baseY = this.y * SIZE;
-        int baseZ = this.z * SIZE;
+        // Start rendering relative to the origin, shared meshes use the section origin
+        Tessellator tessellator = renderer.getTessellator();
+        tessellator.startDrawing(7);
+        tessellator.setTranslationD(-originX, -originY, -originZ);
 
         // Render blocks
-        for (int x = 0; x < SIZE; x++) {
-            int absoluteX = baseX + x;
+        for (int index = 0; index < this.blockData.length; index++) {
+            this.emitBlock(renderer, tessellator, meshes, index);
+        }
 
-            for (int y = 0; y < SIZE; y++) {
-                int absoluteY = baseY + y;
+        // Stop rendering, the vertex data has been captured
+        tessellator.discard();
+        tessellator.setTranslationD(0, 0, 0);
 
-                for (int z = 0; z < SIZE; z++) {
-                    int absoluteZ = baseZ + z;
-                    byte typeId = getBlockAt(x, y, z);
+        return meshes;
+    }
 
-                    if (typeId != 0) {
-                        Block block = Block.getById(typeId);
-                        if (block != null && ((renderLayer == EnumWorldBlockLayer.CUTOUT) == block.isTransparent())) {
-                            block.render(renderer, this.world, absoluteX, absoluteY, absoluteZ);
-                        }
-                    }
-                }
+    private void emitBlock(WorldRenderer renderer, Tessellator tessellator, SectionMesh[] meshes, int index) {
+        byte typeId = this.blockData[index];
+        if (typeId == 0) {
+            return;
+        }
+
+        Block block = Block.getById(typeId);
+        if (block == null) {
+            return;
+        }
+
+        int absoluteX = this.x * SIZE + (index & 15);
+        int absoluteY = this.y * SIZE + (index >> 8);
+        int absoluteZ = this.z * SIZE + (index >> 4 & 15);
+
+        EnumWorldBlockLayer layer = block.isTransparent() ? EnumWorldBlockLayer.CUTOUT : EnumWorldBlockLayer.SOLID;
+
+        // Capture the quads of this block
+        int from = tessellator.getRawBufferIndex();
+        block.render(renderer, this.world, absoluteX, absoluteY, absoluteZ);
+        int to = tessellator.getRawBufferIndex();
+
+        meshes[layer.ordinal()].addBlock(index, tessellator.getVertexData(), from, to);
+    }
+
+    /**
+     * Upload the meshes into the shared vertex buffers
+     *
+     * @return Bitmask of the layers that contain any quads
+     */
+    private int upload(ChunkMesh[] chunkMeshes, SectionMesh[] meshes) {
+        int mask = 0;
+
+        for (int layer = 0; layer < LAYERS; layer++) {
+            chunkMeshes[layer].upload(meshes[layer]);
+
+            // Empty layers are skipped when rendering
+            if (!chunkMeshes[layer].isEmpty()) {
+                mask |= 1 << layer;
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Upload the meshes into the region buffer
+     *
+     * @return Bitmask of the layers that contain any quads
+     */
+    private int upload(RegionMesh[] regionMeshes, SectionMesh[] meshes) {
+        int mask = 0;
+
+        // The translucent quads have to be sorted again if they changed
+        SectionMesh translucent = meshes[EnumWorldBlockLayer.CUTOUT.ordinal()];
+        boolean translucentChanged = translucent.getDirtyFrom() < translucent.getDirtyTo();
+
+        for (int layer = 0; layer < LAYERS; layer++) {
+            regionMeshes[layer].upload(meshes[layer]);
+
+            // Empty layers are skipped when rendering
+            if (!regionMeshes[layer].isEmpty()) {
+                mask |= 1 << layer;
             }
         }
 
-        // Stop rendering
-        tessellator.draw();
+        RegionMesh translucentMesh = regionMeshes[EnumWorldBlockLayer.CUTOUT.ordinal()];
+        if (translucentMesh.isEmpty()) {
+            this.releaseTranslucentSort();
+        } else if (translucentChanged || this.translucentSort == null) {
+            if (this.translucentSort == null) {
+                this.translucentSort = new TranslucentSort(translucentMesh);
+            }
+            this.translucentSort.setQuads(translucent);
+        }
+
+        return mask;
+    }
+
+    /**
+     * Request a new order of the translucent quads if the camera moved far enough
+     */
+    public void updateTranslucentSort(TranslucentSorter sorter, double cameraX, double cameraY, double cameraZ) {
+        if (this.translucentSort != null) {
+            this.translucentSort.update(sorter, cameraX, cameraY, cameraZ);
+        }
+    }
+
+    private void releaseTranslucentSort() {
+        if (this.translucentSort != null) {
+            this.translucentSort.release();
+            this.translucentSort = null;
+        }
+    }
+
+    private void releaseOwnMeshes(WorldRenderer renderer) {
+        this.meshes = null;
+        this.releaseTranslucentSort();
+
+        if (this.regionMeshes != null) {
+            renderer.getRegionRenderer().releaseMeshes(this.regionMeshes);
+            this.regionMeshes = null;
+        }
+    }
+
+    private int getRegionOriginX() {
+        return RegionBuffer.getOrigin(RegionBuffer.getRegionCoordinate(this.x));
+    }
+
+    private int getRegionOriginZ() {
+        return RegionBuffer.getOrigin(RegionBuffer.getRegionCoordinate(this.z));
+    }
+
+    /**
+     * Release all vertex buffers of this section, it has to be rebuilt to be rendered again
+     */
+    public void release(WorldRenderer renderer) {
+        renderer.getMeshCache().release(this.sharedMesh);
+        this.sharedMesh = null;
+        this.releaseOwnMeshes(renderer);
+        this.layerMask = 0;
+        this.queuedForRebuild = false;
+        this.clearBlockUpdates();
+    }
+
+    /**
+     * GPU memory used by the vertices of a layer
+     */
+    public int getMeshSize(EnumWorldBlockLayer renderLayer) {
+        if (!this.hasLayer(renderLayer)) {
+            return 0;
+        }
+        return this.sharedMesh == null ? this.regionMeshes[renderLayer.ordinal()].getSize()
+                : this.sharedMesh.getChunkMeshes()[renderLayer.ordinal()].getSize();
+    }
+
+    /**
+     * Get the type of all blocks in this section
+     *
+     * @return The block type if all blocks are the same, -1 otherwise
+     */
+    public int getUniformBlock() {
+        byte type = this.blockData[0];
+        for (byte block : this.blockData) {
+            if (block != type) {
+                return -1;
+            }
+        }
+        return type;
+    }
 
-        // End storage
-        GL11.glDisable(GL11.GL_TEXTURE_2D);
-        GL11.glEndList();
+    /**
+     * Check if the mesh of the given layer contains anything to render
+     */
+    public boolean hasLayer(EnumWorldBlockLayer renderLayer) {
+        return (this.layerMask & 1 << renderLayer.ordinal()) != 0;
     }
 
     public boolean isEmpty() {
@@ -121,12 +531,52 @@ public class ChunkSection {
 
     public void setLightAt(int x, int y, int z, int lightLevel) {
         int index = y << 8 | z << 4 | x;
+        this.ensureWritable();
         this.blockLight[index] = (byte) lightLevel;
+        this.modificationCount++;
     }
 
     public void setBlockAt(int x, int y, int z, int type) {
         int index = y << 8 | z << 4 | x;
+        this.ensureWritable();
         this.blockData[index] = (byte) type;
+        this.modificationCount++;
+    }
+
+    /**
+     * Replace all blocks and light levels at once, used to fill a section that was read from the disk
+     *
+     * @param blocks Block types indexed by y << 8 | z << 4 | x
+     * @param light  Light levels in the same order
+     */
+    public void setData(byte[] blocks, byte[] light) {
+        this.ensureWritable();
+        System.arraycopy(blocks, 0, this.blockData, 0, this.blockData.length);
+        System.arraycopy(light, 0, this.blockLight, 0, this.blockLight.length);
+        this.modificationCount++;
+    }
+
+    public int getModificationCount() {
+        return this.modificationCount;
+    }
+
+    /**
+     * Share the block and light arrays with a snapshot. They stay unchanged because this section copies them
+     * before its next change, so the snapshot can be read by another thread.
+     *
+     * @return The block array at index 0 and the light array at index 1
+     */
+    byte[][] share() {
+        this.copyOnWrite = true;
+        return new byte[][]{this.blockData, this.blockLight};
+    }
+
+    private void ensureWritable() {
+        if (this.copyOnWrite) {
+            this.copyOnWrite = false;
+            this.blockData = this.blockData.clone();
+            this.blockLight = this.blockLight.clone();
+        }
     }
 
     public int getLightAt(int x, int y, int z) {
@@ -0,0 +1,88 @@
+package de.labystudio.game.world.chunk;
+
+/**
+ * Immutable copy of the blocks and light of a chunk, used to save the chunk on another thread.
+ * Capturing it is cheap because the sections share their arrays until they are changed again.
+ */
+public class ChunkSnapshot {
+
+    private final Chunk chunk;
+    private final long modificationCount;
+
+    private final int x;
+    private final int z;
+
+    private final byte[][] blocks;
+    private final byte[][] light;
+
+    public ChunkSnapshot(Chunk chunk) {
+        this.chunk = chunk;
+        this.modificationCount = chunk.getModificationCount();
+        this.x = chunk.getX();
+        this.z = chunk.getZ();
+
+        ChunkSection[] sections = chunk.getSections();
+        this.blocks = new byte[sections.length][];
+        this.light = new byte[sections.length][];
+
+        for (int y = 0; y < sections.length; y++) {
+            byte[][] arrays = sections[y].share();
+            this.blocks[y] = arrays[0];
+            this.light[y] = arrays[1];
+        }
+    }
+
+    /**
+     * Mark the captured state of the chunk as saved, changes after the capture keep the chunk modified
+     */
+    public void markSaved() {
+        this.chunk.setSaved(this.modificationCount);
+    }
+
+    /**
+     * Check if a section contains any blocks
+     */
+    public boolean isSectionEmpty(int y) {
+        for (byte block : this.blocks[y]) {
+            if (block != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        for (int y = 0; y < this.blocks.length; y++) {
+            if (!this.isSectionEmpty(y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Block types of a section, indexed by y << 8 | z << 4 | x
+     */
+    public byte[] getBlocks(int y) {
+        return this.blocks[y];
+    }
+
+    /**
+     * Light levels of a section, indexed by y << 8 | z << 4 | x
+     */
+    public byte[] getLight(int y) {
+        return this.light[y];
+    }
+
+    public int getSectionCount() {
+        return this.blocks.length;
+    }
+
+    public int getX() {
+        return this.x;
+    }
+
+    public int getZ() {
+        return this.z;
+    }
+}
@@ -1,19 +1,50 @@
 package de.labystudio.game.world.chunk.format;
 
 
-import com.github.steveice10.opennbt.NBTIO;
-import com.github.steveice10.opennbt.tag.builtin.*;
 import de.labystudio.game.world.World;
 import de.labystudio.game.world.block.Block;
-import de.labystudio.game.world.chunk.Chunk;
 import de.labystudio.game.world.chunk.ChunkSection;
+import de.labystudio.game.world.chunk.ChunkSnapshot;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
 
+/**
+ * Reads and writes the Anvil NBT layout of a chunk directly on the stream, without building a tag tree.
+ * Unknown tags are skipped, the written bytes are the same as the ones of the previous tag tree writer
+ * except for the light nibbles, which are in the order of the reader.
+ */
 public class ChunkFormat {
 
+    // NBT tag types
+    private static final int TAG_END = 0;
+    private static final int TAG_BYTE = 1;
+    private static final int TAG_SHORT = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_FLOAT = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_BYTE_ARRAY = 7;
+    private static final int TAG_STRING = 8;
+    private static final int TAG_LIST = 9;
+    private static final int TAG_COMPOUND = 10;
+    private static final int TAG_INT_ARRAY = 11;
+    private static final int TAG_LONG_ARRAY = 12;
+
+    private static final int SECTION_VOLUME = 4096;
+    private static final int NIBBLE_ARRAY_LENGTH = SECTION_VOLUME / 2;
+
+    // Block ids that are registered, the others are converted to stone
+    private static final boolean[] VALID_BLOCKS = new boolean[SECTION_VOLUME];
+
+    static {
+        for (int id = 1; id < VALID_BLOCKS.length; id++) {
+            VALID_BLOCKS[id] = Block.getById((short) id) != null;
+        }
+    }
+
+    // Arrays of the section in progress, reused by each thread
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
     private final ChunkSection[] chunkSections = new ChunkSection[16];
 
     private final World world;
@@ -32,153 +63,242 @@ public class ChunkFormat {
         if (this.empty = inputStream == null)
             return this;
 
-        // Get root tag
-        CompoundTag rootTag = (CompoundTag) NBTIO.readTag((InputStream) inputStream);
+        Scratch scratch = SCRATCH.get();
 
-        // Load chunk format
-        CompoundTag level = rootTag.get("Level");
-        ListTag sections = level.get("Sections");
+        // Root tag
+        if (inputStream.readUnsignedByte() != TAG_COMPOUND) {
+            throw new IOException("Chunk " + chunkX + ", " + chunkZ + " has no root compound");
+        }
+        skipString(inputStream);
 
-        for (int i = 0; i < sections.size(); i++) {
-            CompoundTag section = sections.get(i);
+        int type;
+        while ((type = inputStream.readUnsignedByte()) != TAG_END) {
+            String name = inputStream.readUTF();
 
-            try {
-                byte y = (byte) section.get("Y").getValue();
+            if (type == TAG_COMPOUND && name.equals("Level")) {
+                this.readLevel(inputStream, scratch, chunkX, chunkZ);
+            } else {
+                skipPayload(inputStream, type, scratch);
+            }
+        }
 
-                byte[] blocks = ((ByteArrayTag) section.get("Blocks")).getValue();
-                byte[] add = section.contains("Add") ? ((ByteArrayTag) section.get("Add")).getValue() : new byte[blocks.length];
-                byte[] blockLight = ((ByteArrayTag) section.get("BlockLight")).getValue();
-                byte[] skyLight = ((ByteArrayTag) section.get("SkyLight")).getValue();
-                // byte[] data = ((ByteArrayTag) section.get("Data")).getValue();
+        return this;
+    }
 
-                ChunkSection chunkSection = new ChunkSection(this.world, chunkX, y, chunkZ);
+    private void readLevel(DataInput input, Scratch scratch, int chunkX, int chunkZ) throws IOException {
+        int type;
+        while ((type = input.readUnsignedByte()) != TAG_END) {
+            String name = input.readUTF();
 
-                for (int relY = 0; relY < 16; relY++) {
-                    for (int relX = 0; relX < 16; relX++) {
-                        for (int relZ = 0; relZ < 16; relZ++) {
-                            int index = (relY * 16 + relZ) * 16 + relX;
-                            int blockId = ((add[index] & 0xFF) << 4) | (blocks[index] & 0xFF);
-                            //int typeAndData = (add[index] << 8) | blockId | getHalfByte(index, data);
+            if (type == TAG_LIST && name.equals("Sections")) {
+                int elementType = input.readUnsignedByte();
+                int count = input.readInt();
 
-                            // Combine sky light and block light
-                            int lightLevel = Math.max(getHalfByte(index, blockLight), getHalfByte(index, skyLight));
+                for (int i = 0; i < count; i++) {
+                    if (elementType == TAG_COMPOUND) {
+                        this.readSection(input, scratch, chunkX, chunkZ);
+                    } else {
+                        skipPayload(input, elementType, scratch);
+                    }
+                }
+            } else {
+                skipPayload(input, type, scratch);
+            }
+        }
+    }
 
-                            if (blockId != 0) {
-                                this.empty = false;
-                            }
+    private void readSection(DataInput input, Scratch scratch, int chunkX, int chunkZ) throws IOException {
+        int y = -1;
+        int blocksLength = -1;
+        int addLength = -1;
+        int blockLightLength = -1;
+        int skyLightLength = -1;
+
+        int type;
+        while ((type = input.readUnsignedByte()) != TAG_END) {
+            String name = input.readUTF();
+
+            if (type == TAG_BYTE && name.equals("Y")) {
+                y = input.readByte();
+            } else if (type == TAG_BYTE_ARRAY && name.equals("Blocks")) {
+                blocksLength = scratch.readBlocks(input);
+            } else if (type == TAG_BYTE_ARRAY && name.equals("Add")) {
+                addLength = scratch.readAdd(input);
+            } else if (type == TAG_BYTE_ARRAY && name.equals("BlockLight")) {
+                blockLightLength = scratch.readBlockLight(input);
+            } else if (type == TAG_BYTE_ARRAY && name.equals("SkyLight")) {
+                skyLightLength = scratch.readSkyLight(input);
+            } else {
+                skipPayload(input, type, scratch);
+            }
+        }
 
-                            // Invalid block, convert to stone
-                            if (blockId != 0 && Block.getById((short) blockId) == null) {
-                                blockId = Block.STONE.getId();
-                            }
+        if (y < 0 || y >= this.chunkSections.length || blocksLength < SECTION_VOLUME
+                || addLength != -1 && addLength < SECTION_VOLUME
+                || blockLightLength < NIBBLE_ARRAY_LENGTH || skyLightLength < NIBBLE_ARRAY_LENGTH) {
+            System.out.println("Skipped invalid section " + y + " of chunk " + chunkX + ", " + chunkZ);
+            return;
+        }
 
-                            chunkSection.setBlockAt(relX, relY, relZ, blockId);
-                            chunkSection.setLightAt(relX, relY, relZ, lightLevel);
-                        }
-                    }
-                }
+        byte[] blocks = scratch.sectionBlocks;
+        if (addLength == -1) {
+            // The ids fit into a byte, copy them at once and only check them
+            System.arraycopy(scratch.blocks, 0, blocks, 0, SECTION_VOLUME);
 
+            for (int index = 0; index < SECTION_VOLUME; index++) {
+                int blockId = blocks[index] & 0xFF;
+                if (blockId != 0) {
+                    this.empty = false;
 
-                this.chunkSections[y] = chunkSection;
-            } catch (Exception e) {
-                e.printStackTrace();
+                    // Invalid block, convert to stone
+                    if (!VALID_BLOCKS[blockId]) {
+                        blocks[index] = (byte) Block.STONE.getId();
+                    }
+                }
+            }
+        } else {
+            for (int index = 0; index < SECTION_VOLUME; index++) {
+                int blockId = ((scratch.add[index] & 0xFF) << 4) | (scratch.blocks[index] & 0xFF);
+                if (blockId != 0) {
+                    this.empty = false;
+
+                    // Invalid block, convert to stone
+                    if (!VALID_BLOCKS[blockId]) {
+                        blockId = Block.STONE.getId();
+                    }
+                }
+                blocks[index] = (byte) blockId;
             }
         }
 
-        return this;
-    }
+        // Combine sky light and block light, the low nibble is the even index
+        byte[] light = scratch.sectionLight;
+        for (int i = 0; i < NIBBLE_ARRAY_LENGTH; i++) {
+            int blockLight = scratch.blockLight[i];
+            int skyLight = scratch.skyLight[i];
+            light[i * 2] = (byte) Math.max(blockLight & 0xF, skyLight & 0xF);
+            light[i * 2 + 1] = (byte) Math.max(blockLight >> 4 & 0xF, skyLight >> 4 & 0xF);
+        }
 
-    private static byte getHalfByte(int index, byte[] bytes) {
-        return (byte) ((bytes[index / 2] >> (index % 2 == 0 ? 0 : 4)) & 0xF);
+        ChunkSection chunkSection = new ChunkSection(this.world, chunkX, y, chunkZ);
+        chunkSection.setData(blocks, light);
+        this.chunkSections[y] = chunkSection;
     }
 
-    private static void setHalfByte(int index, byte value, byte[] bytes) {
-        int shift = (index % 2 == 0) ? 4 : 0;
+    public static void write(ChunkSnapshot chunk, DataOutputStream dataOutputStream) throws IOException {
+        Scratch scratch = SCRATCH.get();
 
-        // Clear the target half-byte
-        bytes[index / 2] = (byte) ((bytes[index / 2] & ~(0xF << shift)) |
-                ((value & 0xF) << shift) & 0xFF);
-    }
+        // Skip empty chunks
+        int sectionCount = 0;
+        for (int y = 0; y < chunk.getSectionCount(); y++) {
+            if (!chunk.isSectionEmpty(y)) {
+                sectionCount++;
+            }
+        }
+
+        // Root and level compound
+        dataOutputStream.writeByte(TAG_COMPOUND);
+        dataOutputStream.writeUTF("");
+        dataOutputStream.writeByte(TAG_COMPOUND);
+        dataOutputStream.writeUTF("Level");
 
-    public static void write(Chunk chunk, DataOutputStream dataOutputStream) throws IOException {
-        List<Tag> sectionList = new ArrayList<>();
-        for (byte y = 0; y < 16; y++) {
-            ChunkSection chunkSection = chunk.getSection(y);
+        // Section list
+        dataOutputStream.writeByte(TAG_LIST);
+        dataOutputStream.writeUTF("Sections");
+        dataOutputStream.writeByte(sectionCount == 0 ? TAG_END : TAG_COMPOUND);
+        dataOutputStream.writeInt(sectionCount);
 
-            // Skip empty chunks
-            if (chunkSection == null || chunkSection.isEmpty()) {
+        for (int y = 0; y < chunk.getSectionCount(); y++) {
+            if (chunk.isSectionEmpty(y)) {
                 continue;
             }
 
-            // Section data
-            CompoundTag section = new CompoundTag("");
-
-            // Set Y tag
-            section.put(new ByteTag("Y", y));
-
-            // Content
-            ByteArrayTag blocks = new ByteArrayTag("Blocks");
-            ByteArrayTag add = new ByteArrayTag("Add");
-            ByteArrayTag data = new ByteArrayTag("Data");
-            ByteArrayTag blockLight = new ByteArrayTag("BlockLight");
-            ByteArrayTag skyLight = new ByteArrayTag("SkyLight");
-
-            byte[] blockArray = new byte[4096];
-            byte[] addArray = new byte[4096];
-            byte[] lightArray = new byte[4096];
-            byte[] skyLightArray = new byte[4096];
-            //byte[] dataArray = new byte[4096];
-
-            for (int relY = 0; relY < 16; relY++) {
-                for (int relX = 0; relX < 16; relX++) {
-                    for (int relZ = 0; relZ < 16; relZ++) {
-                        int index = (relY * 16 + relZ) * 16 + relX;
-
-                        int blockId = chunkSection.getBlockAt(relX, relY, relZ);
-                        int blockLightShort = chunkSection.getLightAt(relX, relY, relZ);
-
-                        blockArray[index] = (byte) (blockId & 0xFF);
-                        addArray[index] = (byte) (blockId >> 4);
-                        setHalfByte(index, (byte) blockLightShort, lightArray);
-
-                        // int typeAndData = chunkSection.getBlockAt(relX, relY, relZ);
-                        // blockArray[index] = (byte) ((typeAndData & 0xFF) >> 4);
-                        // addArray[index] = (byte) (typeAndData >> 8);
-                        // setHalfByte(index, (byte) typeAndData, dataArray);
-                    }
-                }
+            // The section uses the same index order
+            byte[] sectionBlocks = chunk.getBlocks(y);
+            byte[] sectionLight = chunk.getLight(y);
+
+            byte[] add = scratch.writtenAdd;
+            for (int index = 0; index < SECTION_VOLUME; index++) {
+                add[index] = (byte) (sectionBlocks[index] >> 4);
+            }
+
+            // The even index is stored in the low nibble, the second half of the array stays zero
+            byte[] blockLight = scratch.writtenBlockLight;
+            for (int i = 0; i < NIBBLE_ARRAY_LENGTH; i++) {
+                blockLight[i] = (byte) ((sectionLight[i * 2 + 1] & 0xF) << 4 | sectionLight[i * 2] & 0xF);
             }
 
-            // Fill content tags
-            blocks.setValue(blockArray);
-            add.setValue(addArray);
-            blockLight.setValue(lightArray);
-            skyLight.setValue(skyLightArray);
-            // data.setValue(dataArray);
+            dataOutputStream.writeByte(TAG_BYTE);
+            dataOutputStream.writeUTF("Y");
+            dataOutputStream.writeByte(y);
 
-            // Add to section
-            section.put(blocks);
-            section.put(add);
-            //section.put(data);
-            section.put(blockLight);
-            section.put(skyLight);
+            writeByteArray(dataOutputStream, "Blocks", sectionBlocks);
+            writeByteArray(dataOutputStream, "Add", add);
+            writeByteArray(dataOutputStream, "BlockLight", blockLight);
+            writeByteArray(dataOutputStream, "SkyLight", scratch.emptyLight);
 
-            // Add section to list
-            sectionList.add(section);
+            dataOutputStream.writeByte(TAG_END);
         }
 
-        // Add level tags
-        CompoundTag level = new CompoundTag("Level");
-        level.put(new ListTag("Sections", sectionList));
+        // End of level and root
+        dataOutputStream.writeByte(TAG_END);
+        dataOutputStream.writeByte(TAG_END);
+    }
 
-        // Create root
-        CompoundTag root = new CompoundTag("");
+    private static void writeByteArray(DataOutput output, String name, byte[] value) throws IOException {
+        output.writeByte(TAG_BYTE_ARRAY);
+        output.writeUTF(name);
+        output.writeInt(value.length);
+        output.write(value);
+    }
 
-        // Add level to root
-        root.put(level);
+    private static void skipString(DataInput input) throws IOException {
+        skipFully(input, input.readUnsignedShort());
+    }
 
-        // Write
-        NBTIO.writeTag((OutputStream) dataOutputStream, root);
+    /**
+     * Skip the payload of a tag that isn't needed
+     */
+    private static void skipPayload(DataInput input, int type, Scratch scratch) throws IOException {
+        switch (type) {
+            case TAG_END -> {
+            }
+            case TAG_BYTE -> skipFully(input, 1);
+            case TAG_SHORT -> skipFully(input, 2);
+            case TAG_INT, TAG_FLOAT -> skipFully(input, 4);
+            case TAG_LONG, TAG_DOUBLE -> skipFully(input, 8);
+            case TAG_BYTE_ARRAY -> skipFully(input, input.readInt());
+            case TAG_STRING -> skipString(input);
+            case TAG_LIST -> {
+                int elementType = input.readUnsignedByte();
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    skipPayload(input, elementType, scratch);
+                }
+            }
+            case TAG_COMPOUND -> {
+                int childType;
+                while ((childType = input.readUnsignedByte()) != TAG_END) {
+                    skipString(input);
+                    skipPayload(input, childType, scratch);
+                }
+            }
+            case TAG_INT_ARRAY -> skipFully(input, input.readInt() * 4L);
+            case TAG_LONG_ARRAY -> skipFully(input, input.readInt() * 8L);
+            default -> throw new IOException("Unknown tag type " + type);
+        }
+    }
+
+    private static void skipFully(DataInput input, long bytes) throws IOException {
+        while (bytes > 0) {
+            int skipped = input.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // Skipping isn't supported by the stream, read instead
+                input.readByte();
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
     }
 
     public ChunkSection[] getChunks() {
@@ -196,4 +316,59 @@ public class ChunkFormat {
     public boolean isEmpty() {
         return empty;
     }
-}
\ No newline at end of file
+
+    /**
+     * Arrays of a section that is read or written, the arrays read from the stream are kept at their length.
+     * The written arrays are separate, so they always have the length of a section.
+     */
+    private static class Scratch {
+        private byte[] blocks = new byte[SECTION_VOLUME];
+        private byte[] add = new byte[SECTION_VOLUME];
+        private byte[] blockLight = new byte[SECTION_VOLUME];
+        private byte[] skyLight = new byte[SECTION_VOLUME];
+
+        // Written arrays, the sky light is always dark
+        private final byte[] writtenAdd = new byte[SECTION_VOLUME];
+        private final byte[] writtenBlockLight = new byte[SECTION_VOLUME];
+        private final byte[] emptyLight = new byte[SECTION_VOLUME];
+
+        // Converted section data
+        private final byte[] sectionBlocks = new byte[SECTION_VOLUME];
+        private final byte[] sectionLight = new byte[SECTION_VOLUME];
+
+        private int readBlocks(DataInput input) throws IOException {
+            int length = input.readInt();
+            this.blocks = read(input, this.blocks, length);
+            return length;
+        }
+
+        private int readAdd(DataInput input) throws IOException {
+            int length = input.readInt();
+            this.add = read(input, this.add, length);
+            return length;
+        }
+
+        private int readBlockLight(DataInput input) throws IOException {
+            int length = input.readInt();
+            this.blockLight = read(input, this.blockLight, length);
+            return length;
+        }
+
+        private int readSkyLight(DataInput input) throws IOException {
+            int length = input.readInt();
+            this.skyLight = read(input, this.skyLight, length);
+            return length;
+        }
+
+        private static byte[] read(DataInput input, byte[] array, int length) throws IOException {
+            if (length < 0) {
+                throw new IOException("Negative array length " + length);
+            }
+            if (length > array.length) {
+                array = new byte[length];
+            }
+            input.readFully(array, 0, length);
+            return array;
+        }
+    }
+}
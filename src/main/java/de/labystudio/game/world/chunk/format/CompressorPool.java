@@ -0,0 +1,48 @@
+package de.labystudio.game.world.chunk.format;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps one inflater and one deflater per compression level for each thread, so the native zlib state isn't
+ * allocated for every chunk. An instance is reset when it is handed out again, a thread can only use one
+ * stream of each kind at a time. The instances are released together with their thread.
+ */
+final class CompressorPool {
+
+    // Deflaters indexed by compression level, the default level at index 0
+    private static final ThreadLocal<Deflater[]> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater[Deflater.BEST_COMPRESSION + 2]);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private CompressorPool() {
+    }
+
+    /**
+     * @param level Compression level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     *              or {@link Deflater#DEFAULT_COMPRESSION}
+     * @return Reset deflater of the current thread
+     */
+    static Deflater getDeflater(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+
+        Deflater[] deflaters = DEFLATERS.get();
+        Deflater deflater = deflaters[level + 1];
+        if (deflater == null) {
+            deflater = deflaters[level + 1] = new Deflater(level);
+        } else {
+            deflater.reset();
+        }
+        return deflater;
+    }
+
+    /**
+     * @return Reset inflater of the current thread
+     */
+    static Inflater getInflater() {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        return inflater;
+    }
+}
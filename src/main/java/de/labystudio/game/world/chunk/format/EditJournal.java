@@ -0,0 +1,401 @@
+package de.labystudio.game.world.chunk.format;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the block edits of a world, so an edit is durable without rewriting its chunk.
+ * Edits are collected in memory and appended by a writer thread in batches, each batch is synced once
+ * (group commit). Records of a chunk are dropped once a snapshot that contains them is synced into its
+ * region file, the file is rewritten when most of its records are dropped. Chunks that are loaded again
+ * replay their remaining records over the stored data.
+ * <p>
+ * A batch is stored as the record count, the records and a CRC32 of the records. A torn batch at the
+ * end of the file is cut off when the journal is opened.
+ */
+public class EditJournal {
+
+    private static final int MAGIC = 0x45444A31; // EDJ1
+
+    // Chunk x, chunk z, position in the chunk and block type
+    private static final int RECORD_BYTES = 4 + 4 + 2 + 1;
+
+    // The file is rewritten once less than this share of its records is still needed
+    private static final float REWRITE_LIVE_SHARE = 0.5F;
+
+    private final File file;
+    private FileChannel channel;
+
+    // Records that are not folded into the region files yet by chunk index,
+    // each record packs the sequence << 24 | type << 16 | y << 8 | z << 4 | x
+    private final Long2ObjectMap<LongArrayList> records = new Long2ObjectOpenHashMap<>();
+    private int recordCount;
+    private long sequence;
+
+    // Records logged since the last commit, swapped with the buffer of the writer
+    private ByteBuffer pending = ByteBuffer.allocate(RECORD_BYTES * 256);
+    private ByteBuffer writing = ByteBuffer.allocate(RECORD_BYTES * 256);
+    private int pendingCount;
+
+    private boolean rewriteRequested;
+    private boolean closed;
+
+    private final Thread writer;
+    private final CRC32 crc = new CRC32();
+
+    // Statistics
+    private long fileSize;
+    private long commits;
+    private long lastCommitNanos;
+
+    public EditJournal(File file) {
+        this.file = file;
+
+        try {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.exists() && directory.mkdirs()) {
+                System.out.println("Created new world directory \"" + directory + "\"");
+            }
+
+            this.open();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        this.writer = new Thread(this::run, "Edit journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Read the records of the file and cut off a torn batch at its end
+     */
+    private void open() throws IOException {
+        if (this.file.exists() && this.file.length() > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(this.file.toPath()));
+
+            if (buffer.remaining() < 4 || buffer.getInt() != MAGIC) {
+                // Keep the unknown file aside instead of overwriting it
+                File broken = new File(this.file.getPath() + "~");
+                Files.move(this.file.toPath(), broken.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Edit journal " + this.file + " is invalid, moved to " + broken);
+            } else {
+                int valid = buffer.position();
+                while (buffer.remaining() >= 4) {
+                    int count = buffer.getInt();
+                    if (count <= 0 || buffer.remaining() < (long) count * RECORD_BYTES + 4) {
+                        break;
+                    }
+
+                    this.crc.reset();
+                    this.crc.update(buffer.slice(buffer.position(), count * RECORD_BYTES));
+                    if ((int) this.crc.getValue() != buffer.getInt(buffer.position() + count * RECORD_BYTES)) {
+                        break;
+                    }
+
+                    for (int i = 0; i < count; i++) {
+                        int chunkX = buffer.getInt();
+                        int chunkZ = buffer.getInt();
+                        int position = buffer.getShort() & 0xFFFF;
+                        int type = buffer.get() & 0xFF;
+                        this.add(chunkX, chunkZ, position, type);
+                    }
+                    buffer.getInt();
+                    valid = buffer.position();
+                }
+
+                if (valid < buffer.limit()) {
+                    System.out.println("Cut off " + (buffer.limit() - valid) + " bytes of a torn batch in the edit journal");
+                }
+                this.fileSize = valid;
+
+                if (this.recordCount > 0) {
+                    System.out.println("Edit journal contains " + this.recordCount + " block edits to replay");
+                }
+            }
+        }
+
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (this.fileSize == 0) {
+            this.channel.truncate(0);
+            this.channel.write(ByteBuffer.allocate(4).putInt(0, MAGIC));
+            this.channel.force(true);
+            this.fileSize = 4;
+        } else {
+            this.channel.truncate(this.fileSize);
+        }
+        this.channel.position(this.fileSize);
+    }
+
+    /**
+     * Log a block edit, it is durable once the next commit of the writer thread is synced
+     *
+     * @param x    Block x coordinate
+     * @param y    Block y coordinate
+     * @param z    Block z coordinate
+     * @param type New block type
+     */
+    public synchronized void log(int x, int y, int z, int type) {
+        int chunkX = x >> 4;
+        int chunkZ = z >> 4;
+        int position = y << 8 | (z & 15) << 4 | x & 15;
+        this.add(chunkX, chunkZ, position, type);
+
+        if (this.pending.remaining() < RECORD_BYTES) {
+            ByteBuffer grown = ByteBuffer.allocate(this.pending.capacity() * 2);
+            this.pending.flip();
+            grown.put(this.pending);
+            this.pending = grown;
+        }
+        this.pending.putInt(chunkX).putInt(chunkZ).putShort((short) position).put((byte) type);
+
+        if (this.pendingCount++ == 0) {
+            this.notifyAll();
+        }
+    }
+
+    private void add(int chunkX, int chunkZ, int position, int type) {
+        long index = getIndex(chunkX, chunkZ);
+
+        LongArrayList chunkRecords = this.records.get(index);
+        if (chunkRecords == null) {
+            this.records.put(index, chunkRecords = new LongArrayList());
+        }
+        chunkRecords.add(this.sequence++ << 24 | (long) (type & 0xFF) << 16 | position & 0xFFFF);
+        this.recordCount++;
+    }
+
+    /**
+     * Records of a chunk to replay over its stored data, in the order they were logged
+     *
+     * @return Records packed as type << 16 | y << 8 | z << 4 | x with the sequence in the upper bits or null if there are none
+     */
+    public synchronized long[] getEdits(int chunkX, int chunkZ) {
+        LongArrayList chunkRecords = this.records.get(getIndex(chunkX, chunkZ));
+        return chunkRecords == null ? null : chunkRecords.toLongArray();
+    }
+
+    /**
+     * Drop the records that are contained in saved chunks, called once the region files are synced
+     *
+     * @param chunks   Indices of the written chunks
+     * @param sequence Sequence of the journal when the snapshots were captured, later records are kept
+     */
+    public synchronized void checkpoint(LongList chunks, long sequence) {
+        for (int i = 0; i < chunks.size(); i++) {
+            long index = chunks.getLong(i);
+
+            LongArrayList chunkRecords = this.records.get(index);
+            if (chunkRecords == null) {
+                continue;
+            }
+
+            // Records are ordered by their sequence
+            int folded = 0;
+            while (folded < chunkRecords.size() && chunkRecords.getLong(folded) >>> 24 < sequence) {
+                folded++;
+            }
+
+            chunkRecords.removeElements(0, folded);
+            this.recordCount -= folded;
+            if (chunkRecords.isEmpty()) {
+                this.records.remove(index);
+            }
+        }
+
+        // Most of the file is folded, write the remaining records into a new one
+        long loggedRecords = (this.fileSize - 4) / RECORD_BYTES + this.pendingCount;
+        if (this.recordCount < loggedRecords * REWRITE_LIVE_SHARE) {
+            this.rewriteRequested = true;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Commit the pending records or rewrite the file, one batch after another
+     */
+    private void run() {
+        while (true) {
+            ByteBuffer rewrite = null;
+            int count;
+
+            synchronized (this) {
+                while (this.pendingCount == 0 && !this.rewriteRequested && !this.closed) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (this.rewriteRequested) {
+                    // All pending records are part of the new file
+                    rewrite = this.encodeRecords();
+                    this.rewriteRequested = false;
+                    this.pending.clear();
+                    count = this.recordCount;
+                } else {
+                    ByteBuffer batch = this.pending;
+                    this.pending = this.writing;
+                    this.writing = batch;
+                    count = this.pendingCount;
+                }
+                this.pendingCount = 0;
+
+                if (count == 0 && rewrite == null && this.closed) {
+                    return;
+                }
+            }
+
+            long start = System.nanoTime();
+            try {
+                if (rewrite != null) {
+                    this.rewrite(rewrite, count);
+                } else {
+                    this.writing.flip();
+                    this.append(this.writing, count);
+                    this.writing.clear();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            synchronized (this) {
+                this.lastCommitNanos = System.nanoTime() - start;
+                this.commits++;
+            }
+        }
+    }
+
+    /**
+     * Write a batch at the end of the file and sync it
+     */
+    private void append(ByteBuffer batch, int count) throws IOException {
+        this.crc.reset();
+        this.crc.update(batch.slice());
+
+        ByteBuffer header = ByteBuffer.allocate(4).putInt(0, count);
+        ByteBuffer trailer = ByteBuffer.allocate(4).putInt(0, (int) this.crc.getValue());
+        ByteBuffer[] buffers = {header, batch, trailer};
+
+        long length = 4L + batch.remaining() + 4L;
+        long written = 0;
+        while (written < length) {
+            written += this.channel.write(buffers);
+        }
+        this.channel.force(false);
+
+        synchronized (this) {
+            this.fileSize += length;
+        }
+    }
+
+    /**
+     * Replace the file with one that only contains the given records
+     */
+    private void rewrite(ByteBuffer batch, int count) throws IOException {
+        File temporary = new File(this.file.getPath() + ".tmp");
+
+        this.channel.close();
+        this.channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.channel.write(ByteBuffer.allocate(4).putInt(0, MAGIC));
+
+        synchronized (this) {
+            this.fileSize = 4;
+        }
+
+        if (count > 0) {
+            this.append(batch, count);
+        } else {
+            this.channel.force(false);
+        }
+
+        // The old file stays valid until the new one replaces it
+        this.channel.close();
+        Files.move(temporary.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.WRITE);
+        this.channel.position(this.channel.size());
+    }
+
+    private ByteBuffer encodeRecords() {
+        ByteBuffer buffer = ByteBuffer.allocate(this.recordCount * RECORD_BYTES);
+
+        ObjectIterator<Long2ObjectMap.Entry<LongArrayList>> iterator = this.records.long2ObjectEntrySet().iterator();
+        while (iterator.hasNext()) {
+            Long2ObjectMap.Entry<LongArrayList> entry = iterator.next();
+            int chunkX = (int) entry.getLongKey();
+            int chunkZ = (int) (entry.getLongKey() >> 32);
+
+            LongArrayList chunkRecords = entry.getValue();
+            for (int i = 0; i < chunkRecords.size(); i++) {
+                long record = chunkRecords.getLong(i);
+                buffer.putInt(chunkX).putInt(chunkZ).putShort((short) record).put((byte) (record >> 16));
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Commit the remaining records and close the file
+     */
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            this.notifyAll();
+        }
+
+        try {
+            this.writer.join();
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long getIndex(int chunkX, int chunkZ) {
+        return chunkX & 0xFFFFFFFFL | (chunkZ & 0xFFFFFFFFL) << 32;
+    }
+
+    /**
+     * Sequence of the next logged record, snapshots captured now contain all records before it
+     */
+    public synchronized long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Amount of records that are not folded into the region files yet
+     */
+    public synchronized int getRecordCount() {
+        return this.recordCount;
+    }
+
+    public synchronized long getFileSize() {
+        return this.fileSize;
+    }
+
+    public synchronized long getCommits() {
+        return this.commits;
+    }
+
+    public synchronized long getLastCommitNanos() {
+        return this.lastCommitNanos;
+    }
+}
@@ -0,0 +1,68 @@
+package de.labystudio.game.world.chunk.format;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates a zlib compressed chunk straight out of a memory-mapped region file.
+ * The compressed bytes are passed to the inflater as a buffer slice, so they are never copied onto the heap.
+ * The inflater belongs to the {@link CompressorPool} of the reading thread and isn't ended on close.
+ */
+class MappedChunkInputStream extends InputStream {
+
+    private final Inflater inflater;
+    private final byte[] single = new byte[1];
+
+    MappedChunkInputStream(ByteBuffer compressed, Inflater inflater) {
+        this.inflater = inflater;
+        this.inflater.setInput(compressed);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return this.read(this.single, 0, 1) == -1 ? -1 : this.single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        try {
+            int read;
+            while ((read = this.inflater.inflate(buffer, offset, length)) == 0) {
+                if (this.inflater.finished()) {
+                    return -1;
+                }
+                if (this.inflater.needsDictionary()) {
+                    throw new ZipException("Chunk requires a preset dictionary");
+                }
+
+                // The whole chunk is passed at once, more input means the data is truncated
+                if (this.inflater.needsInput()) {
+                    throw new EOFException("Unexpected end of chunk data");
+                }
+            }
+            return read;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int available() {
+        return this.inflater.finished() ? 0 : 1;
+    }
+
+    @Override
+    public void close() {
+        // Release the reference to the mapping, the inflater is reused
+        this.inflater.reset();
+    }
+}
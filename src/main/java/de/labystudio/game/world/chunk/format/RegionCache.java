@@ -0,0 +1,148 @@
+package de.labystudio.game.world.chunk.format;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Bounded cache of open region files in least recently used order. A region keeps its file handle and
+ * parsed header while it is cached, so loading and saving don't have to open and parse it again.
+ * Regions are acquired by a thread while they are accessed, only idle regions are closed on eviction.
+ */
+public class RegionCache {
+
+    private final File directory;
+    private final int capacity;
+
+    // Open regions, the least recently used one first
+    private final Long2ObjectLinkedOpenHashMap<RegionFormat> regions = new Long2ObjectLinkedOpenHashMap<>();
+
+    // Statistics
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public RegionCache(File directory, int capacity) {
+        this.directory = directory;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get an open region file and mark it as in use, it has to be returned using {@link #release(RegionFormat)}
+     *
+     * @param x Region x coordinate
+     * @param z Region z coordinate
+     * @return Region file, it is created if it doesn't exist
+     */
+    public synchronized RegionFormat acquire(int x, int z) {
+        long regionId = getRegionId(x, z);
+
+        RegionFormat region = this.regions.getAndMoveToLast(regionId);
+        if (region == null) {
+            this.misses++;
+
+            File file = new File(this.directory, RegionFormat.getFileName(x, z));
+            if (!this.directory.exists() && this.directory.mkdirs()) {
+                System.out.println("Created new region directory \"" + this.directory + "\"");
+            }
+
+            region = new RegionFormat(file);
+            this.regions.putAndMoveToLast(regionId, region);
+        } else {
+            this.hits++;
+        }
+
+        region.users++;
+        this.evictIdle();
+        return region;
+    }
+
+    /**
+     * Get an open region file like {@link #acquire(int, int)}, but don't create the file if it doesn't exist
+     *
+     * @return Region file or null if there is no such file
+     */
+    public synchronized RegionFormat acquireExisting(int x, int z) {
+        if (!this.regions.containsKey(getRegionId(x, z)) && !new File(this.directory, RegionFormat.getFileName(x, z)).exists()) {
+            return null;
+        }
+        return this.acquire(x, z);
+    }
+
+    /**
+     * Return a region acquired by {@link #acquire(int, int)}
+     */
+    public synchronized void release(RegionFormat region) {
+        region.users--;
+        this.evictIdle();
+    }
+
+    /**
+     * Close the least recently used idle regions until the cache fits its capacity.
+     * Regions that are in use stay open, the cache shrinks once they are released.
+     */
+    private void evictIdle() {
+        ObjectIterator<RegionFormat> iterator = this.regions.values().iterator();
+        while (this.regions.size() > this.capacity && iterator.hasNext()) {
+            RegionFormat region = iterator.next();
+            if (region.users > 0) {
+                continue;
+            }
+
+            iterator.remove();
+            this.close(region);
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Close all idle regions, called once nothing accesses the files anymore
+     */
+    public synchronized void closeAll() {
+        ObjectIterator<RegionFormat> iterator = this.regions.values().iterator();
+        while (iterator.hasNext()) {
+            RegionFormat region = iterator.next();
+            if (region.users > 0) {
+                System.out.println("Region " + region.x + ", " + region.z + " is still in use");
+                continue;
+            }
+
+            iterator.remove();
+            this.close(region);
+        }
+    }
+
+    private void close(RegionFormat region) {
+        try {
+            region.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long getRegionId(int x, int z) {
+        return (long) x << 32L | z & 0xFFFFFFFFL;
+    }
+
+    public synchronized int getSize() {
+        return this.regions.size();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+}
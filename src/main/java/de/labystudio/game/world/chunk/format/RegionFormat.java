@@ -56,10 +56,20 @@ package de.labystudio.game.world.chunk.format;
  A version of 2 represents a deflated (zlib compressed) NBT file. The deflated
  data is the chunk length - 1.
 
+ A version of 3 represents an uncompressed NBT file. The NBT data is the chunk
+ length - 1.
+
  */
 
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
@@ -68,24 +78,35 @@ public class RegionFormat implements AutoCloseable {
 
     private static final int VERSION_GZIP = 1;
     private static final int VERSION_DEFLATE = 2;
+    private static final int VERSION_UNCOMPRESSED = 3;
 
     private static final int SECTOR_BYTES = 4096;
     private static final int SECTOR_INTS = SECTOR_BYTES / 4;
 
     static final int CHUNK_HEADER_SIZE = 5;
-    private static final byte[] emptySector = new byte[4096];
 
     private final File fileName;
     private RandomAccessFile file;
     private final int[] offsets;
     private final int[] chunkTimestamps;
-    private ArrayList<Boolean> sectorFree;
+    private SectorAllocator sectors;
     private int sizeDelta;
     private long lastModified = 0;
+    private long bytesWritten;
+
+    /* read-only mapping of the file, mapped again once chunks are read beyond its end */
+    private MappedByteBuffer mapped;
+    private boolean memoryMapped = true;
+
+    /* shared by the readers of chunk data, writing a chunk takes it exclusively */
+    private final ReentrantReadWriteLock access = new ReentrantReadWriteLock();
 
     public int x;
     public int z;
 
+    /* threads currently accessing the file, guarded by the RegionCache */
+    int users;
+
     public RegionFormat( File path ) {
         offsets = new int[SECTOR_INTS];
         chunkTimestamps = new int[SECTOR_INTS];
@@ -128,29 +149,20 @@ public class RegionFormat implements AutoCloseable {
 
             /* set up the available sector map */
             int nSectors = (int) file.length() / SECTOR_BYTES;
-            sectorFree = new ArrayList<>(nSectors);
-
-            for ( int i = 0; i < nSectors; ++i ) {
-                sectorFree.add( true );
-            }
+            sectors = new SectorAllocator( nSectors );
+            sectors.markUsed( 0, 2 ); // chunk offset table and last modified info
 
-            sectorFree.set( 0, false ); // chunk offset table
-            sectorFree.set( 1, false ); // for the last modified info
+            /* read the offset and timestamp tables through views of the mapping */
+            ByteBuffer header = map( 2 );
+            header.slice( 0, SECTOR_BYTES ).asIntBuffer().get( offsets );
+            header.slice( SECTOR_BYTES, SECTOR_BYTES ).asIntBuffer().get( chunkTimestamps );
 
-            file.seek( 0 );
             for ( int i = 0; i < SECTOR_INTS; ++i ) {
-                int offset = file.readInt();
-                offsets[i] = offset;
-                if ( offset != 0 && ( offset >> 8 ) + ( offset & 0xFF ) <= sectorFree.size() ) {
-                    for ( int sectorNum = 0; sectorNum < ( offset & 0xFF ); ++sectorNum ) {
-                        sectorFree.set( ( offset >> 8 ) + sectorNum, false );
-                    }
+                int offset = offsets[i];
+                if ( offset != 0 && ( offset >> 8 ) + ( offset & 0xFF ) <= sectors.getSize() ) {
+                    sectors.markUsed( offset >> 8, offset & 0xFF );
                 }
             }
-            for ( int i = 0; i < SECTOR_INTS; ++i ) {
-                int lastModValue = file.readInt();
-                chunkTimestamps[i] = lastModValue;
-            }
         } catch ( IOException e ) {
             e.printStackTrace();
         }
@@ -189,11 +201,60 @@ public class RegionFormat implements AutoCloseable {
         debug(x, z, in + "\n" );
     }
 
+    /* switch between the memory-mapped and the copying read path */
+    public synchronized void setMemoryMapped( boolean memoryMapped ) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /* map the file if the current mapping ends before the given sector */
+    private MappedByteBuffer map( int endSector ) throws IOException {
+        if ( mapped == null || mapped.capacity() < (long) endSector * SECTOR_BYTES ) {
+            mapped = file.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, file.length() );
+        }
+        return mapped;
+    }
+
+    /*
+     * keeps the chunks from being written while their data is read. the lock is
+     * shared between readers and has to be released by the thread that took it
+     */
+    public void lockRead( ) {
+        access.readLock().lock();
+    }
+
+    public void unlockRead( ) {
+        access.readLock().unlock();
+    }
+
     /*
      * gets an (uncompressed) stream representing the chunk data returns null if
-     * the chunk is not found or an error occurs
+     * the chunk is not found or an error occurs. the memory-mapped stream reads
+     * the file while it is consumed, so the stream holds the read lock until it
+     * is closed
      */
-    public synchronized DataInputStream getChunkDataInputStream(int x, int z) {
+    public DataInputStream getChunkDataInputStream(int x, int z) {
+        lockRead();
+
+        try {
+            ByteBuffer data = getChunkData(x, z);
+            if (data != null) {
+                return new DataInputStream(new LockedInputStream(openChunkData(data)));
+            }
+        } catch (IOException e) {
+            debugln(x, z, "exception");
+        }
+
+        unlockRead();
+        return null;
+    }
+
+    /*
+     * gets the version byte and the compressed data of a chunk, a slice of the
+     * mapping or a copy if the file isn't memory-mapped. returns null if the
+     * chunk is not found or an error occurs. a slice reads the file directly,
+     * it may only be used while the read lock is held
+     */
+    public synchronized ByteBuffer getChunkData(int x, int z) {
         if (outOfBounds(x, z)) {
             debugln(x, z, "out of bounds");
             return null;
@@ -208,51 +269,157 @@ public class RegionFormat implements AutoCloseable {
             int sectorNumber = offset >> 8;
             int numSectors = offset & 0xFF;
 
-            if (sectorNumber + numSectors > sectorFree.size()) {
+            if (sectorNumber + numSectors > sectors.getSize()) {
                 debugln(x, z, "invalid sector");
                 return null;
             }
 
-            file.seek((long) sectorNumber * SECTOR_BYTES);
-            int length = file.readInt();
-
-            if (length > SECTOR_BYTES * numSectors) {
-                debugln(x, z, "invalid length: " + length + " > 4096 * " + numSectors);
-                return null;
+            int length;
+            ByteBuffer data;
+            if (memoryMapped) {
+                MappedByteBuffer buffer = map(sectorNumber + numSectors);
+                length = buffer.getInt(sectorNumber * SECTOR_BYTES);
+                data = length <= 0 || length > SECTOR_BYTES * numSectors - 4 ? null
+                        : buffer.slice(sectorNumber * SECTOR_BYTES + 4, length);
+            } else {
+                file.seek((long) sectorNumber * SECTOR_BYTES);
+                length = file.readInt();
+                if (length <= 0 || length > SECTOR_BYTES * numSectors - 4) {
+                    data = null;
+                } else {
+                    byte[] bytes = new byte[length];
+                    file.readFully(bytes);
+                    data = ByteBuffer.wrap(bytes);
+                }
             }
 
-            byte version = file.readByte();
-            if (version == VERSION_GZIP) {
-                byte[] data = new byte[length - 1];
-                file.read(data);
-                return new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)));
-            } else if (version == VERSION_DEFLATE) {
-                byte[] data = new byte[length - 1];
-                file.read(data);
-                return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
+            if (data == null) {
+                debugln(x, z, "invalid length: " + length + " > 4096 * " + numSectors);
             }
-
-            debugln(x, z, "unknown version " + version);
-            return null;
+            return data;
         } catch (IOException e) {
             debugln(x, z, "exception");
             return null;
         }
     }
 
+    /*
+     * opens an (uncompressed) stream over chunk data returned by getChunkData.
+     * mapped data is passed to the inflater without a copy, the inflater is
+     * taken from the pool of the calling thread
+     */
+    public static DataInputStream openChunkData(ByteBuffer data) throws IOException {
+        byte version = data.get(0);
+        ByteBuffer compressed = data.slice(1, data.limit() - 1);
+
+        if (version == VERSION_GZIP) {
+            return new DataInputStream(new GZIPInputStream(new ByteBufferInputStream(compressed)));
+        } else if (version == VERSION_DEFLATE) {
+            if (compressed.isDirect()) {
+                return new DataInputStream(new MappedChunkInputStream(compressed, CompressorPool.getInflater()));
+            }
+            return new DataInputStream(new InflaterInputStream(new ByteBufferInputStream(compressed), CompressorPool.getInflater()));
+        } else if (version == VERSION_UNCOMPRESSED) {
+            return new DataInputStream(new ByteBufferInputStream(compressed));
+        }
+
+        throw new IOException("unknown version " + version);
+    }
+
+    /* indices (x + z * 32) of the stored chunks ordered by their position in the file */
+    public synchronized int[] getChunksBySector( ) {
+        int[] chunks = new int[SECTOR_INTS];
+        int count = 0;
+        for ( int i = 0; i < SECTOR_INTS; ++i ) {
+            if ( offsets[i] != 0 ) {
+                chunks[count++] = i;
+            }
+        }
+
+        chunks = Arrays.copyOf( chunks, count );
+        IntArrays.quickSort( chunks, ( a, b ) -> Integer.compare( offsets[a] >> 8, offsets[b] >> 8 ) );
+        return chunks;
+    }
+
     public DataOutputStream getChunkDataOutputStream(int x, int z) {
+        return getChunkDataOutputStream(x, z, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /*
+     * gets a stream that writes the chunk once it is closed. a level of
+     * Deflater.NO_COMPRESSION stores the data uncompressed, the other levels
+     * deflate it with the pooled deflater of the calling thread
+     */
+    public DataOutputStream getChunkDataOutputStream(int x, int z, int compressionLevel) {
         if (outOfBounds(x, z)) return null;
 
-        return new DataOutputStream(new DeflaterOutputStream(new ChunkBuffer(x, z)));
+        if (compressionLevel == Deflater.NO_COMPRESSION) {
+            return new DataOutputStream(new ChunkBuffer(x, z, VERSION_UNCOMPRESSED));
+        }
+        return new DataOutputStream(new DeflaterOutputStream(new ChunkBuffer(x, z, VERSION_DEFLATE),
+                CompressorPool.getDeflater(compressionLevel), 8192));
+    }
+
+    /* forces the written chunks and the header onto the disk */
+    public synchronized void sync( ) throws IOException {
+        file.getFD().sync();
     }
 
     @Override
     public void close() throws IOException {
+        mapped = null;
         if (file != null) {
             file.close();
         }
     }
 
+    /* chunk stream that releases the read lock of the region once it is closed */
+    private class LockedInputStream extends FilterInputStream {
+        private boolean closed;
+
+        private LockedInputStream( InputStream in ) {
+            super( in );
+        }
+
+        @Override
+        public void close( ) throws IOException {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+
+            try {
+                super.close();
+            } finally {
+                unlockRead();
+            }
+        }
+    }
+
+    /* stream over the remaining bytes of a buffer */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream( ByteBuffer buffer ) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read( ) {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read( byte[] bytes, int offset, int length ) {
+            if ( !buffer.hasRemaining() ) {
+                return -1;
+            }
+            length = Math.min( length, buffer.remaining() );
+            buffer.get( bytes, offset, length );
+            return length;
+        }
+    }
+
     /*
      * lets chunk writing be multithreaded by not locking the whole file as a
      * chunk is serializing -- only writes when serialization is over
@@ -260,20 +427,28 @@ public class RegionFormat implements AutoCloseable {
     class ChunkBuffer extends ByteArrayOutputStream {
         private final int x;
         private final int z;
+        private final int version;
 
-        public ChunkBuffer( int x, int z ) {
-            super();
+        public ChunkBuffer( int x, int z, int version ) {
+            super( 8192 );
             this.x = x;
             this.z = z;
+            this.version = version;
         }
         @Override
         public void close( ) {
-            RegionFormat.this.write( x, z, buf, buf.length );
+            /* taken outside of the monitor, readers hold the lock while they call into it */
+            access.writeLock().lock();
+            try {
+                RegionFormat.this.write( x, z, version, buf, count );
+            } finally {
+                access.writeLock().unlock();
+            }
         }
     }
 
     /* write a chunk at (x,z) with length bytes of data to disk */
-    protected synchronized void write( int x, int z, byte[] data, int length ) {
+    protected synchronized void write( int x, int z, int version, byte[] data, int length ) {
         try {
             int offset = getOffset( x, z );
             int sectorNumber = offset >> 8;
@@ -288,59 +463,29 @@ public class RegionFormat implements AutoCloseable {
             if ( sectorNumber != 0 && sectorsAllocated == sectorsNeeded ) {
                 /* we can simply overwrite the old sectors */
                 debug(x, z, length, "rewrite" );
-                write( sectorNumber, data, length );
+                write( sectorNumber, version, data, length );
             } else {
                 /* we need to allocate new sectors */
 
                 /* mark the sectors previously used for this chunk as free */
-                for ( int i = 0; i < sectorsAllocated; ++i ) {
-                    sectorFree.set( sectorNumber + i, true );
-                }
-
-                /* scan for a free space large enough to store this chunk */
-                int runStart = sectorFree.indexOf( true );
-                int runLength = 0;
-                if ( runStart != -1 ) {
-                    for ( int i = runStart; i < sectorFree.size(); ++i ) {
-                        if ( runLength != 0 ) {
-                            if (Boolean.TRUE.equals(sectorFree.get( i )) ) runLength++;
-                            else runLength = 0;
-                        } else if (Boolean.TRUE.equals(sectorFree.get( i )) ) {
-                            runStart = i;
-                            runLength = 1;
-                        }
-                        if ( runLength >= sectorsNeeded ) {
-                            break;
-                        }
-                    }
+                if ( sectorNumber != 0 ) {
+                    sectors.free( sectorNumber, sectorsAllocated );
                 }
 
-                if ( runLength >= sectorsNeeded ) {
-                    /* we found a free space large enough */
-                    debug(x, z, length, "reuse" );
-                    sectorNumber = runStart;
-                    setOffset( x, z, ( sectorNumber << 8 ) | sectorsNeeded );
-                    for ( int i = 0; i < sectorsNeeded; ++i ) {
-                        sectorFree.set( sectorNumber + i, false );
-                    }
-                    write( sectorNumber, data, length );
-                } else {
-                    /*
-                     * no free space large enough found -- we need to grow the
-                     * file
-                     */
+                /* best-fit free run, the file grows if there is none */
+                sectorNumber = sectors.allocate( sectorsNeeded );
+                long end = (long) ( sectorNumber + sectorsNeeded ) * SECTOR_BYTES;
+                if ( end > file.length() ) {
                     debug(x, z, length, "grow" );
-                    file.seek( file.length() );
-                    sectorNumber = sectorFree.size();
-                    for ( int i = 0; i < sectorsNeeded; ++i ) {
-                        file.write( emptySector );
-                        sectorFree.add( false );
-                    }
-                    sizeDelta += SECTOR_BYTES * sectorsNeeded;
-
-                    write( sectorNumber, data, length );
-                    setOffset( x, z, ( sectorNumber << 8 ) | sectorsNeeded );
+                    sizeDelta += (int) ( end - file.length() );
+                    file.setLength( end );
+                } else {
+                    debug(x, z, length, "reuse" );
                 }
+
+                /* the offset points to the new sectors once they are written */
+                write( sectorNumber, version, data, length );
+                setOffset( x, z, ( sectorNumber << 8 ) | sectorsNeeded );
             }
             setTimestamp( x, z, (int) ( System.currentTimeMillis() / 1000L ) );
         } catch ( IOException e ) {
@@ -349,12 +494,104 @@ public class RegionFormat implements AutoCloseable {
     }
 
     /* write a chunk data to the region file at specified sector number */
-    private void write( int sectorNumber, byte[] data, int length ) throws IOException {
+    private void write( int sectorNumber, int version, byte[] data, int length ) throws IOException {
         debugln( " " + sectorNumber );
         file.seek((long) sectorNumber * SECTOR_BYTES );
         file.writeInt( length + 1 ); // chunk length
-        file.writeByte( VERSION_DEFLATE ); // chunk version number
+        file.writeByte( version ); // chunk version number
         file.write( data, 0, length ); // chunk data
+        bytesWritten += length + CHUNK_HEADER_SIZE;
+    }
+
+    /*
+     * online compaction: moves the chunks at the end of the file into free runs
+     * further in front and truncates the free tail. returns the sectors reclaimed.
+     * waits for the readers, no slice of the mapping is in use while it runs
+     */
+    public int compact( ) {
+        access.writeLock().lock();
+        try {
+            return moveChunksForward();
+        } finally {
+            access.writeLock().unlock();
+        }
+    }
+
+    private synchronized int moveChunksForward( ) {
+        int sizeBefore = sectors.getSize();
+
+        try {
+            /* chunks sorted by their position, the last one first */
+            int[] chunks = getChunksBySector();
+            int count = chunks.length;
+            IntArrays.reverse( chunks );
+
+            byte[] buffer = new byte[SECTOR_BYTES];
+            for ( int i = 0; i < count; ++i ) {
+                int index = chunks[i];
+                int offset = offsets[index];
+                int sectorNumber = offset >> 8;
+                int numSectors = offset & 0xFF;
+
+                /* the chunk can only move if there is room in front of it */
+                int target = sectors.allocateBelow( numSectors, sectorNumber );
+                if ( target == -1 ) {
+                    continue;
+                }
+
+                /* copy the sectors first, the offset points to the copy once it is complete */
+                if ( buffer.length < numSectors * SECTOR_BYTES ) {
+                    buffer = new byte[numSectors * SECTOR_BYTES];
+                }
+                file.seek( (long) sectorNumber * SECTOR_BYTES );
+                file.readFully( buffer, 0, numSectors * SECTOR_BYTES );
+                file.seek( (long) target * SECTOR_BYTES );
+                file.write( buffer, 0, numSectors * SECTOR_BYTES );
+
+                setOffset( index & 31, index >> 5, ( target << 8 ) | numSectors );
+                sectors.free( sectorNumber, numSectors );
+            }
+
+            /* cut off the free tail, the old mapping is only unmapped once it is collected */
+            int size = sizeBefore - sectors.getTrailingFree();
+            if ( size < sizeBefore ) {
+                mapped = null;
+                try {
+                    file.setLength( (long) size * SECTOR_BYTES );
+                    sectors.truncate();
+                } catch ( IOException e ) {
+                    /* some systems refuse to truncate a mapped file, the tail stays free for the next writes */
+                    System.out.println( "Couldn't truncate " + fileName.getName() + ": " + e.getMessage() );
+                }
+            }
+        } catch ( IOException e ) {
+            e.printStackTrace();
+        }
+
+        return sizeBefore - sectors.getSize();
+    }
+
+    /* amount of sectors in the file, including the header */
+    public synchronized int getSectorCount( ) {
+        return sectors.getSize();
+    }
+
+    public synchronized int getFreeSectors( ) {
+        return sectors.getFreeSectors();
+    }
+
+    public synchronized int getFreeRunCount( ) {
+        return sectors.getFreeRunCount();
+    }
+
+    /* share of the free sectors that are not part of the largest free run */
+    public synchronized float getFragmentation( ) {
+        return sectors.getFragmentation();
+    }
+
+    /* bytes of chunk data written since the region file was opened */
+    public synchronized long getBytesWritten( ) {
+        return bytesWritten;
     }
 
     /* is this an invalid chunk coordinate? */
@@ -366,7 +603,7 @@ public class RegionFormat implements AutoCloseable {
         return offsets[x + z * 32];
     }
 
-    public boolean hasChunk( int x, int z ) {
+    public synchronized boolean hasChunk( int x, int z ) {
         return getOffset( x, z ) != 0;
     }
 
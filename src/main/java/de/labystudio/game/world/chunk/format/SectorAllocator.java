@@ -0,0 +1,250 @@
+package de.labystudio.game.world.chunk.format;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the free sectors of a region file in a bitset of long words, a set bit marks a free sector.
+ * Runs are placed best-fit to keep large holes for large chunks, freeing only flips the bits of the run.
+ * The file grows at its end when no free run is large enough and can be truncated once its tail is free.
+ */
+public class SectorAllocator {
+
+    private long[] words;
+    private int size;
+
+    /**
+     * @param size Amount of sectors in the file, all of them start out free
+     */
+    public SectorAllocator(int size) {
+        this.words = new long[Math.max(1, (size + 63) >> 6)];
+        this.size = size;
+        this.setRange(0, size, true);
+    }
+
+    /**
+     * Find a place for a run of sectors, the file grows if there is no free run large enough
+     *
+     * @param count Amount of sectors
+     * @return First sector of the run
+     */
+    public int allocate(int count) {
+        int start = this.findBestFit(count, this.size);
+
+        if (start == -1) {
+            // Continue a free run at the end of the file
+            start = this.size - this.getTrailingFree();
+            this.ensureCapacity(start + count);
+            this.size = Math.max(this.size, start + count);
+        }
+
+        this.setRange(start, start + count, false);
+        return start;
+    }
+
+    /**
+     * Find a place for a run of sectors that ends before the given sector, used to move chunks to the front
+     *
+     * @param count Amount of sectors
+     * @param limit The run has to end at or before this sector
+     * @return First sector of the run or -1 if there is no free run large enough
+     */
+    public int allocateBelow(int count, int limit) {
+        int start = this.findBestFit(count, limit);
+        if (start != -1) {
+            this.setRange(start, start + count, false);
+        }
+        return start;
+    }
+
+    /**
+     * Mark a run of sectors as used, for example the chunks listed in the header of an existing file
+     */
+    public void markUsed(int start, int count) {
+        this.setRange(start, Math.min(this.size, start + count), false);
+    }
+
+    public void free(int start, int count) {
+        this.setRange(start, Math.min(this.size, start + count), true);
+    }
+
+    /**
+     * Cut the free sectors off the end of the file
+     *
+     * @return New amount of sectors
+     */
+    public int truncate() {
+        int newSize = this.size - this.getTrailingFree();
+        this.setRange(newSize, this.size, false);
+        this.size = newSize;
+        return newSize;
+    }
+
+    /**
+     * Smallest free run that can hold the given amount of sectors, an exact fit ends the search
+     */
+    private int findBestFit(int count, int limit) {
+        int bestStart = -1;
+        int bestLength = Integer.MAX_VALUE;
+
+        int start = this.nextFree(0);
+        while (start != -1 && start < limit) {
+            int end = Math.min(this.nextUsed(start), limit);
+            int length = end - start;
+
+            if (length >= count && length < bestLength) {
+                bestStart = start;
+                bestLength = length;
+
+                if (length == count) {
+                    break;
+                }
+            }
+
+            start = end < this.size ? this.nextFree(end) : -1;
+        }
+        return bestStart;
+    }
+
+    /**
+     * First free sector at or after the given one
+     *
+     * @return Sector index or -1 if there is none
+     */
+    private int nextFree(int from) {
+        if (from >= this.size) {
+            return -1;
+        }
+
+        int index = from >> 6;
+        long word = this.words[index] & (-1L << from);
+        while (word == 0) {
+            if (++index >= this.words.length) {
+                return -1;
+            }
+            word = this.words[index];
+        }
+
+        int sector = (index << 6) + Long.numberOfTrailingZeros(word);
+        return sector < this.size ? sector : -1;
+    }
+
+    /**
+     * First used sector at or after the given one
+     *
+     * @return Sector index or the size if all following sectors are free
+     */
+    private int nextUsed(int from) {
+        if (from >= this.size) {
+            return this.size;
+        }
+
+        int index = from >> 6;
+        long word = ~this.words[index] & (-1L << from);
+        while (word == 0) {
+            if (++index >= this.words.length) {
+                return this.size;
+            }
+            word = ~this.words[index];
+        }
+
+        return Math.min(this.size, (index << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    private void setRange(int from, int to, boolean free) {
+        if (from >= to) {
+            return;
+        }
+
+        int fromIndex = from >> 6;
+        int toIndex = (to - 1) >> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+
+        for (int index = fromIndex; index <= toIndex; index++) {
+            long mask = -1L;
+            if (index == fromIndex) {
+                mask &= firstMask;
+            }
+            if (index == toIndex) {
+                mask &= lastMask;
+            }
+
+            if (free) {
+                this.words[index] |= mask;
+            } else {
+                this.words[index] &= ~mask;
+            }
+        }
+    }
+
+    private void ensureCapacity(int sectors) {
+        int required = (sectors + 63) >> 6;
+        if (required > this.words.length) {
+            this.words = Arrays.copyOf(this.words, Math.max(required, this.words.length * 2));
+        }
+    }
+
+    public boolean isFree(int sector) {
+        return sector < this.size && (this.words[sector >> 6] & 1L << sector) != 0;
+    }
+
+    /**
+     * Length of the free run at the end of the file
+     */
+    public int getTrailingFree() {
+        int sector = this.size;
+        while (sector > 0 && this.isFree(sector - 1)) {
+            // Skip whole free words
+            if ((sector & 63) == 0 && this.words[(sector >> 6) - 1] == -1L) {
+                sector -= 64;
+            } else {
+                sector--;
+            }
+        }
+        return this.size - sector;
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public int getFreeSectors() {
+        int free = 0;
+        for (long word : this.words) {
+            free += Long.bitCount(word);
+        }
+        return free;
+    }
+
+    public int getFreeRunCount() {
+        int runs = 0;
+        int start = this.nextFree(0);
+        while (start != -1) {
+            runs++;
+            int end = this.nextUsed(start);
+            start = this.nextFree(end);
+        }
+        return runs;
+    }
+
+    public int getLargestFreeRun() {
+        int largest = 0;
+        int start = this.nextFree(0);
+        while (start != -1) {
+            int end = this.nextUsed(start);
+            largest = Math.max(largest, end - start);
+            start = this.nextFree(end);
+        }
+        return largest;
+    }
+
+    /**
+     * Share of the free sectors that are not part of the largest free run
+     *
+     * @return 0 if all free sectors are contiguous, close to 1 if they are scattered
+     */
+    public float getFragmentation() {
+        int free = this.getFreeSectors();
+        return free == 0 ? 0.0F : 1.0F - this.getLargestFreeRun() / (float) free;
+    }
+}
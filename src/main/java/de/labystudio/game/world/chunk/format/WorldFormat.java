@@ -3,6 +3,11 @@ package de.labystudio.game.world.chunk.format;
 import de.labystudio.game.world.World;
 import de.labystudio.game.world.chunk.Chunk;
 import de.labystudio.game.world.chunk.ChunkSection;
+import de.labystudio.game.world.chunk.ChunkSnapshot;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -10,119 +15,187 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.Deflater;
 
 public class WorldFormat {
 
+    // Maximum amount of region files that are kept open
+    private static final int REGION_CACHE_SIZE = 16;
+
+    // Level of the written chunks, -Dgame.compressionLevel=0 stores them uncompressed
+    public static final int COMPRESSION_LEVEL = Integer.getInteger("game.compressionLevel", Deflater.DEFAULT_COMPRESSION);
+
+    // Compact a region after a save once this share of its sectors is free
+    private static final float COMPACT_FREE_SHARE = 0.25F;
+
     private final World world;
     private final File regionDirectory;
-    private final String name;
+    private final RegionCache regionCache;
+    private final WorldLoader loader;
+    private final EditJournal journal;
+
+    // Level of the written chunks, no compression stores them uncompressed
+    private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
 
     public WorldFormat(World world, File worldDirectory) {
         this.world = world;
-        this.name = worldDirectory.getName();
         this.regionDirectory = new File(worldDirectory, "region");
+        this.regionCache = new RegionCache(this.regionDirectory, REGION_CACHE_SIZE);
+        this.loader = new WorldLoader(world);
+        this.journal = new EditJournal(new File(worldDirectory, "edits.journal"));
+
+        try {
+            this.setCompressionLevel(COMPRESSION_LEVEL);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + ", using the default compression");
+        }
     }
 
-    public RegionFormat getRegion(int x, int z) {
-        File file = new File(this.regionDirectory, RegionFormat.getFileName(x, z));
+    /**
+     * Read a single chunk from its region file
+     *
+     * @param chunkX Chunk x coordinate
+     * @param chunkZ Chunk z coordinate
+     * @return Sections of the chunk or null if the chunk isn't stored
+     */
+    public ChunkSection[] loadChunk(int chunkX, int chunkZ) throws IOException {
+        RegionFormat region = this.regionCache.acquireExisting(chunkX >> 5, chunkZ >> 5);
+        if (region == null) {
+            return null;
+        }
 
-        File parent = file.getParentFile();
-        if (parent != null && !file.exists() && parent.mkdirs()) {
-            System.out.println("Created new world directory \"" + this.name + "\"");
+        try {
+            return this.readChunk(region, chunkX & 31, chunkZ & 31);
+        } finally {
+            this.regionCache.release(region);
         }
+    }
+
+    /**
+     * Read chunks asynchronously, they are handed over by {@link #pollChunks(WorldLoadingProgress, int)}
+     *
+     * @param chunks Indices of the chunks, see {@link Chunk#getIndex(int, int)}
+     */
+    public void requestChunks(LongList chunks) {
+        this.loader.request(this.regionCache, chunks);
+    }
+
+    /**
+     * Hand over the requested chunks that are finished
+     *
+     * @param progress Receives the chunks, the sections are null if the chunk isn't stored
+     * @param limit    Maximum amount of chunks to hand over
+     * @return Amount of chunks handed over
+     */
+    public int pollChunks(WorldLoadingProgress progress, int limit) {
+        return this.loader.poll(progress, limit);
+    }
 
-        return new RegionFormat(file);
+    public int getPendingChunks() {
+        return this.loader.getPendingRequests();
     }
 
-    public void load(WorldLoadingProgress worldLoadingProgress) {
-        if (!this.regionDirectory.exists()) {
-            System.out.println("World file not found");
-            return;
+    private ChunkSection[] readChunk(RegionFormat region, int x, int z) throws IOException {
+        if (!region.hasChunk(x, z)) {
+            return null;
         }
 
-        File[] files = this.regionDirectory.listFiles();
-        if (files != null) {
-            for (File regionFile : files) {
-                // Skip old region files
-                if (regionFile.getName().endsWith("~"))
-                    continue;
-
-                try (RegionFormat region = new RegionFormat(regionFile)) {
-                    for (int x = 0; x < 32; x++) {
-                        for (int z = 0; z < 32; z++) {
-                            try (DataInputStream inputStream = region.getChunkDataInputStream(x, z)) {
-                                int chunkX = (region.x << 5) + x;
-                                int chunkZ = (region.z << 5) + z;
-
-                                // Read chunk layers
-                                ChunkFormat chunkFormat = new ChunkFormat(this.world, x, z).read(inputStream, chunkX, chunkZ);
-                                if (!chunkFormat.isEmpty()) {
-                                    ChunkSection[] layers = chunkFormat.getChunks();
-
-                                    // Fill empty chunks with chunk objects
-                                    for (int y = 0; y < 16; y++) {
-                                        if (layers[y] == null) {
-                                            layers[y] = new ChunkSection(this.world, chunkX, y, chunkZ);
-                                        }
-                                    }
-
-                                    // Load chunk layers
-                                    worldLoadingProgress.onLoad(chunkX, chunkZ, layers);
-                                }
-                            }
-                        }
-                    }
-                } catch (IOException exception) {
-                    exception.printStackTrace();
+        try (DataInputStream inputStream = region.getChunkDataInputStream(x, z)) {
+            int chunkX = (region.x << 5) + x;
+            int chunkZ = (region.z << 5) + z;
+
+            // Read chunk layers
+            ChunkFormat chunkFormat = new ChunkFormat(this.world, x, z).read(inputStream, chunkX, chunkZ);
+            if (chunkFormat.isEmpty()) {
+                return null;
+            }
+
+            ChunkSection[] layers = chunkFormat.getChunks();
+
+            // Fill empty chunks with chunk objects
+            for (int y = 0; y < 16; y++) {
+                if (layers[y] == null) {
+                    layers[y] = new ChunkSection(this.world, chunkX, y, chunkZ);
                 }
             }
+            return layers;
         }
     }
 
-    public void saveChunks() throws IOException {
-        List<Long> regionsToSave = getLongs();
+    /**
+     * Write chunk snapshots into their region files, called on the thread of the {@link WorldSaver}.
+     * The journaled edits of the written chunks are dropped once the region files are synced.
+     *
+     * @param snapshots       Snapshots of the chunks to save
+     * @param journalSequence Sequence of the edit journal when the snapshots were captured
+     */
+    public void saveChunks(List<ChunkSnapshot> snapshots, long journalSequence) throws IOException {
+        long start = System.currentTimeMillis();
+        Long2ObjectMap<List<ChunkSnapshot>> regionsToSave = this.groupByRegion(snapshots);
 
         System.out.println("Start saving world in " + regionsToSave.size() + " region files.");
 
-        for (Long regionId : regionsToSave) {
+        LongArrayList chunksWritten = new LongArrayList();
+        long bytesWritten = 0;
+
+        for (Long2ObjectMap.Entry<List<ChunkSnapshot>> entry : regionsToSave.long2ObjectEntrySet()) {
             // Extract two ints from long id
+            long regionId = entry.getLongKey();
             int regionX = (int) (regionId >> 32);
-            int regionZ = (int) (long) regionId;
+            int regionZ = (int) regionId;
 
             // Get region file
-            try (RegionFormat region = this.getRegion(regionX, regionZ)) {
-                // Relative offset
-                for (int x = 0; x < 32; x++) {
-                    for (int z = 0; z < 32; z++) {
-
-                        // Absolute chunk coordinates
-                        int chunkX = (region.x << 5) + x;
-                        int chunkZ = (region.z << 5) + z;
-
-                        if (this.world.isChunkLoaded(chunkX, chunkZ)) {
-                            // Get chunk
-                            Chunk chunk = this.world.getChunkAt(chunkX, chunkZ);
-
-                            // Write
-                            if (!chunk.isEmpty()) {
-                                try (DataOutputStream outputStream = region.getChunkDataOutputStream(x, z)) {
-                                    ChunkFormat.write(chunk, outputStream);
-                                }
-                            }
-                        }
+            RegionFormat region = this.regionCache.acquire(regionX, regionZ);
+            long regionBytes = region.getBytesWritten();
+
+            try {
+                for (ChunkSnapshot chunk : entry.getValue()) {
+                    // Relative offset
+                    int x = chunk.getX() - (region.x << 5);
+                    int z = chunk.getZ() - (region.z << 5);
+
+                    try (DataOutputStream outputStream = region.getChunkDataOutputStream(x, z, this.compressionLevel)) {
+                        ChunkFormat.write(chunk, outputStream);
                     }
+                    chunk.markSaved();
+                    chunksWritten.add(Chunk.getIndex(chunk.getX(), chunk.getZ()));
+                }
+
+                // Move chunks into the holes left by grown chunks and truncate the file,
+                // the region waits until the chunks that are streamed in are decoded
+                if (region.getFreeSectors() > region.getSectorCount() * COMPACT_FREE_SHARE) {
+                    int sectors = region.getSectorCount();
+                    float fragmentation = region.getFragmentation();
+                    int reclaimed = region.compact();
+
+                    System.out.println("Compacted region " + regionX + ", " + regionZ + ": " + reclaimed + " of " + sectors
+                            + " sectors reclaimed, fragmentation " + String.format("%.0f", fragmentation * 100) + "% before, "
+                            + region.getFreeRunCount() + " free runs left");
                 }
+
+                // The journal can only drop edits that are on the disk
+                region.sync();
+            } finally {
+                bytesWritten += region.getBytesWritten() - regionBytes;
+                this.regionCache.release(region);
             }
         }
+
+        this.journal.checkpoint(chunksWritten, journalSequence);
+
+        System.out.println("Saved " + chunksWritten.size() + " changed chunks (" + bytesWritten / 1024 + " KiB) in "
+                + (System.currentTimeMillis() - start) + "ms");
     }
 
-    private List<Long> getLongs() {
-        List<Long> regionsToSave = new ArrayList<>();
+    private Long2ObjectMap<List<ChunkSnapshot>> groupByRegion(List<ChunkSnapshot> snapshots) {
+        Long2ObjectMap<List<ChunkSnapshot>> regionsToSave = new Long2ObjectOpenHashMap<>();
 
-        // Get all regions to save
-        for (Chunk chunk : this.world.chunks.values()) {
-            if (chunk.isEmpty())
+        for (ChunkSnapshot chunk : snapshots) {
+            // Nothing to write
+            if (chunk.isEmpty()) {
+                chunk.markSaved();
                 continue;
+            }
 
             // Get region coordinates of this chunk
             int regionX = chunk.getX() >> 5;
@@ -132,14 +205,51 @@ public class WorldFormat {
             long regionId = ((long) regionX) << 32L | regionZ & 0xFFFFFFFFL;
 
             // Add to queue
-            if (!regionsToSave.contains(regionId)) {
-                regionsToSave.add(regionId);
-            }
+            regionsToSave.computeIfAbsent(regionId, id -> new ArrayList<>()).add(chunk);
         }
         return regionsToSave;
     }
 
+    /**
+     * Stop the loader and close the cached region files, called after the last save.
+     * The regions are closed once the loader threads are finished with them.
+     */
+    public void close() {
+        this.loader.shutdown();
+        this.regionCache.closeAll();
+        this.journal.close();
+    }
+
+    /**
+     * Set the compression of the chunks that are written from now on, chunks of any level can be read
+     *
+     * @param compressionLevel {@link Deflater#NO_COMPRESSION} to store the chunks uncompressed, trading disk
+     *                         space for speed, or a deflate level up to {@link Deflater#BEST_COMPRESSION}
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
     public boolean exists() {
         return this.regionDirectory.exists();
     }
+
+    public EditJournal getJournal() {
+        return this.journal;
+    }
+
+    public RegionCache getRegionCache() {
+        return this.regionCache;
+    }
+
+    public WorldLoader getLoader() {
+        return this.loader;
+    }
 }
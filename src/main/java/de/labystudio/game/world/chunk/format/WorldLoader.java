@@ -0,0 +1,301 @@
+package de.labystudio.game.world.chunk.format;
+
+import de.labystudio.game.world.World;
+import de.labystudio.game.world.chunk.Chunk;
+import de.labystudio.game.world.chunk.ChunkSection;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the chunks requested by the streamer in three stages. The requests of a tick are grouped by region
+ * and each region submits its chunks in the order of their sectors, so the file is read sequentially.
+ * A worker pool reads, inflates and decodes the chunks and the finished chunks are handed to the world
+ * in batches on its own thread by {@link #poll(WorldLoadingProgress, int)}.
+ */
+public class WorldLoader {
+
+    // Time to wait for the running reads on shutdown
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final World world;
+    private final ExecutorService workers;
+
+    // Finished chunks, handed over by poll
+    private final ConcurrentLinkedQueue<LoadedChunk> requested = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+    private volatile boolean stopped;
+
+    // Time spent in each stage, the worker stages are summed over all threads
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong inflateNanos = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private long integrateNanos;
+    private final AtomicInteger decodedChunks = new AtomicInteger();
+    private int integratedChunks;
+
+    public WorldLoader(World world) {
+        this.world = world;
+        int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        AtomicInteger threadId = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "Chunk loader #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Read and decode chunks on the worker threads, the results are handed over by {@link #poll(WorldLoadingProgress, int)}
+     *
+     * @param regionCache Cache to open the regions with
+     * @param chunks      Indices of the chunks, see {@link Chunk#getIndex(int, int)}
+     */
+    public void request(RegionCache regionCache, LongList chunks) {
+        Long2ObjectMap<LongArrayList> regions = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            long index = chunks.getLong(i);
+            int chunkX = (int) index;
+            int chunkZ = (int) (index >> 32);
+            regions.computeIfAbsent(Chunk.getIndex(chunkX >> 5, chunkZ >> 5), id -> new LongArrayList()).add(index);
+        }
+
+        for (Long2ObjectMap.Entry<LongArrayList> entry : regions.long2ObjectEntrySet()) {
+            int regionX = (int) entry.getLongKey();
+            int regionZ = (int) (entry.getLongKey() >> 32);
+            LongArrayList regionChunks = entry.getValue();
+
+            this.pendingRequests.addAndGet(regionChunks.size());
+            try {
+                this.workers.execute(() -> this.submitBySector(regionCache, regionX, regionZ, regionChunks));
+            } catch (RejectedExecutionException ignored) {
+                // Shut down
+                this.pendingRequests.addAndGet(-regionChunks.size());
+            }
+        }
+    }
+
+    /**
+     * Submit the requested chunks of a region in the order of their sectors, called on a worker thread
+     */
+    private void submitBySector(RegionCache regionCache, int regionX, int regionZ, LongArrayList chunks) {
+        if (this.stopped) {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        RegionFormat region = regionCache.acquireExisting(regionX, regionZ);
+        if (region == null) {
+            // Nothing of this region is stored
+            for (int i = 0; i < chunks.size(); i++) {
+                long index = chunks.getLong(i);
+                this.requested.add(new LoadedChunk((int) index, (int) (index >> 32), null));
+            }
+            return;
+        }
+
+        try {
+            boolean[] wanted = new boolean[1024];
+            for (int i = 0; i < chunks.size(); i++) {
+                long index = chunks.getLong(i);
+                wanted[((int) index & 31) + ((int) (index >> 32) & 31) * 32] = true;
+            }
+
+            for (int index : region.getChunksBySector()) {
+                if (!wanted[index]) {
+                    continue;
+                }
+                wanted[index] = false;
+
+                int chunkX = (regionX << 5) + (index & 31);
+                int chunkZ = (regionZ << 5) + (index >> 5);
+
+                // Each read keeps the region open until its chunk is inflated
+                RegionFormat acquired = regionCache.acquire(regionX, regionZ);
+                try {
+                    this.workers.execute(() -> this.load(regionCache, acquired, chunkX, chunkZ));
+                } catch (RejectedExecutionException e) {
+                    // Shut down
+                    regionCache.release(acquired);
+                }
+            }
+
+            // The remaining chunks aren't stored
+            for (int index = 0; index < wanted.length; index++) {
+                if (wanted[index]) {
+                    this.requested.add(new LoadedChunk((regionX << 5) + (index & 31), (regionZ << 5) + (index >> 5), null));
+                }
+            }
+        } finally {
+            regionCache.release(region);
+            this.readNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Read, inflate and decode a single chunk, called on a worker thread
+     */
+    private void load(RegionCache regionCache, RegionFormat region, int chunkX, int chunkZ) {
+        if (this.stopped) {
+            regionCache.release(region);
+            return;
+        }
+
+        byte[] raw = null;
+
+        // The data can be a slice of the file mapping, the chunk must not be written until it is inflated
+        region.lockRead();
+        try {
+            long start = System.nanoTime();
+            ByteBuffer data = region.getChunkData(chunkX & 31, chunkZ & 31);
+            long read = System.nanoTime();
+            this.readNanos.addAndGet(read - start);
+
+            if (data != null) {
+                try (DataInputStream inputStream = RegionFormat.openChunkData(data)) {
+                    raw = inputStream.readAllBytes();
+                }
+                this.inflateNanos.addAndGet(System.nanoTime() - read);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            region.unlockRead();
+            regionCache.release(region);
+        }
+
+        this.requested.add(raw == null ? new LoadedChunk(chunkX, chunkZ, null) : this.decode(chunkX, chunkZ, raw));
+    }
+
+    /**
+     * Hand a batch of finished chunks to the world, called on the thread of the world
+     *
+     * @param progress Receives the chunks, the sections are null if the chunk isn't stored
+     * @param limit    Maximum amount of chunks to hand over
+     * @return Amount of chunks handed over
+     */
+    public int poll(WorldLoadingProgress progress, int limit) {
+        long start = System.nanoTime();
+        int count = 0;
+
+        LoadedChunk chunk;
+        while (count < limit && (chunk = this.requested.poll()) != null) {
+            this.pendingRequests.decrementAndGet();
+            progress.onLoad(chunk.x, chunk.z, chunk.layers);
+            count++;
+        }
+
+        if (count > 0) {
+            this.integrateNanos += System.nanoTime() - start;
+            this.integratedChunks += count;
+        }
+        return count;
+    }
+
+    /**
+     * Amount of requested chunks that are not handed over yet
+     */
+    public int getPendingRequests() {
+        return this.pendingRequests.get();
+    }
+
+    /**
+     * Decode an inflated chunk, called on a worker thread
+     */
+    private LoadedChunk decode(int chunkX, int chunkZ, byte[] raw) {
+        long start = System.nanoTime();
+        try {
+            ChunkFormat chunkFormat = new ChunkFormat(this.world, chunkX & 31, chunkZ & 31)
+                    .read(new DataInputStream(new ByteArrayInputStream(raw)), chunkX, chunkZ);
+            ChunkSection[] layers = null;
+            if (!chunkFormat.isEmpty()) {
+                layers = chunkFormat.getChunks();
+
+                // Fill empty chunks with chunk objects
+                for (int y = 0; y < 16; y++) {
+                    if (layers[y] == null) {
+                        layers[y] = new ChunkSection(this.world, chunkX, y, chunkZ);
+                    }
+                }
+            }
+
+            return new LoadedChunk(chunkX, chunkZ, layers);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new LoadedChunk(chunkX, chunkZ, null);
+        } finally {
+            this.decodeNanos.addAndGet(System.nanoTime() - start);
+            this.decodedChunks.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop the worker threads and wait until the running reads released their regions
+     */
+    public void shutdown() {
+        // Queued reads still run to release their regions, but skip the work
+        this.stopped = true;
+        this.workers.shutdown();
+
+        try {
+            if (!this.workers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.out.println("Chunk loader didn't stop within " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Average time per decoded chunk that was spent reading the region files, in nanoseconds
+     */
+    public long getReadNanosPerChunk() {
+        return this.readNanos.get() / Math.max(1, this.decodedChunks.get());
+    }
+
+    public long getInflateNanosPerChunk() {
+        return this.inflateNanos.get() / Math.max(1, this.decodedChunks.get());
+    }
+
+    public long getDecodeNanosPerChunk() {
+        return this.decodeNanos.get() / Math.max(1, this.decodedChunks.get());
+    }
+
+    /**
+     * Average time per chunk that was spent handing the chunks to the world, called on the thread of the world
+     */
+    public long getIntegrateNanosPerChunk() {
+        return this.integrateNanos / Math.max(1, this.integratedChunks);
+    }
+
+    public int getDecodedChunks() {
+        return this.decodedChunks.get();
+    }
+
+    private static class LoadedChunk {
+        private final int x;
+        private final int z;
+        private final ChunkSection[] layers;
+
+        private LoadedChunk(int x, int z, ChunkSection[] layers) {
+            this.x = x;
+            this.z = z;
+            this.layers = layers;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package de.labystudio.game.world.chunk.format;
+
+import de.labystudio.game.world.chunk.ChunkSnapshot;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes chunk snapshots into the region files on a dedicated I/O thread, so the game keeps running during a save.
+ * Saves are executed in the order they were queued.
+ */
+public class WorldSaver {
+
+    // Time to wait for the queued saves on shutdown
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    private final WorldFormat format;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "World saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger queuedSaves = new AtomicInteger();
+
+    public WorldSaver(WorldFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Queue snapshots to be written
+     *
+     * @param snapshots       Snapshots of the chunks to save
+     * @param journalSequence Sequence of the edit journal when the snapshots were captured
+     */
+    public void save(List<ChunkSnapshot> snapshots, long journalSequence) {
+        this.queuedSaves.incrementAndGet();
+
+        this.executor.execute(() -> {
+            try {
+                this.format.saveChunks(snapshots, journalSequence);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                this.queuedSaves.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Wait until all queued saves are written and stop the I/O thread
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+
+        try {
+            if (!this.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.out.println("World saver didn't finish within " + SHUTDOWN_TIMEOUT_SECONDS + " seconds, "
+                        + this.queuedSaves.get() + " saves dropped");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isSaving() {
+        return this.queuedSaves.get() > 0;
+    }
+}
@@ -1,5 +1,6 @@
 package de.labystudio.game.world.generator;
 
+import de.labystudio.game.world.TerrainSummary;
 import de.labystudio.game.world.World;
 import de.labystudio.game.world.block.Block;
 import de.labystudio.game.world.chunk.ChunkSection;
@@ -125,6 +126,56 @@ public final class WorldGenerator {
         }
     }
 
+    /**
+     * Summarize the surface that {@link #generateChunk(int, int)} would create without placing any block.
+     * Trees of the population aren't included.
+     *
+     * @param summary Receives the highest block of each column
+     */
+    public void summarizeChunk(int chunkX, int chunkZ, TerrainSummary summary) {
+        for (int relX = 0; relX < ChunkSection.SIZE; relX++) {
+            for (int relZ = 0; relZ < ChunkSection.SIZE; relZ++) {
+                int x = chunkX * ChunkSection.SIZE + relX;
+                int z = chunkZ * ChunkSection.SIZE + relZ;
+
+                // Same noise as the generation
+                double heightValue = this.groundHeightNoise.perlin(x, z);
+                double hillValue = Math.max(0, this.hillNoise.perlin(x / 18d, z / 18d) * 6);
+                int groundHeightY = (int) (heightValue / 10 + this.waterLevel + hillValue);
+
+                int topY;
+                Block top;
+                if (groundHeightY < this.waterLevel) {
+                    topY = this.waterLevel;
+                    top = Block.WATER;
+                } else {
+                    topY = groundHeightY;
+                    top = heightValue < 5 && groundHeightY < this.waterLevel + 2 ? Block.SAND : Block.GRASS;
+
+                    // A hole through the top uncovers the dirt or stone below it
+                    int holePositionY = (int) (this.holeNoise.perlin(-x / 20F, -z / 20F) * 3F + this.waterLevel + 10);
+                    int holeHeight = (int) this.holeNoise.perlin(x / 4F, -z / 4F);
+                    if (holeHeight > 0 && topY > this.waterLevel
+                            && topY >= holePositionY - holeHeight && topY <= holePositionY + holeHeight) {
+                        topY = Math.max(holePositionY - holeHeight - 1, this.waterLevel);
+                        top = groundHeightY - topY < 3 ? Block.DIRT : Block.STONE;
+                    }
+                }
+
+                // Floating islands above the ground
+                int islandPositionY = (int) (this.islandNoise.perlin(-x / 10F, -z / 10F) * 3F + this.waterLevel + 10);
+                int islandHeight = (int) (this.islandNoise.perlin(x / 4F, -z / 4F) * 4F);
+                int islandRarity = (int) (this.islandNoise.perlin(x / 40F, z / 40F) * 4F) - 10;
+                if (islandHeight > 0 && islandRarity > 0 && islandPositionY + islandHeight >= topY) {
+                    topY = islandPositionY + islandHeight;
+                    top = Block.GRASS;
+                }
+
+                summary.setColumn(x, z, topY, top.getId());
+            }
+        }
+    }
+
     public void populateChunk(int chunkX, int chunkZ) {
         for (int index = 0; index < 10; index++) {
             int x = this.random.nextInt(ChunkSection.SIZE);
@@ -0,0 +1,104 @@
+package de.labystudio.game.render;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrustumTest {
+
+    private Matrix4f viewProjection;
+    private Frustum frustum;
+
+    @BeforeEach
+    void setUp() {
+        // Camera at the origin looking along negative z
+        this.viewProjection = new Matrix4f().setPerspective((float) Math.toRadians(85.0F), 16.0F / 9.0F, 0.05F, 1024.0F);
+        this.frustum = new Frustum();
+        this.frustum.update(this.viewProjection);
+    }
+
+    @Test
+    void updateReportsOnlyChangedMatrices() {
+        assertFalse(this.frustum.update(new Matrix4f(this.viewProjection)));
+        assertTrue(this.frustum.update(new Matrix4f(this.viewProjection).rotateY(0.1F)));
+    }
+
+    @Test
+    void directionIsViewDirection() {
+        assertEquals(0.0F, this.frustum.getDirectionX(), 1.0E-5F);
+        assertEquals(0.0F, this.frustum.getDirectionY(), 1.0E-5F);
+        assertEquals(-1.0F, this.frustum.getDirectionZ(), 1.0E-5F);
+    }
+
+    @Test
+    void classifiesBoxesAroundTheCamera() {
+        assertEquals(Frustum.INSIDE, this.frustum.testBox(-1, -1, -20, 1, 1, -18));
+        assertEquals(Frustum.INTERSECT, this.frustum.testBox(-8, -8, -8, 8, 8, 8));
+        assertEquals(Frustum.OUTSIDE, this.frustum.testBox(-1, -1, 18, 1, 1, 20));
+        assertEquals(Frustum.OUTSIDE, this.frustum.testBox(-1, -1, -2000, 1, 1, -1900));
+    }
+
+    @Test
+    void centerExtentTestMatchesCornerTest() {
+        Matrix4f rotated = new Matrix4f(this.viewProjection).rotateX(0.35F).rotateY(0.8F).translate(0.0F, -70.0F, 0.0F);
+        this.frustum.update(rotated);
+        float[][] planes = normalizedPlanes(rotated);
+
+        Random random = new Random(0L);
+        for (int i = 0; i < 100_000; i++) {
+            float minX = (random.nextInt(64) - 32) * 16.0F + random.nextFloat();
+            float minY = random.nextInt(16) * 16.0F;
+            float minZ = (random.nextInt(64) - 32) * 16.0F + random.nextFloat();
+            float size = 1.0F + random.nextInt(32);
+
+            float margin = cornerMargin(planes, minX, minY, minZ, minX + size, minY + size, minZ + size);
+            if (Math.abs(margin) < 1.0E-3F) {
+                // Touches a plane, rounding decides
+                continue;
+            }
+
+            boolean visible = this.frustum.testBox(minX, minY, minZ, minX + size, minY + size, minZ + size) != Frustum.OUTSIDE;
+            assertEquals(margin > 0, visible, "Box at " + minX + ", " + minY + ", " + minZ + " with size " + size);
+        }
+    }
+
+    // Smallest distance over the planes of the corner that is furthest in front of each plane, negative if the box is outside
+    private static float cornerMargin(float[][] planes, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float margin = Float.MAX_VALUE;
+        for (float[] p : planes) {
+            float best = -Float.MAX_VALUE;
+            for (int corner = 0; corner < 8; corner++) {
+                float x = (corner & 1) == 0 ? minX : maxX;
+                float y = (corner & 2) == 0 ? minY : maxY;
+                float z = (corner & 4) == 0 ? minZ : maxZ;
+                best = Math.max(best, p[0] * x + p[1] * y + p[2] * z + p[3]);
+            }
+            margin = Math.min(margin, best);
+        }
+        return margin;
+    }
+
+    private static float[][] normalizedPlanes(Matrix4f m) {
+        float[][] planes = {
+                {m.m03() + m.m00(), m.m13() + m.m10(), m.m23() + m.m20(), m.m33() + m.m30()},
+                {m.m03() - m.m00(), m.m13() - m.m10(), m.m23() - m.m20(), m.m33() - m.m30()},
+                {m.m03() + m.m01(), m.m13() + m.m11(), m.m23() + m.m21(), m.m33() + m.m31()},
+                {m.m03() - m.m01(), m.m13() - m.m11(), m.m23() - m.m21(), m.m33() - m.m31()},
+                {m.m03() + m.m02(), m.m13() + m.m12(), m.m23() + m.m22(), m.m33() + m.m32()},
+                {m.m03() - m.m02(), m.m13() - m.m12(), m.m23() - m.m22(), m.m33() - m.m32()}
+        };
+        for (float[] p : planes) {
+            float length = (float) Math.sqrt(p[0] * p[0] + p[1] * p[1] + p[2] * p[2]);
+            for (int i = 0; i < 4; i++) {
+                p[i] /= length;
+            }
+        }
+        return planes;
+    }
+}
@@ -0,0 +1,119 @@
+package de.labystudio.game.render.buffer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BufferPoolTest {
+
+    private FakeBufferBackend backend;
+    private BufferPool pool;
+
+    @BeforeEach
+    void setUp() {
+        this.backend = new FakeBufferBackend();
+        this.pool = new BufferPool(this.backend);
+    }
+
+    @Test
+    void releasedBufferIsReusedWithinItsSizeClass() {
+        // Both sizes are in the 8 KiB class
+        BufferPool.PooledBuffer buffer = this.pool.acquire(5000);
+        this.pool.release(buffer);
+
+        assertSame(buffer, this.pool.acquire(6000));
+        assertEquals(1, this.backend.getCreatedBuffers());
+    }
+
+    @Test
+    void largerSizeGetsBufferOfNextClass() {
+        BufferPool.PooledBuffer buffer = this.pool.acquire(5000);
+        this.pool.release(buffer);
+
+        BufferPool.PooledBuffer larger = this.pool.acquire(9000);
+        assertNotSame(buffer, larger);
+        assertEquals(16384, larger.getCapacity());
+        assertEquals(2, this.backend.getCreatedBuffers());
+    }
+
+    @Test
+    void uploadWritesAtOffset() {
+        BufferPool.PooledBuffer buffer = this.pool.acquire(9000);
+        int[] data = {0x01020304, 0x05060708};
+        this.pool.upload(buffer, 8, data, 0, data.length);
+
+        ByteBuffer storage = ByteBuffer.wrap(this.backend.getStorage(buffer.getId())).order(ByteOrder.nativeOrder());
+        assertEquals(data[0], storage.getInt(8));
+        assertEquals(data[1], storage.getInt(12));
+    }
+
+    @Test
+    void uploadBeyondCapacityIsRejected() {
+        BufferPool.PooledBuffer buffer = this.pool.acquire(4096);
+        assertThrows(IllegalArgumentException.class, () -> this.pool.upload(buffer, 4092, new int[2], 0, 2));
+    }
+
+    @Test
+    void releasedBuffersBeyondTheLimitAreDeleted() {
+        List<BufferPool.PooledBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            buffers.add(this.pool.acquire(4096));
+        }
+        for (BufferPool.PooledBuffer buffer : buffers) {
+            this.pool.release(buffer);
+        }
+
+        assertEquals(40, this.backend.getCreatedBuffers());
+        assertEquals(8, this.backend.getDeletedBuffers());
+        assertAccounting(0);
+    }
+
+    @Test
+    void accountingMatchesBackendDuringChurn() {
+        Random random = new Random(0L);
+        List<BufferPool.PooledBuffer> held = new ArrayList<>();
+        long heldBytes = 0;
+
+        for (int i = 0; i < 100_000; i++) {
+            if (held.size() < 256 && (held.isEmpty() || random.nextBoolean())) {
+                BufferPool.PooledBuffer buffer = this.pool.acquire(1 + random.nextInt(1 << 20));
+                held.add(buffer);
+                heldBytes += buffer.getCapacity();
+            } else {
+                BufferPool.PooledBuffer buffer = held.remove(random.nextInt(held.size()));
+                heldBytes -= buffer.getCapacity();
+                this.pool.release(buffer);
+            }
+
+            if ((i & 255) == 0) {
+                assertAccounting(heldBytes);
+            }
+        }
+
+        for (BufferPool.PooledBuffer buffer : held) {
+            this.pool.release(buffer);
+        }
+        assertAccounting(0);
+    }
+
+    @Test
+    void sizeBeyondLargestClassIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> this.pool.acquire(16 << 20));
+    }
+
+    private void assertAccounting(long heldBytes) {
+        assertEquals(this.backend.getLiveBuffers(), this.pool.getBufferCount());
+        assertEquals(this.backend.getAllocatedBytes(), this.pool.getAllocatedBytes());
+        assertEquals(heldBytes, this.pool.getUsedBytes());
+    }
+}
@@ -0,0 +1,97 @@
+package de.labystudio.game.render.buffer;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Buffer backend that keeps the buffers in heap memory, so the {@link BufferPool} can be checked without
+ * an OpenGL context. Calls on buffers that don't exist or writes beyond their storage throw an exception.
+ */
+public class FakeBufferBackend implements BufferBackend {
+
+    // Storage of the live buffers, null until the buffer is allocated
+    private final Int2ObjectOpenHashMap<byte[]> buffers = new Int2ObjectOpenHashMap<>();
+    private int nextId = 1;
+
+    // Statistics
+    private int createdBuffers;
+    private int deletedBuffers;
+    private long allocatedBytes;
+
+    @Override
+    public int createBuffer() {
+        int id = this.nextId++;
+        this.buffers.put(id, null);
+        this.createdBuffers++;
+        return id;
+    }
+
+    @Override
+    public void allocate(int buffer, int size) {
+        this.checkExists(buffer);
+
+        byte[] previous = this.buffers.put(buffer, new byte[size]);
+        if (previous != null) {
+            this.allocatedBytes -= previous.length;
+        }
+        this.allocatedBytes += size;
+    }
+
+    @Override
+    public void upload(int buffer, int offset, ByteBuffer data) {
+        byte[] storage = this.getStorage(buffer);
+        if (offset < 0 || offset + data.remaining() > storage.length) {
+            throw new IllegalArgumentException("Upload of " + data.remaining() + " bytes at " + offset
+                    + " exceeds the storage of buffer " + buffer + " (" + storage.length + " bytes)");
+        }
+
+        data.duplicate().get(storage, offset, data.remaining());
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        this.checkExists(buffer);
+
+        byte[] storage = this.buffers.remove(buffer);
+        if (storage != null) {
+            this.allocatedBytes -= storage.length;
+        }
+        this.deletedBuffers++;
+    }
+
+    /**
+     * Content of a buffer
+     */
+    public byte[] getStorage(int buffer) {
+        this.checkExists(buffer);
+
+        byte[] storage = this.buffers.get(buffer);
+        if (storage == null) {
+            throw new IllegalStateException("Buffer " + buffer + " has no storage");
+        }
+        return storage;
+    }
+
+    private void checkExists(int buffer) {
+        if (!this.buffers.containsKey(buffer)) {
+            throw new IllegalStateException("Buffer " + buffer + " doesn't exist");
+        }
+    }
+
+    public int getLiveBuffers() {
+        return this.buffers.size();
+    }
+
+    public int getCreatedBuffers() {
+        return this.createdBuffers;
+    }
+
+    public int getDeletedBuffers() {
+        return this.deletedBuffers;
+    }
+
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+}
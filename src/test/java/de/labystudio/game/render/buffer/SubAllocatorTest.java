@@ -0,0 +1,136 @@
+package de.labystudio.game.render.buffer;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SubAllocatorTest {
+
+    @Test
+    void sizesAreRoundedToTheAlignment() {
+        SubAllocator allocator = new SubAllocator(1000, 16);
+
+        assertEquals(992, allocator.getCapacity());
+        assertEquals(0, allocator.allocate(1));
+        assertEquals(16, allocator.allocate(17));
+        assertEquals(32, allocator.getSize(16));
+        assertEquals(48, allocator.getUsedBytes());
+    }
+
+    @Test
+    void smallestFittingFreeBlockIsUsed() {
+        SubAllocator allocator = new SubAllocator(1000, 10);
+        int[] offsets = new int[6];
+        int[] sizes = {100, 300, 100, 200, 100, 200};
+        for (int i = 0; i < sizes.length; i++) {
+            offsets[i] = allocator.allocate(sizes[i]);
+        }
+
+        // Free blocks of 300 and 200 bytes
+        allocator.free(offsets[1]);
+        allocator.free(offsets[3]);
+
+        assertEquals(offsets[3], allocator.allocate(150));
+        assertEquals(offsets[1], allocator.allocate(250));
+    }
+
+    @Test
+    void freedNeighboursAreMerged() {
+        SubAllocator allocator = new SubAllocator(1000, 10);
+        int first = allocator.allocate(300);
+        int second = allocator.allocate(300);
+        int third = allocator.allocate(300);
+
+        allocator.free(first);
+        allocator.free(third);
+        assertEquals(2, allocator.getFreeBlockCount());
+
+        allocator.free(second);
+        assertEquals(1, allocator.getFreeBlockCount());
+        assertEquals(1000, allocator.getLargestFreeBlock());
+        assertEquals(0.0F, allocator.getFragmentation());
+    }
+
+    @Test
+    void fullAllocatorReturnsMinusOne() {
+        SubAllocator allocator = new SubAllocator(1000, 10);
+        allocator.allocate(600);
+
+        assertEquals(-1, allocator.allocate(500));
+        assertEquals(600, allocator.allocate(400));
+    }
+
+    @Test
+    void freeingUnknownOffsetIsRejected() {
+        SubAllocator allocator = new SubAllocator(1000, 10);
+        allocator.allocate(100);
+
+        assertThrows(IllegalArgumentException.class, () -> allocator.free(10));
+    }
+
+    @Test
+    void clearFreesEverything() {
+        SubAllocator allocator = new SubAllocator(1000, 10);
+        allocator.allocate(100);
+        allocator.allocate(200);
+        allocator.clear();
+
+        assertEquals(0, allocator.getAllocationCount());
+        assertEquals(0, allocator.getUsedBytes());
+        assertEquals(0, allocator.allocate(1000));
+    }
+
+    @Test
+    void blocksStayDisjointDuringChurn() {
+        int alignment = 6 * 8 * 4;
+        SubAllocator allocator = new SubAllocator(4 << 20, alignment);
+        IntArrayList offsets = new IntArrayList();
+        Random random = new Random(0L);
+
+        for (int i = 0; i < 50_000; i++) {
+            if (offsets.isEmpty() || random.nextInt(3) != 0) {
+                int offset = allocator.allocate((1 + random.nextInt(2000)) * alignment);
+                if (offset != -1) {
+                    offsets.add(offset);
+                }
+            } else {
+                int index = random.nextInt(offsets.size());
+                allocator.free(offsets.getInt(index));
+                offsets.set(index, offsets.getInt(offsets.size() - 1));
+                offsets.removeInt(offsets.size() - 1);
+            }
+
+            if ((i & 1023) == 0) {
+                assertDisjoint(allocator);
+            }
+        }
+        assertDisjoint(allocator);
+    }
+
+    private static void assertDisjoint(SubAllocator allocator) {
+        long[] blocks = new long[allocator.getAllocationCount()];
+        int count = 0;
+        int used = 0;
+        for (Int2IntMap.Entry entry : allocator.getAllocations()) {
+            blocks[count++] = (long) entry.getIntKey() << 32 | entry.getIntValue();
+            used += entry.getIntValue();
+        }
+        Arrays.sort(blocks);
+
+        int end = 0;
+        for (long block : blocks) {
+            int offset = (int) (block >>> 32);
+            assertTrue(offset >= end, "Block at " + offset + " overlaps the previous block ending at " + end);
+            end = offset + (int) block;
+        }
+        assertTrue(end <= allocator.getCapacity());
+        assertEquals(used, allocator.getUsedBytes());
+    }
+}
@@ -0,0 +1,147 @@
+package de.labystudio.game.render.world;
+
+import de.labystudio.game.render.Frustum;
+import de.labystudio.game.world.block.Block;
+import de.labystudio.game.world.chunk.ChunkSection;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VisibilityGraphTest {
+
+    private static final int RADIUS = 4;
+    private static final int CAMERA_Y = 4;
+
+    // Sections of the grid, all of them are solid stone until they are carved out
+    private final Long2ObjectMap<ChunkSection> sections = new Long2ObjectOpenHashMap<>();
+    private final ISectionAccess access = (x, y, z) -> this.sections.get(key(x, y, z));
+
+    private VisibilityGraph graph;
+    private Frustum frustum;
+    private ChunkSection[] output;
+
+    @BeforeEach
+    void setUp() {
+        for (int x = -RADIUS; x <= RADIUS; x++) {
+            for (int z = -RADIUS; z <= RADIUS; z++) {
+                for (int y = 0; y < 16; y++) {
+                    ChunkSection section = new ChunkSection(null, x, y, z);
+                    fill(section, Block.STONE.getId());
+                    this.sections.put(key(x, y, z), section);
+                }
+            }
+        }
+
+        // Everything around the camera is inside
+        this.frustum = new Frustum();
+        this.frustum.update(new Matrix4f().setOrtho(-4096, 4096, -4096, 4096, -4096, 4096));
+
+        this.graph = new VisibilityGraph(RADIUS);
+        this.output = new ChunkSection[this.graph.getCapacity()];
+    }
+
+    @Test
+    void openCorridorIsReachedAndClosedCaveIsCulled() {
+        // Corridor from the camera along x, the cave lies beside it behind a stone section
+        for (int x = 0; x <= 3; x++) {
+            this.carve(x, CAMERA_Y, 0);
+        }
+        this.carve(0, CAMERA_Y, 2);
+
+        int count = this.collect();
+
+        for (int x = 0; x <= 3; x++) {
+            assertTrue(this.isVisible(count, x, CAMERA_Y, 0), "Corridor section " + x);
+        }
+
+        // The walls around the corridor are seen from the inside, but nothing is seen through them
+        assertTrue(this.isVisible(count, 4, CAMERA_Y, 0));
+        assertTrue(this.isVisible(count, 0, CAMERA_Y, 1));
+        assertFalse(this.isVisible(count, 0, CAMERA_Y, 2));
+        assertFalse(this.isVisible(count, 0, CAMERA_Y, -2));
+    }
+
+    @Test
+    void wallInsideSectionSplitsCorridor() {
+        for (int x = 0; x <= 3; x++) {
+            this.carve(x, CAMERA_Y, 0);
+        }
+
+        // Stone plane across the middle of the section, each half still touches four of its faces
+        ChunkSection wall = this.sections.get(key(2, CAMERA_Y, 0));
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                wall.setBlockAt(8, y, z, Block.STONE.getId());
+            }
+        }
+        wall.setVisibility(SectionVisibility.compute(wall));
+
+        int count = this.collect();
+
+        assertTrue(this.isVisible(count, 1, CAMERA_Y, 0));
+        assertTrue(this.isVisible(count, 2, CAMERA_Y, 0));
+        assertFalse(this.isVisible(count, 3, CAMERA_Y, 0));
+    }
+
+    @Test
+    void unloadedSectionsAreNotEntered() {
+        for (int x = 0; x <= 3; x++) {
+            this.carve(x, CAMERA_Y, 0);
+        }
+        for (int y = 0; y < 16; y++) {
+            this.sections.remove(key(2, y, 0));
+        }
+
+        int count = this.collect();
+
+        assertTrue(this.isVisible(count, 1, CAMERA_Y, 0));
+        assertFalse(this.isVisible(count, 3, CAMERA_Y, 0));
+
+        // No walk if the camera is in an unloaded chunk
+        assertEquals(0, this.graph.collect(this.access, 2, CAMERA_Y, 0, RADIUS, this.frustum, this.output));
+    }
+
+    private int collect() {
+        int count = this.graph.collect(this.access, 0, CAMERA_Y, 0, RADIUS, this.frustum, this.output);
+
+        // Every section is returned once
+        long distinct = Arrays.stream(this.output, 0, count).distinct().count();
+        assertEquals(count, distinct);
+        return count;
+    }
+
+    private boolean isVisible(int count, int x, int y, int z) {
+        ChunkSection section = this.sections.get(key(x, y, z));
+        for (int i = 0; i < count; i++) {
+            if (this.output[i] == section) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void carve(int x, int y, int z) {
+        ChunkSection section = this.sections.get(key(x, y, z));
+        fill(section, 0);
+    }
+
+    private static void fill(ChunkSection section, int type) {
+        byte[] blocks = new byte[4096];
+        Arrays.fill(blocks, (byte) type);
+
+        section.setData(blocks, new byte[4096]);
+        section.setVisibility(SectionVisibility.compute(section));
+    }
+
+    private static long key(int x, int y, int z) {
+        return (long) x << 40 ^ (long) z << 20 ^ y;
+    }
+}
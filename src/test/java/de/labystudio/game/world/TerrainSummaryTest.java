@@ -0,0 +1,77 @@
+package de.labystudio.game.world;
+
+import de.labystudio.game.world.block.Block;
+import de.labystudio.game.world.chunk.Chunk;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerrainSummaryTest {
+
+    @Test
+    void highestBlockOfEachColumnIsSummarized() {
+        Chunk chunk = new Chunk(null, -3, 5);
+        chunk.getSection(4).setBlockAt(2, 3, 7, Block.GRASS.getId());
+        chunk.getSection(0).setBlockAt(2, 0, 7, Block.STONE.getId());
+        chunk.getSection(15).setBlockAt(15, 15, 15, Block.LEAVE.getId());
+
+        TerrainSummary summary = new TerrainSummary();
+        summary.summarize(chunk);
+
+        int baseX = -3 * 16;
+        int baseZ = 5 * 16;
+        assertEquals(67, summary.getHeight(baseX + 2, baseZ + 7));
+        assertEquals(Block.GRASS.getId(), summary.getTopBlock(baseX + 2, baseZ + 7));
+        assertEquals(255, summary.getHeight(baseX + 15, baseZ + 15));
+        assertEquals(Block.LEAVE.getId(), summary.getTopBlock(baseX + 15, baseZ + 15));
+        assertEquals(TerrainSummary.EMPTY, summary.getHeight(baseX, baseZ));
+        assertEquals(0, summary.getTopBlock(baseX, baseZ));
+    }
+
+    @Test
+    void summaryIsKeptAfterTheChunkChanges() {
+        Chunk chunk = new Chunk(null, 0, 0);
+        chunk.getSection(3).setBlockAt(1, 1, 1, Block.SAND.getId());
+
+        TerrainSummary summary = new TerrainSummary();
+        summary.summarize(chunk);
+        chunk.getSection(3).setBlockAt(1, 1, 1, 0);
+
+        assertEquals(49, summary.getHeight(1, 1));
+
+        // Summarized again, for example when the chunk is unloaded
+        summary.summarize(chunk);
+        assertEquals(TerrainSummary.EMPTY, summary.getHeight(1, 1));
+    }
+
+    @Test
+    void columnsOfChunksThatArentLoadedCanBeSet() {
+        TerrainSummary summary = new TerrainSummary();
+        summary.setColumn(-1, -17, 64, Block.WATER.getId());
+
+        assertTrue(summary.contains(-1, -2));
+        assertEquals(64, summary.getHeight(-1, -17));
+        assertEquals(Block.WATER.getId(), summary.getTopBlock(-1, -17));
+        assertEquals(TerrainSummary.EMPTY, summary.getHeight(-2, -17));
+        assertEquals(TerrainSummary.UNKNOWN, summary.getHeight(0, -17));
+    }
+
+    @Test
+    void distantChunksAreForgotten() {
+        TerrainSummary summary = new TerrainSummary();
+        for (int x = -10; x <= 10; x++) {
+            for (int z = -10; z <= 10; z++) {
+                summary.setColumn(x * 16, z * 16, 70, Block.GRASS.getId());
+            }
+        }
+
+        summary.retain(4, -2, 3);
+
+        assertEquals(7 * 7, summary.size());
+        assertTrue(summary.contains(7, 1));
+        assertFalse(summary.contains(8, 1));
+        assertFalse(summary.contains(4, -6));
+    }
+}
@@ -0,0 +1,155 @@
+package de.labystudio.game.world.chunk.format;
+
+import de.labystudio.game.world.block.Block;
+import de.labystudio.game.world.chunk.Chunk;
+import de.labystudio.game.world.chunk.ChunkSection;
+import de.labystudio.game.world.chunk.ChunkSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkFormatTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void blocksAndLightRoundTrip() throws IOException {
+        Chunk chunk = createChunk(new Random(0L));
+
+        assertSameSections(chunk, read(encode(new ChunkSnapshot(chunk))));
+    }
+
+    @Test
+    void sectionsChangedAfterTheSnapshotAreNotWritten() throws IOException {
+        Chunk chunk = createChunk(new Random(1L));
+        ChunkSnapshot snapshot = new ChunkSnapshot(chunk);
+        Chunk expected = createChunk(new Random(1L));
+
+        chunk.getSection(3).setBlockAt(0, 0, 0, 0);
+        chunk.getSection(3).setLightAt(0, 0, 0, 2);
+
+        assertSameSections(expected, read(encode(snapshot)));
+    }
+
+    @Test
+    void unknownBlocksAreReadAsStone() throws IOException {
+        Chunk chunk = new Chunk(null, 0, 0);
+        chunk.getSection(0).setBlockAt(1, 2, 3, 200);
+        chunk.getSection(0).setBlockAt(4, 5, 6, Block.SAND.getId());
+
+        ChunkSection section = read(encode(new ChunkSnapshot(chunk))).getChunks()[0];
+        assertEquals(Block.STONE.getId(), section.getBlockAt(1, 2, 3));
+        assertEquals(Block.SAND.getId(), section.getBlockAt(4, 5, 6));
+    }
+
+    @Test
+    void emptyChunkHasNoSections() throws IOException {
+        ChunkFormat chunkFormat = read(encode(new ChunkSnapshot(new Chunk(null, 0, 0))));
+
+        for (ChunkSection section : chunkFormat.getChunks()) {
+            assertNull(section);
+        }
+        assertTrue(new ChunkFormat(null, 0, 0).read(null, 0, 0).isEmpty());
+    }
+
+    @Test
+    void everyCompressionLevelRoundTripsThroughRegion() throws IOException {
+        int[] levels = {Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION};
+        Chunk chunk = createChunk(new Random(2L));
+        ChunkSnapshot snapshot = new ChunkSnapshot(chunk);
+
+        try (RegionFormat region = new RegionFormat(new File(this.directory, RegionFormat.getFileName(0, 0)))) {
+            for (int i = 0; i < levels.length; i++) {
+                try (DataOutputStream outputStream = region.getChunkDataOutputStream(i, 0, levels[i])) {
+                    ChunkFormat.write(snapshot, outputStream);
+                }
+            }
+
+            for (boolean memoryMapped : new boolean[]{false, true}) {
+                region.setMemoryMapped(memoryMapped);
+                for (int i = 0; i < levels.length; i++) {
+                    try (DataInputStream inputStream = region.getChunkDataInputStream(i, 0)) {
+                        assertSameSections(chunk, new ChunkFormat(null, i, 0).read(inputStream, i, 0));
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] encode(ChunkSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(buffer)) {
+            ChunkFormat.write(snapshot, outputStream);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static ChunkFormat read(byte[] encoded) throws IOException {
+        return new ChunkFormat(null, 0, 0).read(new DataInputStream(new ByteArrayInputStream(encoded)), 0, 0);
+    }
+
+    private static void assertSameSections(Chunk expected, ChunkFormat actual) {
+        assertFalse(actual.isEmpty());
+
+        ChunkSection[] sections = actual.getChunks();
+        for (int y = 0; y < sections.length; y++) {
+            ChunkSection section = expected.getSection(y);
+            if (section.isEmpty()) {
+                assertNull(sections[y], "Empty section " + y + " is stored");
+                continue;
+            }
+
+            for (int index = 0; index < 4096; index++) {
+                int x = index & 15;
+                int z = index >> 4 & 15;
+                int relY = index >> 8;
+                assertEquals(section.getBlockAt(x, relY, z), sections[y].getBlockAt(x, relY, z), "Block in section " + y);
+                assertEquals(section.getLightAt(x, relY, z), sections[y].getLightAt(x, relY, z), "Light in section " + y);
+            }
+        }
+    }
+
+    // Terrain with a few trees on top and darker light below the surface
+    private static Chunk createChunk(Random random) {
+        Chunk chunk = new Chunk(null, 0, 0);
+
+        for (int x = 0; x < ChunkSection.SIZE; x++) {
+            for (int z = 0; z < ChunkSection.SIZE; z++) {
+                int height = 60 + random.nextInt(4);
+
+                for (int y = 0; y <= height; y++) {
+                    Block block = y == height ? Block.GRASS : y > height - 4 ? Block.DIRT : Block.STONE;
+                    setBlock(chunk, x, y, z, block.getId(), y < height - 8 ? random.nextInt(16) : 15);
+                }
+
+                if (random.nextInt(32) == 0) {
+                    for (int y = height + 1; y < height + 6; y++) {
+                        setBlock(chunk, x, y, z, Block.LOG.getId(), 15);
+                    }
+                    setBlock(chunk, x, height + 6, z, Block.LEAVE.getId(), 15);
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private static void setBlock(Chunk chunk, int x, int y, int z, int blockId, int lightLevel) {
+        ChunkSection section = chunk.getSection(y >> 4);
+        section.setBlockAt(x, y & 15, z, blockId);
+        section.setLightAt(x, y & 15, z, lightLevel);
+    }
+}
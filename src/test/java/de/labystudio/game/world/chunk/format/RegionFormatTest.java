@@ -0,0 +1,183 @@
+package de.labystudio.game.world.chunk.format;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionFormatTest {
+
+    private static final int SECTOR_BYTES = 4096;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void mappedAndCopyingReadsMatch() throws IOException {
+        Random random = new Random(0L);
+        byte[][] chunks = new byte[3][];
+        int[] levels = {Deflater.NO_COMPRESSION, 1, Deflater.DEFAULT_COMPRESSION};
+
+        try (RegionFormat region = this.open()) {
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = terrain(random, 20000);
+                write(region, i, 0, chunks[i], levels[i]);
+            }
+
+            for (boolean memoryMapped : new boolean[]{false, true}) {
+                region.setMemoryMapped(memoryMapped);
+                for (int i = 0; i < chunks.length; i++) {
+                    assertArrayEquals(chunks[i], read(region, i, 0));
+                }
+                assertNull(region.getChunkDataInputStream(5, 5));
+            }
+        }
+    }
+
+    @Test
+    void grownChunkMovesWithoutTouchingOthers() throws IOException {
+        Random random = new Random(1L);
+        byte[] first = noise(random, 100);
+        byte[] second = noise(random, 100);
+        byte[] grown = noise(random, 3 * SECTOR_BYTES);
+
+        try (RegionFormat region = this.open()) {
+            write(region, 0, 0, first, Deflater.NO_COMPRESSION);
+            write(region, 1, 0, second, Deflater.NO_COMPRESSION);
+            write(region, 0, 0, grown, Deflater.NO_COMPRESSION);
+
+            assertArrayEquals(grown, read(region, 0, 0));
+            assertArrayEquals(second, read(region, 1, 0));
+            assertEquals(1, region.getFreeSectors());
+        }
+    }
+
+    @Test
+    void compactionKeepsChunksAndShrinksFile() throws IOException {
+        Random random = new Random(2L);
+        byte[][] chunks = new byte[8][];
+
+        try (RegionFormat region = this.open()) {
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = noise(random, 2 * SECTOR_BYTES);
+                write(region, i, 0, chunks[i], Deflater.NO_COMPRESSION);
+            }
+
+            // Shrink the chunks in front, their free sectors are behind the chunks in the file
+            for (int i = 0; i < 4; i++) {
+                chunks[i] = noise(random, 100);
+                write(region, i, 0, chunks[i], Deflater.NO_COMPRESSION);
+            }
+            int sectorsBefore = region.getSectorCount();
+            assertTrue(region.getFreeSectors() > 0);
+
+            int reclaimed = region.compact();
+
+            assertTrue(reclaimed > 0);
+            assertEquals(sectorsBefore - reclaimed, region.getSectorCount());
+            for (boolean memoryMapped : new boolean[]{false, true}) {
+                region.setMemoryMapped(memoryMapped);
+                for (int i = 0; i < chunks.length; i++) {
+                    assertArrayEquals(chunks[i], read(region, i, 0));
+                }
+            }
+            File file = new File(this.directory, RegionFormat.getFileName(0, 0));
+            assertEquals((long) region.getSectorCount() * SECTOR_BYTES, file.length());
+        }
+    }
+
+    @Test
+    void chunksSurviveReopening() throws IOException {
+        Random random = new Random(3L);
+        byte[] chunk = terrain(random, 50000);
+
+        try (RegionFormat region = this.open()) {
+            write(region, 31, 31, chunk, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        try (RegionFormat region = this.open()) {
+            assertTrue(region.hasChunk(31, 31));
+            assertFalse(region.hasChunk(0, 0));
+            assertArrayEquals(chunk, read(region, 31, 31));
+        }
+    }
+
+    @Test
+    void openStreamBlocksWrites() throws Exception {
+        Random random = new Random(4L);
+        byte[] chunk = noise(random, 100);
+
+        try (RegionFormat region = this.open()) {
+            write(region, 0, 0, chunk, Deflater.NO_COMPRESSION);
+
+            CountDownLatch written = new CountDownLatch(1);
+            Thread writer = new Thread(() -> {
+                try {
+                    write(region, 1, 0, chunk, Deflater.NO_COMPRESSION);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                written.countDown();
+            });
+
+            try (DataInputStream inputStream = region.getChunkDataInputStream(0, 0)) {
+                writer.start();
+                assertFalse(written.await(200, TimeUnit.MILLISECONDS));
+                assertArrayEquals(chunk, inputStream.readAllBytes());
+            }
+
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+            writer.join();
+            assertArrayEquals(chunk, read(region, 1, 0));
+        }
+    }
+
+    private RegionFormat open() {
+        return new RegionFormat(new File(this.directory, RegionFormat.getFileName(0, 0)));
+    }
+
+    private static void write(RegionFormat region, int x, int z, byte[] data, int compressionLevel) throws IOException {
+        try (DataOutputStream outputStream = region.getChunkDataOutputStream(x, z, compressionLevel)) {
+            outputStream.write(data);
+        }
+    }
+
+    private static byte[] read(RegionFormat region, int x, int z) throws IOException {
+        try (DataInputStream inputStream = region.getChunkDataInputStream(x, z)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    // Long runs of few block types
+    private static byte[] terrain(Random random, int length) {
+        byte[] data = new byte[length];
+        int index = 0;
+        while (index < length) {
+            int run = Math.min(length - index, 1 + random.nextInt(64));
+            byte type = (byte) random.nextInt(8);
+            for (int i = 0; i < run; i++) {
+                data[index++] = type;
+            }
+        }
+        return data;
+    }
+
+    private static byte[] noise(Random random, int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+}